@@ -0,0 +1,30 @@
+#!/usr/bin/env bash
+# Прогоняет mixed-load.js против сервиса на платформенных и на виртуальных потоках.
+# Сервис поднимается из собранного jar; MinIO, Postgres и Redis должны уже работать,
+# а SESSION, LARGE_FILE, ZIP_FOLDER и LIST_FOLDER — быть выставлены в окружении.
+set -euo pipefail
+
+JAR=${JAR:-target/storage-service-0.0.1-SNAPSHOT.jar}
+BASE_URL=${BASE_URL:-http://localhost:8082}
+OUT=${OUT:-loadtest/results}
+mkdir -p "$OUT"
+
+run() {
+    local mode=$1 virtual=$2
+    java -jar "$JAR" --spring.threads.virtual.enabled="$virtual" > "$OUT/$mode-app.log" 2>&1 &
+    local pid=$!
+    trap 'kill $pid 2>/dev/null || true' RETURN
+
+    until curl -sf "$BASE_URL/actuator/health" > /dev/null; do sleep 1; done
+    k6 run -e BASE_URL="$BASE_URL" --summary-export "$OUT/$mode.json" loadtest/mixed-load.js \
+        | tee "$OUT/$mode.txt" || true
+}
+
+run platform false
+run virtual true
+
+for mode in platform virtual; do
+    jq -r --arg mode "$mode" \
+        '"\($mode): listing p95=\(.metrics.listing_duration["p(95)"]) ms, requests=\(.metrics.http_reqs.count)"' \
+        "$OUT/$mode.json"
+done
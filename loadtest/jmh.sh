@@ -0,0 +1,27 @@
+#!/usr/bin/env bash
+# JMH-бенчмарки горячих путей хранилища против встроенной S3-заглушки (src/jmh/java).
+#   loadtest/jmh.sh [аргументы JMH]        — прогон, результат в $OUT/jmh-<коммит>.json
+#   loadtest/jmh.sh compare old.json new.json — разница по каждому бенчмарку и набору параметров
+# Примеры аргументов: "FolderReadBenchmark.listFolder -p shape=WIDE -p latencyMs=0,5",
+# "TransferBenchmark -prof gc" — аллокации на операцию (gc.alloc.rate.norm)
+set -euo pipefail
+
+OUT=${OUT:-loadtest/results}
+
+if [[ ${1:-} == compare ]]; then
+    jq -rn --slurpfile old "$2" --slurpfile new "$3" '
+        def key: .benchmark + " " + ((.params // {}) | to_entries | map("\(.key)=\(.value)") | join(","));
+        ($old[0] | map({(key): .primaryMetric}) | add) as $before
+        | $new[0][]
+        | key as $k
+        | select($before[$k] != null)
+        | "\($k)\t\($before[$k].score) -> \(.primaryMetric.score) \(.primaryMetric.scoreUnit)\t\(
+            (.primaryMetric.score - $before[$k].score) / $before[$k].score * 100 | . * 10 | round / 10)%"' \
+        | column -t -s $'\t'
+    exit 0
+fi
+
+mkdir -p "$OUT"
+RESULT="$OUT/jmh-$(git rev-parse --short HEAD)$(git diff --quiet || echo -dirty).json"
+./mvnw -B -Pbenchmarks -DskipTests verify -Djmh.result="$(pwd)/$RESULT" -Djmh.args="-rf json -rff $(pwd)/$RESULT $*"
+echo "Results: $RESULT"
@@ -0,0 +1,58 @@
+// Смешанная нагрузка: тяжёлые скачивания и ZIP-выгрузки занимают потоки запросов,
+// а по метрике listing_duration видно, ждут ли за ними короткие листинги.
+//
+//   k6 run -e BASE_URL=http://localhost:8082 -e SESSION=<cookie SESSION> \
+//          -e LARGE_FILE=big.bin -e ZIP_FOLDER=photos -e LIST_FOLDER=docs loadtest/mixed-load.js
+import http from 'k6/http';
+import { check } from 'k6';
+import { Trend } from 'k6/metrics';
+
+const BASE_URL = __ENV.BASE_URL || 'http://localhost:8082';
+const params = { headers: { Cookie: `SESSION=${__ENV.SESSION}` }, responseType: 'none' };
+
+const listingDuration = new Trend('listing_duration', true);
+
+export const options = {
+    scenarios: {
+        downloads: {
+            executor: 'constant-vus',
+            exec: 'download',
+            vus: Number(__ENV.DOWNLOAD_VUS || 300),
+            duration: __ENV.DURATION || '2m',
+        },
+        zips: {
+            executor: 'constant-vus',
+            exec: 'zip',
+            vus: Number(__ENV.ZIP_VUS || 50),
+            duration: __ENV.DURATION || '2m',
+        },
+        listings: {
+            executor: 'constant-arrival-rate',
+            exec: 'listing',
+            rate: Number(__ENV.LIST_RATE || 50),
+            timeUnit: '1s',
+            duration: __ENV.DURATION || '2m',
+            preAllocatedVUs: 100,
+        },
+    },
+    thresholds: {
+        listing_duration: ['p(95)<500'],
+    },
+};
+
+export function download() {
+    const res = http.get(`${BASE_URL}/file?path=${encodeURIComponent(__ENV.LARGE_FILE)}`, params);
+    check(res, { 'download 200': (r) => r.status === 200 });
+}
+
+export function zip() {
+    const res = http.get(`${BASE_URL}/directory/download-folder?path=${encodeURIComponent(__ENV.ZIP_FOLDER)}`, params);
+    check(res, { 'zip 200': (r) => r.status === 200 });
+}
+
+export function listing() {
+    const res = http.get(`${BASE_URL}/directory?path=${encodeURIComponent(__ENV.LIST_FOLDER)}&limit=100`,
+        { headers: params.headers });
+    check(res, { 'listing 200': (r) => r.status === 200 });
+    listingDuration.add(res.timings.duration);
+}
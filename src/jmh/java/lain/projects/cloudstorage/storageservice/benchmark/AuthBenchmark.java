@@ -0,0 +1,99 @@
+package lain.projects.cloudstorage.storageservice.benchmark;
+
+import lain.projects.cloudstorage.model.User;
+import lain.projects.cloudstorage.model.security.UserDetailsImpl;
+import lain.projects.cloudstorage.storageservice.repository.UserRepository;
+import lain.projects.cloudstorage.storageservice.service.UserService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Цена получения принципала: loadUserByUsername (поход в Postgres имитируется задержкой dbLatencyMicros),
+ * который нужен только при входе, против разбора SecurityContext из сессии Redis, который Spring Session
+ * делает на каждый запрос с cookie. BCrypt сюда не входит: он тоже работает только при входе.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 5)
+@Threads(8)
+@Fork(1)
+public class AuthBenchmark {
+    private static final int USERS = 1000;
+
+    @Param({"0", "300"})
+    public int dbLatencyMicros;
+
+    private UserService userService;
+    private byte[] serializedContext;
+
+    @Setup
+    public void setUp() throws IOException {
+        UserRepository userRepository = mock(UserRepository.class);
+        when(userRepository.findByUsername(anyString())).thenAnswer(invocation -> {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(dbLatencyMicros));
+            String username = invocation.getArgument(0);
+            return Optional.of(user(username));
+        });
+
+        userService = new UserService(userRepository, null);
+
+        UserDetailsImpl details = new UserDetailsImpl(user("user-1"));
+        SecurityContextImpl context = new SecurityContextImpl(
+                UsernamePasswordAuthenticationToken.authenticated(details, null, details.getAuthorities()));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(context);
+        }
+        serializedContext = bytes.toByteArray();
+    }
+
+    @Benchmark
+    public UserDetails loadUserByUsername() {
+        return userService.loadUserByUsername("user-" + ThreadLocalRandom.current().nextInt(USERS));
+    }
+
+    // Не зависит от параметров: достаточно смотреть один набор
+    @Benchmark
+    public Object sessionContext() throws Exception {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serializedContext))) {
+            return in.readObject();
+        }
+    }
+
+    private static User user(String username) {
+        return User.builder()
+                .id(Long.parseLong(username.substring("user-".length())))
+                .username(username)
+                .password("$2a$10$7EqJtq98hPqEX7fNZaFWoOhi5BWX4Z2vYxkwsHjWGQzq1YzYjUQ1e")
+                .build();
+    }
+}
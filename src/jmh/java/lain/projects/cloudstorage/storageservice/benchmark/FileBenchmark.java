@@ -0,0 +1,87 @@
+package lain.projects.cloudstorage.storageservice.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Загрузка и скачивание одного файла. Размер выше части multipart (8 MiB) уводит загрузку
+ * в multipart upload, как и в проде.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class FileBenchmark {
+    private static final String UPLOADED = StorageFixture.ROOT + "uploaded.bin";
+    private static final String STORED = StorageFixture.ROOT + "stored.bin";
+
+    @Param({"4096", "1048576", "67108864"})
+    public int fileSize;
+
+    // Задержка каждого ответа заглушки, мс
+    @Param({"1"})
+    public int latencyMs;
+
+    // Скачивание из локального дискового кэша вместо MinIO
+    @Param({"false", "true"})
+    public boolean diskCache;
+
+    private StorageFixture fixture;
+    private MockMultipartFile upload;
+    private Path cacheDirectory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        cacheDirectory = diskCache ? Files.createTempDirectory("storage-disk-cache") : null;
+        fixture = new StorageFixture(Duration.ofMillis(latencyMs), cacheDirectory);
+
+        byte[] content = new byte[fileSize];
+        ThreadLocalRandom.current().nextBytes(content);
+        upload = new MockMultipartFile("files", "uploaded.bin", "application/octet-stream", content);
+        fixture.s3.put(STORED, content, "application/octet-stream");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        fixture.close();
+        if (cacheDirectory != null) {
+            FileSystemUtils.deleteRecursively(cacheDirectory);
+        }
+    }
+
+    @Benchmark
+    public void uploadFile() throws Exception {
+        fixture.fileService.uploadFile(UPLOADED, upload);
+    }
+
+    @Benchmark
+    public long downloadFile() throws Exception {
+        try (InputStream in = fixture.fileService.downloadFile(STORED)) {
+            return in.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package lain.projects.cloudstorage.storageservice.benchmark;
+
+import lain.projects.cloudstorage.storageservice.dto.FolderPage;
+import lain.projects.cloudstorage.storageservice.dto.ListingSort;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Листинг первой страницы и ZIP-архив папки. Дерево не меняется, поэтому заполняется один раз на прогон.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class FolderReadBenchmark {
+    private static final String TREE = StorageFixture.ROOT + "tree/";
+
+    @Param({"WIDE", "DEEP", "MANY_TINY", "FEW_HUGE"})
+    public TreeShape shape;
+
+    // Задержка каждого ответа заглушки, мс
+    @Param({"1"})
+    public int latencyMs;
+
+    @Param({"100"})
+    public int pageSize;
+
+    private StorageFixture fixture;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        fixture = new StorageFixture(Duration.ofMillis(latencyMs));
+        shape.seed(fixture.s3, TREE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    public FolderPage listFolder() throws Exception {
+        return fixture.folderService.listFolder(TREE, ListingSort.NAME, null, pageSize);
+    }
+
+    @Benchmark
+    public void streamFolderAsZip() throws Exception {
+        fixture.folderService.streamFolderAsZip(TREE, OutputStream.nullOutputStream());
+    }
+}
@@ -0,0 +1,80 @@
+package lain.projects.cloudstorage.storageservice.benchmark;
+
+import lain.projects.cloudstorage.storageservice.dto.JobStatus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.NavigableMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Перенос и рекурсивное удаление папки. Оба вызова разрушают дерево, поэтому перед каждым
+ * вызовом заглушка возвращается к исходному снимку, а время меряется по одному вызову.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class FolderWriteBenchmark {
+    private static final String TREE = StorageFixture.ROOT + "tree/";
+    private static final String TARGET = StorageFixture.ROOT + "moved/";
+
+    @Param({"WIDE", "DEEP", "MANY_TINY", "FEW_HUGE"})
+    public TreeShape shape;
+
+    // Задержка каждого ответа заглушки, мс
+    @Param({"1"})
+    public int latencyMs;
+
+    private StorageFixture fixture;
+    private NavigableMap<String, S3StandIn.StoredObject> seeded;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        fixture = new StorageFixture(Duration.ofMillis(latencyMs));
+        shape.seed(fixture.s3, TREE);
+        seeded = fixture.s3.snapshot();
+    }
+
+    @Setup(Level.Invocation)
+    public void restore() {
+        fixture.s3.restore(seeded);
+    }
+
+    // Задача, упавшая внутри JobService, не бросает наружу — проверяем результат по содержимому заглушки
+    @TearDown(Level.Invocation)
+    public void verify() {
+        if (fixture.s3.hasPrefix(TREE)) {
+            throw new IllegalStateException("Folder " + TREE + " was not fully processed");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    public JobStatus moveFolder() {
+        return fixture.folderService.moveFolder(TREE, TARGET, StorageFixture.USER_ID);
+    }
+
+    @Benchmark
+    public JobStatus deleteRecursiveFolder() {
+        return fixture.folderService.deleteRecursiveFolder(TREE, StorageFixture.USER_ID);
+    }
+}
@@ -0,0 +1,431 @@
+package lain.projects.cloudstorage.storageservice.benchmark;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * S3-совместимая заглушка в памяти процесса: path-style запросы одного бакета, подпись не проверяется.
+ * Умеет ровно то, что вызывают сервисы: листинг v2, get/head/put/copy/delete, пакетное удаление
+ * и multipart upload. Каждый ответ задерживается на latency — это сетевой круг до MinIO.
+ */
+final class S3StandIn implements AutoCloseable {
+    private static final String NAMESPACE = "http://s3.amazonaws.com/doc/2006-03-01/";
+    // Форматы, которые ожидает minio-java: миллисекунды ровно тремя цифрами, день месяца — двумя
+    private static final DateTimeFormatter XML_DATE =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'").withZone(ZoneOffset.UTC);
+    private static final DateTimeFormatter HTTP_DATE =
+            DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US).withZone(ZoneOffset.UTC);
+    private static final Pattern DELETE_KEY = Pattern.compile("<Key>(.*?)</Key>", Pattern.DOTALL);
+    private static final int DEFAULT_MAX_KEYS = 1000;
+    // \uFFFF недопустим в XML, поэтому прыжок через общий префикс кодируется в токене отдельно
+    private static final String KEY_TOKEN = "K:";
+    private static final String PREFIX_TOKEN = "P:";
+
+    record StoredObject(byte[] data, String etag, String contentType, Map<String, String> metadata,
+                        Instant lastModified) {
+    }
+
+    private record Upload(String key, String contentType, Map<String, String> metadata,
+                          ConcurrentSkipListMap<Integer, byte[]> parts) {
+    }
+
+    private final String bucket;
+    private final Duration latency;
+    private final ConcurrentSkipListMap<String, StoredObject> objects = new ConcurrentSkipListMap<>();
+    private final Map<String, Upload> uploads = new ConcurrentHashMap<>();
+    private final AtomicLong etags = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final HttpServer server;
+
+    S3StandIn(String bucket, Duration latency) throws IOException {
+        this.bucket = bucket;
+        this.latency = latency;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    String endpoint() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    long requestCount() {
+        return requests.get();
+    }
+
+    void put(String key, byte[] data, String contentType) {
+        objects.put(key, new StoredObject(data, nextEtag(), contentType, Map.of(), Instant.now()));
+    }
+
+    boolean hasPrefix(String prefix) {
+        String key = objects.ceilingKey(prefix);
+        return key != null && key.startsWith(prefix);
+    }
+
+    NavigableMap<String, StoredObject> snapshot() {
+        return new TreeMap<>(objects);
+    }
+
+    // Содержимое объектов не копируется: массивы байт после записи не меняются
+    void restore(NavigableMap<String, StoredObject> snapshot) {
+        objects.clear();
+        objects.putAll(snapshot);
+        uploads.clear();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        try {
+            if (!latency.isZero()) {
+                Thread.sleep(latency);
+            }
+
+            String path = exchange.getRequestURI().getRawPath().substring(1);
+            int slash = path.indexOf('/');
+            String key = slash < 0 ? "" : decode(path.substring(slash + 1));
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            String method = exchange.getRequestMethod();
+
+            if (key.isEmpty()) {
+                switch (method) {
+                    case "GET" -> list(exchange, query);
+                    case "POST" -> deleteMany(exchange);
+                    case "HEAD" -> exchange.sendResponseHeaders(200, -1);
+                    default -> error(exchange, 501, "NotImplemented", key);
+                }
+                return;
+            }
+
+            switch (method) {
+                case "GET" -> get(exchange, key, false);
+                case "HEAD" -> get(exchange, key, true);
+                case "PUT" -> {
+                    if (query.containsKey("uploadId")) {
+                        uploadPart(exchange, query);
+                    } else if (exchange.getRequestHeaders().containsKey("x-amz-copy-source")) {
+                        copy(exchange, key);
+                    } else {
+                        put(exchange, key);
+                    }
+                }
+                case "POST" -> {
+                    if (query.containsKey("uploads")) {
+                        initiateUpload(exchange, key);
+                    } else {
+                        completeUpload(exchange, key, query.get("uploadId"));
+                    }
+                }
+                case "DELETE" -> {
+                    if (query.containsKey("uploadId")) {
+                        uploads.remove(query.get("uploadId"));
+                    } else {
+                        objects.remove(key);
+                    }
+                    exchange.sendResponseHeaders(204, -1);
+                }
+                default -> error(exchange, 501, "NotImplemented", key);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            error(exchange, 500, "InternalError", e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void list(HttpExchange exchange, Map<String, String> query) throws IOException {
+        String prefix = query.getOrDefault("prefix", "");
+        String delimiter = query.get("delimiter");
+        int maxKeys = query.containsKey("max-keys") ? Integer.parseInt(query.get("max-keys")) : DEFAULT_MAX_KEYS;
+        String after = query.containsKey("continuation-token")
+                ? fromToken(query.get("continuation-token"))
+                : query.get("start-after");
+
+        StringBuilder contents = new StringBuilder();
+        int count = 0;
+        String token = null;
+        String cursor = after != null && after.compareTo(prefix) >= 0 ? after : null;
+        String key = cursor == null ? objects.ceilingKey(prefix) : objects.higherKey(cursor);
+
+        while (key != null && key.startsWith(prefix) && count < maxKeys) {
+            int split = delimiter == null ? -1 : key.indexOf(delimiter, prefix.length());
+            if (split >= 0) {
+                String commonPrefix = key.substring(0, split + delimiter.length());
+                contents.append("<CommonPrefixes><Prefix>").append(escape(commonPrefix))
+                        .append("</Prefix></CommonPrefixes>");
+                // Всё, что лежит под общим префиксом, пропускаем одним прыжком
+                cursor = commonPrefix + Character.MAX_VALUE;
+                token = PREFIX_TOKEN + commonPrefix;
+            } else {
+                StoredObject object = objects.get(key);
+                if (object != null) {
+                    contents.append("<Contents><Key>").append(escape(key))
+                            .append("</Key><LastModified>").append(XML_DATE.format(object.lastModified()))
+                            .append("</LastModified><ETag>&quot;").append(object.etag())
+                            .append("&quot;</ETag><Size>").append(object.data().length)
+                            .append("</Size><StorageClass>STANDARD</StorageClass></Contents>");
+                }
+                cursor = key;
+                token = KEY_TOKEN + key;
+            }
+            count++;
+            key = objects.higherKey(cursor);
+        }
+        boolean truncated = key != null && key.startsWith(prefix);
+
+        StringBuilder xml = new StringBuilder("<ListBucketResult xmlns=\"" + NAMESPACE + "\">")
+                .append("<Name>").append(bucket).append("</Name>")
+                .append("<Prefix>").append(escape(prefix)).append("</Prefix>")
+                .append("<KeyCount>").append(count).append("</KeyCount>")
+                .append("<MaxKeys>").append(maxKeys).append("</MaxKeys>");
+        if (delimiter != null) {
+            xml.append("<Delimiter>").append(escape(delimiter)).append("</Delimiter>");
+        }
+        xml.append("<IsTruncated>").append(truncated).append("</IsTruncated>");
+        if (truncated) {
+            xml.append("<NextContinuationToken>").append(escape(token)).append("</NextContinuationToken>");
+        }
+        xml.append(contents).append("</ListBucketResult>");
+        sendXml(exchange, 200, xml.toString());
+    }
+
+    private void get(HttpExchange exchange, String key, boolean headOnly) throws IOException {
+        StoredObject object = objects.get(key);
+        if (object == null) {
+            error(exchange, 404, "NoSuchKey", key);
+            return;
+        }
+
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("ETag", "\"" + object.etag() + "\"");
+        headers.set("Last-Modified", HTTP_DATE.format(object.lastModified()));
+        headers.set("Content-Type", object.contentType());
+        headers.set("Accept-Ranges", "bytes");
+        object.metadata().forEach((name, value) -> headers.set("x-amz-meta-" + name, value));
+
+        byte[] data = object.data();
+        if (headOnly) {
+            headers.set("Content-Length", Long.toString(data.length));
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+
+        int from = 0;
+        int to = data.length - 1;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (range != null && range.startsWith("bytes=")) {
+            String[] bounds = range.substring("bytes=".length()).split("-", 2);
+            from = Integer.parseInt(bounds[0]);
+            if (!bounds[1].isEmpty()) {
+                to = Math.min(to, Integer.parseInt(bounds[1]));
+            }
+            headers.set("Content-Range", "bytes " + from + "-" + to + "/" + data.length);
+        }
+
+        int length = to - from + 1;
+        exchange.sendResponseHeaders(range == null ? 200 : 206, length == 0 ? -1 : length);
+        if (length > 0) {
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(data, from, length);
+            }
+        }
+    }
+
+    private void put(HttpExchange exchange, String key) throws IOException {
+        byte[] data = exchange.getRequestBody().readAllBytes();
+        StoredObject object = new StoredObject(data, nextEtag(), contentTypeOf(exchange),
+                metadataOf(exchange.getRequestHeaders()), Instant.now());
+        objects.put(key, object);
+
+        exchange.getResponseHeaders().set("ETag", "\"" + object.etag() + "\"");
+        exchange.sendResponseHeaders(200, -1);
+    }
+
+    private void copy(HttpExchange exchange, String key) throws IOException {
+        String source = decode(exchange.getRequestHeaders().getFirst("x-amz-copy-source"));
+        source = source.startsWith("/") ? source.substring(1) : source;
+        source = source.substring(source.indexOf('/') + 1);
+
+        StoredObject original = objects.get(source);
+        if (original == null) {
+            error(exchange, 404, "NoSuchKey", source);
+            return;
+        }
+
+        boolean replace = "REPLACE".equals(exchange.getRequestHeaders().getFirst("x-amz-metadata-directive"));
+        StoredObject copy = new StoredObject(original.data(), nextEtag(),
+                replace ? contentTypeOf(exchange) : original.contentType(),
+                replace ? metadataOf(exchange.getRequestHeaders()) : original.metadata(),
+                Instant.now());
+        objects.put(key, copy);
+
+        sendXml(exchange, 200, "<CopyObjectResult xmlns=\"" + NAMESPACE + "\"><ETag>&quot;" + copy.etag()
+                + "&quot;</ETag><LastModified>" + XML_DATE.format(copy.lastModified())
+                + "</LastModified></CopyObjectResult>");
+    }
+
+    private void deleteMany(HttpExchange exchange) throws IOException {
+        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        Matcher matcher = DELETE_KEY.matcher(body);
+        while (matcher.find()) {
+            objects.remove(unescape(matcher.group(1)));
+        }
+        sendXml(exchange, 200, "<DeleteResult xmlns=\"" + NAMESPACE + "\"></DeleteResult>");
+    }
+
+    private void initiateUpload(HttpExchange exchange, String key) throws IOException {
+        String uploadId = UUID.randomUUID().toString();
+        uploads.put(uploadId, new Upload(key, contentTypeOf(exchange), metadataOf(exchange.getRequestHeaders()),
+                new ConcurrentSkipListMap<>()));
+
+        sendXml(exchange, 200, "<InitiateMultipartUploadResult xmlns=\"" + NAMESPACE + "\"><Bucket>" + bucket
+                + "</Bucket><Key>" + escape(key) + "</Key><UploadId>" + uploadId
+                + "</UploadId></InitiateMultipartUploadResult>");
+    }
+
+    private void uploadPart(HttpExchange exchange, Map<String, String> query) throws IOException {
+        Upload upload = uploads.get(query.get("uploadId"));
+        if (upload == null) {
+            error(exchange, 404, "NoSuchUpload", query.get("uploadId"));
+            return;
+        }
+
+        upload.parts().put(Integer.parseInt(query.get("partNumber")), exchange.getRequestBody().readAllBytes());
+        exchange.getResponseHeaders().set("ETag", "\"" + nextEtag() + "\"");
+        exchange.sendResponseHeaders(200, -1);
+    }
+
+    private void completeUpload(HttpExchange exchange, String key, String uploadId) throws IOException {
+        exchange.getRequestBody().readAllBytes();
+        Upload upload = uploadId == null ? null : uploads.remove(uploadId);
+        if (upload == null) {
+            error(exchange, 404, "NoSuchUpload", uploadId);
+            return;
+        }
+
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        for (byte[] part : upload.parts().values()) {
+            data.writeBytes(part);
+        }
+        StoredObject object = new StoredObject(data.toByteArray(), nextEtag(), upload.contentType(),
+                upload.metadata(), Instant.now());
+        objects.put(key, object);
+
+        sendXml(exchange, 200, "<CompleteMultipartUploadResult xmlns=\"" + NAMESPACE + "\"><Location>"
+                + endpoint() + "/" + bucket + "/" + escape(key) + "</Location><Bucket>" + bucket
+                + "</Bucket><Key>" + escape(key) + "</Key><ETag>&quot;" + object.etag()
+                + "&quot;</ETag></CompleteMultipartUploadResult>");
+    }
+
+    private void error(HttpExchange exchange, int status, String code, String resource) throws IOException {
+        String xml = "<Error><Code>" + code + "</Code><Message>" + code + "</Message><BucketName>" + bucket
+                + "</BucketName><Key>" + escape(String.valueOf(resource)) + "</Key><Resource>/" + bucket + "/"
+                + escape(String.valueOf(resource)) + "</Resource><RequestId>" + requests.get()
+                + "</RequestId><HostId>s3-stand-in</HostId></Error>";
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        sendXml(exchange, status, xml);
+    }
+
+    private void sendXml(HttpExchange exchange, int status, String xml) throws IOException {
+        byte[] body = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + xml).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/xml");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static String fromToken(String token) {
+        String value = token.substring(2);
+        return token.startsWith(PREFIX_TOKEN) ? value + Character.MAX_VALUE : value;
+    }
+
+    private String nextEtag() {
+        return Long.toHexString(etags.incrementAndGet());
+    }
+
+    private static String contentTypeOf(HttpExchange exchange) {
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        return contentType == null ? "application/octet-stream" : contentType;
+    }
+
+    private static Map<String, String> metadataOf(Headers headers) {
+        Map<String, String> metadata = new HashMap<>();
+        headers.forEach((name, values) -> {
+            String lower = name.toLowerCase(Locale.ROOT);
+            if (lower.startsWith("x-amz-meta-") && !values.isEmpty()) {
+                metadata.put(lower.substring("x-amz-meta-".length()), values.get(0));
+            }
+        });
+        return metadata;
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (String pair : List.of(rawQuery.split("&"))) {
+            int eq = pair.indexOf('=');
+            if (eq < 0) {
+                query.put(decode(pair), "");
+            } else {
+                query.put(decode(pair.substring(0, eq)), decode(pair.substring(eq + 1)));
+            }
+        }
+        return query;
+    }
+
+    private static String decode(String value) {
+        return URLDecoder.decode(value.replace("+", "%2B"), StandardCharsets.UTF_8);
+    }
+
+    private static String escape(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;")
+                .replace("\"", "&quot;").replace("'", "&apos;");
+    }
+
+    private static String unescape(String value) {
+        return value.replace("&lt;", "<").replace("&gt;", ">").replace("&quot;", "\"")
+                .replace("&apos;", "'").replace("&amp;", "&");
+    }
+}
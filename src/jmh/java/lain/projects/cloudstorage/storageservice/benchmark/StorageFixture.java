@@ -0,0 +1,141 @@
+package lain.projects.cloudstorage.storageservice.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import io.minio.MinioClient;
+import lain.projects.cloudstorage.storageservice.repository.minio.MinioFileStorageRepository;
+import lain.projects.cloudstorage.storageservice.repository.redis.JobRepository;
+import lain.projects.cloudstorage.storageservice.repository.redis.RelocationCheckpointRepository;
+import lain.projects.cloudstorage.storageservice.service.BlobRegistry;
+import lain.projects.cloudstorage.storageservice.service.BulkDeleteService;
+import lain.projects.cloudstorage.storageservice.service.DedupService;
+import lain.projects.cloudstorage.storageservice.service.DiskCache;
+import lain.projects.cloudstorage.storageservice.service.FileService;
+import lain.projects.cloudstorage.storageservice.service.FolderArchiver;
+import lain.projects.cloudstorage.storageservice.service.FolderService;
+import lain.projects.cloudstorage.storageservice.service.FolderStatsService;
+import lain.projects.cloudstorage.storageservice.service.JobService;
+import lain.projects.cloudstorage.storageservice.service.MetadataIndexService;
+import lain.projects.cloudstorage.storageservice.service.RelocationService;
+import lain.projects.cloudstorage.storageservice.service.StorageCache;
+import lain.projects.cloudstorage.storageservice.service.StorageMetrics;
+import lain.projects.cloudstorage.storageservice.service.UsageService;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.core.task.support.ExecutorServiceAdapter;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.util.ReflectionTestUtils.invokeMethod;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+/**
+ * Сервисы хранилища, собранные руками поверх S3StandIn, с теми же значениями по умолчанию,
+ * что и в application.yaml. Redis и Postgres заменены заглушками: кэш, квоты, индекс, итоги папок
+ * и дедупликация выключены, а фоновые задачи выполняются в вызывающем потоке, так что moveFolder
+ * и deleteRecursiveFolder возвращаются уже после переноса.
+ */
+final class StorageFixture implements AutoCloseable {
+    static final String BUCKET = "user-files";
+    static final Long USER_ID = 1L;
+    static final String ROOT = "user-1-files/";
+
+    final S3StandIn s3;
+    final FileService fileService;
+    final FolderService folderService;
+
+    private final ExecutorService storageExecutor;
+
+    StorageFixture(Duration latency) throws IOException {
+        this(latency, null);
+    }
+
+    /**
+     * @param diskCacheDirectory каталог дискового кэша скачиваний или null, чтобы его не включать
+     */
+    StorageFixture(Duration latency, Path diskCacheDirectory) throws IOException {
+        s3 = new S3StandIn(BUCKET, latency);
+
+        // Как в MinioConfig: 64 одновременных запроса на хост вместо 5 по умолчанию у OkHttp
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(256);
+        dispatcher.setMaxRequestsPerHost(64);
+        MinioClient minioClient = MinioClient.builder()
+                .endpoint(s3.endpoint())
+                .credentials("benchmark", "benchmark-secret")
+                .region("us-east-1")
+                .httpClient(new OkHttpClient.Builder().dispatcher(dispatcher).build())
+                .build();
+
+        storageExecutor = Executors.newFixedThreadPool(16);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        StorageMetrics storageMetrics = new StorageMetrics(meterRegistry);
+        ApplicationEventPublisher eventPublisher = event -> {
+        };
+        BlobRegistry blobRegistry = mock(BlobRegistry.class);
+
+        StorageCache storageCache = new StorageCache(null, null, meterRegistry);
+        setField(storageCache, "enabled", false);
+
+        DiskCache diskCache = new DiskCache(meterRegistry);
+        if (diskCacheDirectory != null) {
+            setField(diskCache, "enabled", true);
+            setField(diskCache, "directory", diskCacheDirectory);
+            setField(diskCache, "maxSize", DataSize.ofGigabytes(1));
+            setField(diskCache, "maxObjectSize", DataSize.ofMegabytes(256));
+            invokeMethod(diskCache, "init");
+        }
+
+        MinioFileStorageRepository fileStorage = new MinioFileStorageRepository(minioClient);
+        setField(fileStorage, "bucket", BUCKET);
+        setField(fileStorage, "streamPartSize", DataSize.ofMegabytes(8));
+
+        fileService = new FileService(fileStorage, storageCache, diskCache, mock(UsageService.class),
+                mock(DedupService.class), storageMetrics, eventPublisher);
+
+        BulkDeleteService bulkDeleteService = new BulkDeleteService(fileStorage, storageExecutor, blobRegistry,
+                eventPublisher);
+        setField(bulkDeleteService, "batchSize", 1000);
+        setField(bulkDeleteService, "maxInFlight", 4);
+
+        RelocationCheckpointRepository checkpointRepository = mock(RelocationCheckpointRepository.class);
+        when(checkpointRepository.tryLock(anyString(), anyString(), any())).thenReturn(true);
+        RelocationService relocationService = new RelocationService(fileStorage, storageExecutor,
+                bulkDeleteService, checkpointRepository, eventPublisher);
+        setField(relocationService, "chunkSize", 1000);
+        setField(relocationService, "maxInFlight", 16);
+        setField(relocationService, "lockTtl", Duration.ofMinutes(5));
+
+        JobService jobService = new JobService(mock(JobRepository.class), relocationService, bulkDeleteService,
+                new ExecutorServiceAdapter(new SyncTaskExecutor()), storageMetrics, ObservationRegistry.NOOP);
+        setField(jobService, "leaseTtl", Duration.ofMinutes(1));
+        setField(jobService, "retention", Duration.ofDays(1));
+
+        FolderArchiver folderArchiver = new FolderArchiver(fileStorage, storageExecutor, blobRegistry);
+        setField(folderArchiver, "prefetchDepth", 8);
+        setField(folderArchiver, "memoryBudget", DataSize.ofMegabytes(64));
+        setField(folderArchiver, "maxBufferedEntry", DataSize.ofMegabytes(8));
+        invokeMethod(folderArchiver, "init");
+
+        folderService = new FolderService(fileStorage, fileService, jobService, folderArchiver,
+                mock(MetadataIndexService.class), mock(FolderStatsService.class), blobRegistry, storageMetrics, storageCache, eventPublisher);
+        setField(folderService, "indexEnabled", false);
+    }
+
+    @Override
+    public void close() {
+        storageExecutor.shutdownNow();
+        s3.close();
+    }
+}
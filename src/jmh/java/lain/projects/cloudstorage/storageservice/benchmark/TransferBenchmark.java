@@ -0,0 +1,99 @@
+package lain.projects.cloudstorage.storageservice.benchmark;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lain.projects.cloudstorage.storageservice.service.TransferBuffers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.StreamUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.util.ReflectionTestUtils.invokeMethod;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+/**
+ * Копирование тела скачивания в выход сервлета: прежний transferTo, путь InputStreamResource
+ * (StreamUtils.copy) и пул TransferBuffers. Аллокации сравниваются с профайлером GC:
+ * loadtest/jmh.sh "TransferBenchmark -prof gc" — смотреть gc.alloc.rate.norm.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 5)
+@Threads(8)
+@Fork(1)
+public class TransferBenchmark {
+    // Сколько байт за раз отдаёт тело ответа MinIO (сегмент okio — 8 KiB)
+    private static final int SOURCE_CHUNK = 8 * 1024;
+
+    @Param({"65536", "16777216"})
+    public int fileSize;
+
+    private byte[] content;
+    private TransferBuffers transferBuffers;
+
+    @Setup
+    public void setUp() {
+        content = new byte[fileSize];
+        ThreadLocalRandom.current().nextBytes(content);
+
+        transferBuffers = new TransferBuffers(new SimpleMeterRegistry());
+        setField(transferBuffers, "bufferSize", DataSize.ofKilobytes(64));
+        setField(transferBuffers, "pooledBuffers", 256);
+        invokeMethod(transferBuffers, "init");
+    }
+
+    @Benchmark
+    public long transferTo() throws IOException {
+        return source().transferTo(OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public long streamUtilsCopy() throws IOException {
+        return StreamUtils.copy(source(), OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public long pooledBuffers() throws IOException {
+        return transferBuffers.copy(source(), OutputStream.nullOutputStream());
+    }
+
+    // ByteArrayInputStream переопределяет transferTo одной записью — сравнение было бы нечестным
+    private InputStream source() {
+        return new InputStream() {
+            private int position;
+
+            @Override
+            public int read() {
+                return position < content.length ? content[position++] & 0xff : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (position >= content.length) {
+                    return -1;
+                }
+                int count = Math.min(Math.min(len, SOURCE_CHUNK), content.length - position);
+                System.arraycopy(content, position, b, off, count);
+                position += count;
+                return count;
+            }
+        };
+    }
+}
@@ -0,0 +1,50 @@
+package lain.projects.cloudstorage.storageservice.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Формы дерева, на которых по-разному проявляются листинг, архив и массовые операции.
+ */
+public enum TreeShape {
+    // Одна папка с тысячами файлов — постраничный листинг и батчи удаления
+    WIDE(0, 0, 5_000, 4 * 1024),
+    // Длинная цепочка вложенных папок с парой десятков файлов на уровне
+    DEEP(1, 50, 20, 4 * 1024),
+    // Много крошечных файлов в разветвлённом дереве — стоимость запроса на объект
+    MANY_TINY(10, 2, 50, 256),
+    // Несколько больших файлов — пропускная способность потока байт
+    FEW_HUGE(0, 0, 4, 64 * 1024 * 1024);
+
+    private final int fanout;
+    private final int depth;
+    private final int filesPerFolder;
+    private final int fileSize;
+
+    TreeShape(int fanout, int depth, int filesPerFolder, int fileSize) {
+        this.fanout = fanout;
+        this.depth = depth;
+        this.filesPerFolder = filesPerFolder;
+        this.fileSize = fileSize;
+    }
+
+    /**
+     * Заполняет root (ключ папки с "/" на конце). Все файлы формы делят один массив байт.
+     */
+    void seed(S3StandIn s3, String root) {
+        byte[] content = new byte[fileSize];
+        ThreadLocalRandom.current().nextBytes(content);
+        seed(s3, root, 0, content);
+    }
+
+    private void seed(S3StandIn s3, String folder, int level, byte[] content) {
+        s3.put(folder, new byte[0], "application/x-directory");
+        for (int i = 0; i < filesPerFolder; i++) {
+            s3.put(folder + String.format("file-%05d.bin", i), content, "application/octet-stream");
+        }
+        if (level < depth) {
+            for (int i = 0; i < fanout; i++) {
+                seed(s3, folder + String.format("dir-%03d/", i), level + 1, content);
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package lain.projects.cloudstorage.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Entity
+@Table(name = "blob", indexes = {
+        @Index(name = "idx_blob_ref_count_updated_at", columnList = "ref_count, updated_at")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class Blob {
+    // SHA-256 содержимого в hex
+    @Id
+    @Column(name = "hash", length = 64)
+    private String hash;
+
+    @Column(name = "size", nullable = false)
+    private long size;
+
+    // Блоб с нулём ссылок удаляет сборщик после grace-периода
+    @Column(name = "ref_count", nullable = false)
+    private long refCount;
+
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+}
@@ -0,0 +1,28 @@
+package lain.projects.cloudstorage.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Entity
+@Table(name = "blob_reference", indexes = {
+        @Index(name = "idx_blob_reference_hash", columnList = "hash")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class BlobReference {
+    // Ключ пользовательского объекта-указателя
+    @Id
+    @Column(name = "path", length = 1024)
+    private String path;
+
+    @Column(name = "hash", length = 64, nullable = false)
+    private String hash;
+
+    @Column(name = "size", nullable = false)
+    private long size;
+}
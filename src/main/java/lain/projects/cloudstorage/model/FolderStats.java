@@ -0,0 +1,48 @@
+package lain.projects.cloudstorage.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Рекурсивные итоги папки: все файлы на любой глубине под path.
+ */
+@Entity
+@Table(name = "folder_stats", indexes = {
+        @Index(name = "idx_folder_stats_updated_at", columnList = "updated_at")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class FolderStats {
+    // Ключ папки с "/" на конце, включая корень пользователя
+    @Id
+    @Column(name = "path", length = 1024)
+    private String path;
+
+    // Логический размер: указатели на блобы считаются размером блоба
+    @Column(name = "bytes", nullable = false)
+    private long bytes;
+
+    @Column(name = "files", nullable = false)
+    private long files;
+
+    // Последнее изменение чего-либо внутри папки, включая удаления
+    @Column(name = "last_modified", nullable = false)
+    private Instant lastModified;
+
+    // Изменения с начала текущей пересборки; пересборка прибавляет их к результату скана
+    @Column(name = "delta_bytes", nullable = false)
+    private long deltaBytes;
+
+    @Column(name = "delta_files", nullable = false)
+    private long deltaFiles;
+
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+}
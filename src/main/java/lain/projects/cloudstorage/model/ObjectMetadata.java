@@ -0,0 +1,55 @@
+package lain.projects.cloudstorage.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Entity
+@Table(name = "object_metadata", indexes = {
+        @Index(name = "idx_object_metadata_parent_name", columnList = "parent, name"),
+        @Index(name = "idx_object_metadata_parent_size", columnList = "parent, size, name"),
+        @Index(name = "idx_object_metadata_parent_modified", columnList = "parent, last_modified, name"),
+        @Index(name = "idx_object_metadata_indexed_at", columnList = "indexed_at")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ObjectMetadata {
+    @Id
+    @Column(name = "path", length = 1024)
+    private String path;
+
+    @Column(name = "parent", length = 1024, nullable = false)
+    private String parent;
+
+    // Для папок с "/" на конце, как в листинге MinIO
+    @Column(name = "name", length = 1024, nullable = false)
+    private String name;
+
+    @Column(name = "size", nullable = false)
+    private long size;
+
+    @Column(name = "type", length = 16, nullable = false)
+    private String type; // FILE или DIRECTORY
+
+    @Column(name = "etag")
+    private String etag;
+
+    @Column(name = "content_type")
+    private String contentType;
+
+    @Column(name = "last_modified", nullable = false)
+    private Instant lastModified;
+
+    // false — папка существует только как общий префикс своих объектов
+    @Column(name = "marker", nullable = false)
+    private boolean marker;
+
+    @Column(name = "indexed_at", nullable = false)
+    private Instant indexedAt;
+}
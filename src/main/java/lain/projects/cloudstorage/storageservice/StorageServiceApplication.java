@@ -3,10 +3,12 @@ package lain.projects.cloudstorage.storageservice;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.session.data.redis.config.annotation.web.http.EnableRedisHttpSession;
 
 @SpringBootApplication
 @EnableRedisHttpSession
+@EnableScheduling
 @EntityScan(basePackages = "lain.projects.cloudstorage")
 public class StorageServiceApplication {
 
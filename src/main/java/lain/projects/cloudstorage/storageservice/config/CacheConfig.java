@@ -0,0 +1,22 @@
+package lain.projects.cloudstorage.storageservice.config;
+
+import lain.projects.cloudstorage.storageservice.service.StorageCache;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+@Configuration
+public class CacheConfig {
+
+    // Каждый узел слушает инвалидации остальных и сбрасывает свой локальный кэш
+    @Bean
+    public RedisMessageListenerContainer cacheInvalidationListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                            StorageCache storageCache) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(storageCache, new ChannelTopic(StorageCache.INVALIDATION_CHANNEL));
+        return container;
+    }
+}
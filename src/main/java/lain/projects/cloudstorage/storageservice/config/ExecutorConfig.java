@@ -0,0 +1,97 @@
+package lain.projects.cloudstorage.storageservice.config;
+
+import io.micrometer.context.ContextExecutorService;
+import io.micrometer.context.ContextSnapshotFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.support.ContextPropagatingTaskDecorator;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+public class ExecutorConfig {
+    @Value("${storage.executor.threads:16}")
+    private int threads;
+
+    @Value("${storage.executor.background-threads:2}")
+    private int backgroundThreads;
+
+    @Value("${storage.download.threads:64}")
+    private int downloadThreads;
+
+    @Value("${storage.download.queue-capacity:128}")
+    private int downloadQueueCapacity;
+
+    @Value("${storage.thumbnails.threads:2}")
+    private int thumbnailThreads;
+
+    @Value("${storage.thumbnails.queue-capacity:1000}")
+    private int thumbnailQueueCapacity;
+
+    // Тот же переключатель, что переводит Tomcat на виртуальные потоки
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    // Общий пул для параллельных запросов к MinIO внутри одной операции. С виртуальными потоками
+    // размер пула ничего не ограничивает: параллелизм держат BoundedExecution и лимит на хост MinIO
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService storageExecutor() {
+        if (virtualThreads) {
+            return propagating(Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("storage-", 0).factory()));
+        }
+        return propagating(Executors.newFixedThreadPool(threads));
+    }
+
+    // Долгие фоновые операции, которые сами раздают задачи в storageExecutor
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService backgroundExecutor() {
+        return propagating(Executors.newFixedThreadPool(backgroundThreads));
+    }
+
+    // Рендер превью. Очередь ограничена, и задача сверх неё отклоняется сразу: загрузка, которая
+    // её поставила, не ждёт, а пропущенное превью построится при первом запросе
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService thumbnailExecutor() {
+        return propagating(new ThreadPoolExecutor(thumbnailThreads, thumbnailThreads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(thumbnailQueueCapacity), Thread.ofPlatform().name("thumbnail-", 0).factory()));
+    }
+
+    // Копирование тел StreamingResponseBody (скачивания, архивы, превью); без него MVC берёт
+    // SimpleAsyncTaskExecutor с потоком на каждое скачивание. Сверх пула и очереди — 503. На виртуальных
+    // потоках пула нет, а сверх download.threads скачивание ждёт свободного места в потоке запроса
+    @Bean
+    public AsyncTaskExecutor downloadExecutor() {
+        if (virtualThreads) {
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("download-");
+            executor.setVirtualThreads(true);
+            executor.setConcurrencyLimit(downloadThreads);
+            executor.setTaskDecorator(new ContextPropagatingTaskDecorator());
+            return executor;
+        }
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("download-");
+        executor.setCorePoolSize(downloadThreads);
+        executor.setMaxPoolSize(downloadThreads);
+        executor.setQueueCapacity(downloadQueueCapacity);
+        executor.setTaskDecorator(new ContextPropagatingTaskDecorator());
+        executor.setRejectedExecutionHandler((task, pool) -> {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many concurrent downloads");
+        });
+        return executor;
+    }
+
+    // Задача продолжает текущее наблюдение (span) того потока, который её отправил
+    private static ExecutorService propagating(ExecutorService executor) {
+        return ContextExecutorService.wrap(executor, ContextSnapshotFactory.builder().build()::captureAll);
+    }
+}
@@ -1,10 +1,27 @@
 package lain.projects.cloudstorage.storageservice.config;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import io.minio.MinioAsyncClient;
 import io.minio.MinioClient;
+import lain.projects.cloudstorage.storageservice.repository.minio.HostConcurrencyLimiter;
+import lain.projects.cloudstorage.storageservice.repository.minio.MetricsInterceptor;
+import lain.projects.cloudstorage.storageservice.repository.minio.MinioMultipartClient;
+import lain.projects.cloudstorage.storageservice.repository.minio.RetryInterceptor;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 @Configuration
 public class MinioConfig {
     @Value("${minio.url}")
@@ -16,11 +33,101 @@ public class MinioConfig {
     @Value("${minio.secret-key}")
     private String secretKey;
 
+    @Value("${storage.minio.max-concurrent-requests:64}")
+    private int maxConcurrentRequests;
+
+    // Отдельно для GetObject и для PutObject/UploadPart, которые держат слот всю передачу
+    @Value("${storage.minio.max-concurrent-downloads:64}")
+    private int maxConcurrentDownloads;
+
+    @Value("${storage.minio.max-concurrent-uploads:32}")
+    private int maxConcurrentUploads;
+
+    @Value("${storage.minio.acquire-timeout:PT30S}")
+    private Duration acquireTimeout;
+
+    @Value("${storage.minio.max-idle-connections:64}")
+    private int maxIdleConnections;
+
+    @Value("${storage.minio.keep-alive:PT5M}")
+    private Duration keepAlive;
+
+    @Value("${storage.minio.connect-timeout:PT10S}")
+    private Duration connectTimeout;
+
+    @Value("${storage.minio.read-timeout:PT5M}")
+    private Duration readTimeout;
+
+    @Value("${storage.minio.write-timeout:PT5M}")
+    private Duration writeTimeout;
+
+    // HTTP/2 договаривается через ALPN, поэтому работает только при https-эндпоинте
+    @Value("${storage.minio.http2:false}")
+    private boolean http2;
+
+    @Value("${storage.minio.max-retries:2}")
+    private int maxRetries;
+
+    @Value("${storage.minio.retry-backoff:PT0.2S}")
+    private Duration retryBackoff;
+
     @Bean
-    public MinioClient minioClient(){
+    public ConnectionPool minioConnectionPool(MeterRegistry meterRegistry) {
+        ConnectionPool pool = new ConnectionPool(maxIdleConnections, keepAlive.toMillis(), TimeUnit.MILLISECONDS);
+        Gauge.builder("storage.minio.connections", pool, ConnectionPool::connectionCount)
+                .tag("state", "total")
+                .register(meterRegistry);
+        Gauge.builder("storage.minio.connections", pool, ConnectionPool::idleConnectionCount)
+                .tag("state", "idle")
+                .register(meterRegistry);
+        return pool;
+    }
+
+    // Общий для обоих клиентов: один пул соединений и один лимит на хост
+    @Bean
+    public OkHttpClient minioHttpClient(ConnectionPool minioConnectionPool, MeterRegistry meterRegistry,
+                                        ObservationRegistry observationRegistry) {
+        // Dispatcher по умолчанию пускает только 5 запросов на хост и не учитывает
+        // чтение тела ответа; реальное ограничение делает HostConcurrencyLimiter
+        Dispatcher dispatcher = new Dispatcher();
+        int perHost = maxConcurrentRequests + maxConcurrentDownloads + maxConcurrentUploads;
+        dispatcher.setMaxRequests(perHost * 4);
+        dispatcher.setMaxRequestsPerHost(perHost);
+
+        MetricsInterceptor metricsInterceptor = new MetricsInterceptor(observationRegistry);
+        return new OkHttpClient.Builder()
+                .connectionPool(minioConnectionPool)
+                .dispatcher(dispatcher)
+                .connectTimeout(connectTimeout)
+                .readTimeout(readTimeout)
+                .writeTimeout(writeTimeout)
+                .protocols(http2 ? List.of(Protocol.HTTP_2, Protocol.HTTP_1_1) : List.of(Protocol.HTTP_1_1))
+                // Порядок важен: каждая попытка берёт слот на хост заново, так что пауза перед повтором
+                // слот не держит; метрики считают каждую попытку
+                .addInterceptor(new RetryInterceptor(maxRetries, retryBackoff, meterRegistry))
+                .addInterceptor(new HostConcurrencyLimiter(maxConcurrentRequests, maxConcurrentDownloads,
+                        maxConcurrentUploads, acquireTimeout, meterRegistry))
+                .addInterceptor(metricsInterceptor)
+                .eventListenerFactory(metricsInterceptor.eventListenerFactory())
+                .build();
+    }
+
+    @Bean
+    public MinioClient minioClient(OkHttpClient minioHttpClient){
         return MinioClient.builder()
                 .endpoint(minioUrl)
                 .credentials(accessKey, secretKey)
+                .httpClient(minioHttpClient)
                 .build();
     }
+
+    @Bean
+    @ConditionalOnProperty(name = "storage.backend", havingValue = "minio", matchIfMissing = true)
+    public MinioMultipartClient minioMultipartClient(OkHttpClient minioHttpClient) {
+        return new MinioMultipartClient(MinioAsyncClient.builder()
+                .endpoint(minioUrl)
+                .credentials(accessKey, secretKey)
+                .httpClient(minioHttpClient)
+                .build(), minioHttpClient);
+    }
 }
@@ -0,0 +1,31 @@
+package lain.projects.cloudstorage.storageservice.config;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.multipart.support.StandardServletMultipartResolver;
+import org.springframework.web.servlet.DispatcherServlet;
+
+import java.util.Set;
+
+@Configuration
+public class MultipartConfig {
+    // Эти запросы разбираются потоково в контроллере, тело не должно быть прочитано заранее
+    public static final Set<String> STREAMING_PATHS = Set.of("/file/multi");
+
+    @Value("${spring.servlet.multipart.resolve-lazily:false}")
+    private boolean resolveLazily;
+
+    @Bean(name = DispatcherServlet.MULTIPART_RESOLVER_BEAN_NAME)
+    public StandardServletMultipartResolver multipartResolver() {
+        StandardServletMultipartResolver resolver = new StandardServletMultipartResolver() {
+            @Override
+            public boolean isMultipart(HttpServletRequest request) {
+                return !STREAMING_PATHS.contains(request.getServletPath()) && super.isMultipart(request);
+            }
+        };
+        resolver.setResolveLazily(resolveLazily);
+        return resolver;
+    }
+}
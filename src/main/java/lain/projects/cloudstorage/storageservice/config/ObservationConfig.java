@@ -0,0 +1,51 @@
+package lain.projects.cloudstorage.storageservice.config;
+
+import io.micrometer.common.KeyValue;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationHandler;
+import io.minio.errors.ErrorResponseException;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.server.ResponseStatusException;
+
+@Configuration
+public class ObservationConfig {
+    private static final String PREFIX = "storage.";
+
+    /**
+     * Счётчик ошибок по операции и причине: код ошибки S3, HTTP-статус или класс исключения.
+     * Таймер @Observed знает только класс исключения.
+     */
+    @Bean
+    public ObservationHandler<Observation.Context> storageErrorHandler(MeterRegistry meterRegistry) {
+        return new ObservationHandler<>() {
+            @Override
+            public void onError(Observation.Context context) {
+                KeyValue method = context.getLowCardinalityKeyValue("method");
+                String operation = method != null ? context.getName() + "." + method.getValue() : context.getName();
+                Counter.builder("storage.errors")
+                        .tag("operation", operation)
+                        .tag("cause", causeOf(context.getError()))
+                        .register(meterRegistry)
+                        .increment();
+            }
+
+            @Override
+            public boolean supportsContext(Observation.Context context) {
+                return context.getName() != null && context.getName().startsWith(PREFIX);
+            }
+        };
+    }
+
+    private static String causeOf(Throwable error) {
+        if (error instanceof ErrorResponseException e && e.errorResponse() != null) {
+            return e.errorResponse().code();
+        }
+        if (error instanceof ResponseStatusException e) {
+            return String.valueOf(e.getStatusCode().value());
+        }
+        return error == null ? "unknown" : error.getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,39 @@
+package lain.projects.cloudstorage.storageservice.config;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Проверяет при старте, что выбранное хранилище поддерживает включённые функции. Дедупликация
+ * и подписанные ссылки работают только поверх MinIO; загрузка по частям без него просто не подключается.
+ */
+@Configuration
+public class StorageBackendConfig {
+    public static final String MINIO = "minio";
+    public static final String FILESYSTEM = "filesystem";
+
+    @Value("${storage.backend:minio}")
+    private String backend;
+
+    @Value("${storage.dedup.enabled:false}")
+    private boolean dedupEnabled;
+
+    @Value("${storage.presigned.enabled:false}")
+    private boolean presignedEnabled;
+
+    @PostConstruct
+    void validate() {
+        if (!MINIO.equals(backend) && !FILESYSTEM.equals(backend)) {
+            throw new IllegalStateException("Unknown storage.backend: " + backend);
+        }
+        requireMinio(dedupEnabled, "storage.dedup.enabled");
+        requireMinio(presignedEnabled, "storage.presigned.enabled");
+    }
+
+    private void requireMinio(boolean enabled, String property) {
+        if (enabled && !MINIO.equals(backend)) {
+            throw new IllegalStateException(property + " requires storage.backend=" + MINIO + ", not " + backend);
+        }
+    }
+}
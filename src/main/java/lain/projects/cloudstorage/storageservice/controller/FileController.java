@@ -1,25 +1,72 @@
 package lain.projects.cloudstorage.storageservice.controller;
 
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lain.projects.cloudstorage.model.security.UserDetailsImpl;
-import org.springframework.core.io.Resource;
+import lain.projects.cloudstorage.storageservice.dto.FileStat;
+import lain.projects.cloudstorage.storageservice.dto.UploadResult;
 import lain.projects.cloudstorage.storageservice.service.FileService;
+import lain.projects.cloudstorage.storageservice.service.MultiUploadService;
+import lain.projects.cloudstorage.storageservice.service.ThumbnailService;
+import lain.projects.cloudstorage.storageservice.service.TransferBuffers;
+import lain.projects.cloudstorage.storageservice.service.ZipUploadService;
 import lombok.RequiredArgsConstructor;
-import org.springframework.core.io.InputStreamResource;
+import org.apache.commons.fileupload2.core.DiskFileItem;
+import org.apache.commons.fileupload2.core.DiskFileItemFactory;
+import org.apache.commons.fileupload2.core.FileUploadException;
+import org.apache.commons.fileupload2.jakarta.servlet6.JakartaServletFileUpload;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.util.UriUtils;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.zip.ZipException;
 
 @RestController
 @RequestMapping("/file")
 @RequiredArgsConstructor
 public class FileController {
     private final FileService fileService;
+    private final MultiUploadService multiUploadService;
+    private final ZipUploadService zipUploadService;
+    private final ThumbnailService thumbnailService;
+    private final TransferBuffers transferBuffers;
+
+    @Value("${storage.upload.multi.max-request-size:10GB}")
+    private DataSize maxRequestSize;
+
+    @Value("${storage.upload.multi.max-files:1000}")
+    private long maxFiles;
+
+    // Заголовки одной части; без предела длинные заголовки читаются в память целиком
+    @Value("${storage.upload.multi.max-part-header-size:512B}")
+    private DataSize maxPartHeaderSize;
+
+    @Value("${storage.thumbnails.cache-max-age:P365D}")
+    private Duration thumbnailMaxAge;
 
     @PostMapping
     public ResponseEntity<Void> upload(@RequestParam("path") String path,
@@ -31,17 +78,123 @@ public class FileController {
         return ResponseEntity.status(HttpStatus.CREATED).build();
     }
 
+    /**
+     * Тело отдаётся асинхронно: копирование идёт в потоке MVC async, а не в потоке Tomcat,
+     * так что медленный клиент не держит поток контейнера. null — ответ (304/416) уже сформирован.
+     */
     @GetMapping()
-    public ResponseEntity<Resource> download(@RequestParam("path") String path,
-                                             @AuthenticationPrincipal UserDetailsImpl user) throws Exception {
+    public StreamingResponseBody download(@RequestParam("path") String path,
+                                          HttpServletRequest request,
+                                          HttpServletResponse response,
+                                          @AuthenticationPrincipal UserDetailsImpl user) throws Exception {
         String fullPath = buildFullPath(user, path);
-        InputStream input = fileService.downloadFile(fullPath);
-        InputStreamResource resource = new InputStreamResource(input);
+        FileStat stat = fileService.statFile(fullPath);
+        String etag = "\"" + stat.etag() + "\"";
+        long length = stat.size();
+
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + path);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        // Выставляет ETag/Last-Modified и отвечает 304 на If-None-Match / If-Modified-Since
+        if (new ServletWebRequest(request, response).checkNotModified(etag, stat.lastModified().toEpochMilli())) {
+            return null;
+        }
+
+        String contentType = stat.contentType() != null ? stat.contentType() : MediaType.APPLICATION_OCTET_STREAM_VALUE;
+        List<HttpRange> ranges;
+        try {
+            ranges = requestedRanges(request, etag, stat);
+        } catch (IllegalArgumentException e) {
+            ranges = null;
+        }
+        if (ranges == null || ranges.stream().anyMatch(range -> range.getRangeStart(length) >= length)) {
+            response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+            return null;
+        }
+
+        if (ranges.isEmpty()) {
+            response.setContentType(contentType);
+            response.setContentLengthLong(length);
+            return out -> {
+                try {
+                    if (fileService.transferLocal(fullPath, stat, 0, length, out)) {
+                        return;
+                    }
+                    try (InputStream input = fileService.downloadFile(fullPath)) {
+                        transferBuffers.copy(input, out);
+                    }
+                } catch (IOException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new IOException(e);
+                }
+            };
+        }
 
-        return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + path)
-                .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                .body(resource);
+        response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+        if (ranges.size() == 1) {
+            long start = ranges.get(0).getRangeStart(length);
+            long end = ranges.get(0).getRangeEnd(length);
+            response.setContentType(contentType);
+            response.setContentLengthLong(end - start + 1);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+            return out -> copyRange(fullPath, stat, start, end, out);
+        }
+
+        String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        List<HttpRange> parts = ranges;
+        return out -> {
+            for (HttpRange range : parts) {
+                long start = range.getRangeStart(length);
+                long end = range.getRangeEnd(length);
+                out.write(("\r\n--" + boundary + "\r\n"
+                        + HttpHeaders.CONTENT_TYPE + ": " + contentType + "\r\n"
+                        + HttpHeaders.CONTENT_RANGE + ": bytes " + start + "-" + end + "/" + length + "\r\n\r\n")
+                        .getBytes(StandardCharsets.US_ASCII));
+                copyRange(fullPath, stat, start, end, out);
+            }
+            out.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+        };
+    }
+
+    /**
+     * 404, пока превью не готово; рендер при этом ставится в очередь. Если v совпадает с ETag самого файла,
+     * ответ кэшируется надолго: у новой версии файла будет другой v. Без v — только с перепроверкой по ETag.
+     */
+    @GetMapping("/thumbnail")
+    public StreamingResponseBody thumbnail(@RequestParam("path") String path,
+                                           @RequestParam(value = "size", defaultValue = "256") int size,
+                                           @RequestParam(value = "v", required = false) String version,
+                                           HttpServletRequest request,
+                                           HttpServletResponse response,
+                                           @AuthenticationPrincipal UserDetailsImpl user) throws Exception {
+        String fullPath = buildFullPath(user, path);
+        FileStat source = fileService.statFile(fullPath);
+        FileStat thumbnail = thumbnailService.find(source, size)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Thumbnail is not ready"));
+
+        // Превью построено именно из этой версии, поэтому под её ETag его можно кэшировать навсегда
+        boolean versioned = version != null && version.equals(source.etag());
+        response.setHeader(HttpHeaders.CACHE_CONTROL, versioned
+                ? CacheControl.maxAge(thumbnailMaxAge).cachePrivate().immutable().getHeaderValue()
+                : CacheControl.noCache().cachePrivate().getHeaderValue());
+        if (new ServletWebRequest(request, response).checkNotModified("\"" + thumbnail.etag() + "\"",
+                thumbnail.lastModified().toEpochMilli())) {
+            return null;
+        }
+
+        response.setContentType(thumbnail.contentType());
+        response.setContentLengthLong(thumbnail.size());
+        return out -> {
+            try (InputStream input = thumbnailService.open(thumbnail)) {
+                transferBuffers.copy(input, out);
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+        };
     }
 
     @DeleteMapping
@@ -52,16 +205,58 @@ public class FileController {
         return ResponseEntity.noContent().build();
     }
 
+    // Тело не разбирается Spring'ом (см. MultipartConfig), части читаются по мере прихода
     @PostMapping("/multi")
-    public ResponseEntity<Void> uploadMultiple(@RequestParam("path") String path,
-                                               @RequestParam("files") MultipartFile[] files,
-                                               @AuthenticationPrincipal UserDetailsImpl user) throws Exception {
+    public ResponseEntity<List<UploadResult>> uploadMultiple(HttpServletRequest request,
+                                                             @AuthenticationPrincipal UserDetailsImpl user) throws Exception {
+        // request.getParameter заставил бы Tomcat прочитать всё тело, поэтому path берём из query string
+        String path = UriComponentsBuilder.newInstance().query(request.getQueryString()).build()
+                .getQueryParams().getFirst("path");
+        if (path == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Parameter path is required");
+        }
+        if (!JakartaServletFileUpload.isMultipartContent(request)) {
+            throw new ResponseStatusException(HttpStatus.UNSUPPORTED_MEDIA_TYPE, "Expected multipart/form-data");
+        }
+        long contentLength = request.getContentLengthLong();
+        if (contentLength < 0) {
+            throw new ResponseStatusException(HttpStatus.LENGTH_REQUIRED, "Content-Length is required");
+        }
+
+        String fullPath = buildFullPath(user, UriUtils.decode(path, StandardCharsets.UTF_8));
+        JakartaServletFileUpload<DiskFileItem, DiskFileItemFactory> upload = new JakartaServletFileUpload<>();
+        upload.setSizeMax(maxRequestSize.toBytes());
+        upload.setFileCountMax(maxFiles);
+        upload.setMaxPartHeaderSize((int) maxPartHeaderSize.toBytes());
+
+        List<UploadResult> results;
+        try {
+            results = multiUploadService.uploadAll(user.getId(), fullPath, upload.getItemIterator(request), contentLength);
+        } catch (FileUploadException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage(), e);
+        }
+
+        boolean allCreated = results.stream().allMatch(result -> result.status() == UploadResult.Status.CREATED);
+        return ResponseEntity.status(allCreated ? HttpStatus.CREATED : HttpStatus.MULTI_STATUS).body(results);
+    }
+
+    // Тело — сам архив, а не форма, поэтому path из query string не заставляет Tomcat читать тело
+    @PostMapping(value = "/zip", consumes = {"application/zip", "application/x-zip-compressed",
+            MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    public ResponseEntity<List<UploadResult>> uploadZip(@RequestParam("path") String path,
+                                                        HttpServletRequest request,
+                                                        @AuthenticationPrincipal UserDetailsImpl user) throws Exception {
         String fullPath = buildFullPath(user, path);
-        for (MultipartFile file : files){
-            fileService.uploadFile(fullPath + "/" + file.getOriginalFilename(), file);
+
+        List<UploadResult> results;
+        try {
+            results = zipUploadService.extract(user.getId(), fullPath, request.getInputStream());
+        } catch (ZipException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Malformed ZIP archive: " + e.getMessage(), e);
         }
 
-        return ResponseEntity.status(HttpStatus.CREATED).build();
+        boolean allCreated = results.stream().allMatch(result -> result.status() == UploadResult.Status.CREATED);
+        return ResponseEntity.status(allCreated ? HttpStatus.CREATED : HttpStatus.MULTI_STATUS).body(results);
     }
 
     @GetMapping("/move")
@@ -83,6 +278,46 @@ public class FileController {
         return ResponseEntity.ok().build();
     }
 
+    private void copyRange(String fullPath, FileStat stat, long start, long end, OutputStream out) throws IOException {
+        try {
+            if (fileService.transferLocal(fullPath, stat, start, end - start + 1, out)) {
+                return;
+            }
+            try (InputStream input = fileService.downloadFile(fullPath, start, end - start + 1)) {
+                transferBuffers.copy(input, out);
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Пустой список — отдать файл целиком: Range нет или If-Range не совпал с текущей версией.
+     */
+    private List<HttpRange> requestedRanges(HttpServletRequest request, String etag, FileStat stat) {
+        String range = request.getHeader(HttpHeaders.RANGE);
+        if (range == null) {
+            return List.of();
+        }
+
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange != null && !ifRange.equals(etag) && !matchesLastModified(ifRange, stat)) {
+            return List.of();
+        }
+        return HttpRange.parseRanges(range);
+    }
+
+    private boolean matchesLastModified(String httpDate, FileStat stat) {
+        try {
+            Instant date = ZonedDateTime.parse(httpDate, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            return date.getEpochSecond() == stat.lastModified().getEpochSecond();
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
     private String buildFullPath(UserDetailsImpl user, String path) {
         String fullPath = "user-" + user.getId() + "-files/" + path;
         return fullPath;
@@ -1,23 +1,41 @@
 package lain.projects.cloudstorage.storageservice.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.servlet.http.HttpServletResponse;
 import lain.projects.cloudstorage.storageservice.dto.FileInfo;
+import lain.projects.cloudstorage.storageservice.dto.FolderPage;
+import lain.projects.cloudstorage.storageservice.dto.FolderStatistics;
+import lain.projects.cloudstorage.storageservice.dto.JobStatus;
+import lain.projects.cloudstorage.storageservice.dto.ListingSort;
 import lain.projects.cloudstorage.storageservice.service.FolderService;
 import lain.projects.cloudstorage.model.security.UserDetailsImpl;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.net.URI;
 import java.util.List;
 
 @RestController
 @RequestMapping("/directory")
 @RequiredArgsConstructor
 public class FolderController {
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
 
     private final FolderService folderService;
+    private final ObjectMapper objectMapper;
+
+    @Value("${storage.listing.default-page-size:1000}")
+    private int defaultPageSize;
+
+    @Value("${storage.listing.max-page-size:10000}")
+    private int maxPageSize;
 
     @PostMapping()
     public ResponseEntity<Void> createDirectory(@RequestParam("path") String path,
@@ -29,28 +47,64 @@ public class FolderController {
 
     @GetMapping()
     public ResponseEntity<List<FileInfo>> getDirectory(@RequestParam("path") String path,
+                                                       @RequestParam(value = "sort", defaultValue = "NAME") ListingSort sort,
+                                                       @RequestParam(value = "cursor", required = false) String cursor,
+                                                       @RequestParam(value = "limit", required = false) Integer limit,
                                                        @AuthenticationPrincipal UserDetailsImpl user) throws Exception {
         String fullPath = buildFullPath(user, path);
-        List<FileInfo> contents = folderService.listFolder(fullPath);
-        return ResponseEntity.ok(contents);
+        int pageSize = limit == null ? defaultPageSize : Math.min(Math.max(limit, 1), maxPageSize);
+        FolderPage page = folderService.listFolder(fullPath, sort, cursor, pageSize);
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.nextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.nextCursor());
+        }
+        return response.body(page.items());
+    }
+
+    @GetMapping(params = "format=ndjson")
+    public ResponseEntity<StreamingResponseBody> streamDirectory(@RequestParam("path") String path,
+                                                                 @RequestParam(value = "sort", defaultValue = "NAME") ListingSort sort,
+                                                                 @AuthenticationPrincipal UserDetailsImpl user) {
+        String fullPath = buildFullPath(user, path);
+        StreamingResponseBody body = out -> {
+            try {
+                folderService.streamFolder(fullPath, sort, info -> {
+                    out.write(objectMapper.writeValueAsBytes(info));
+                    out.write('\n');
+                });
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException(e);
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    @GetMapping("/stats")
+    public ResponseEntity<FolderStatistics> getDirectoryStats(@RequestParam("path") String path,
+                                                              @AuthenticationPrincipal UserDetailsImpl user) {
+        String fullPath = buildFullPath(user, path);
+        return ResponseEntity.ok(folderService.stats(fullPath));
     }
 
     @DeleteMapping()
-    public ResponseEntity<Void> deleteDirectory(@RequestParam("path") String path,
-                                                @AuthenticationPrincipal UserDetailsImpl user) throws Exception {
+    public ResponseEntity<JobStatus> deleteDirectory(@RequestParam("path") String path,
+                                                     @AuthenticationPrincipal UserDetailsImpl user) {
         String fullPath = buildFullPath(user, path);
-        folderService.deleteRecursiveFolder(fullPath);
-        return ResponseEntity.noContent().build();
+        return accepted(folderService.deleteRecursiveFolder(fullPath, user.getId()));
     }
 
     @GetMapping("/move-folder")
-    public ResponseEntity<Void> move(@RequestParam("from") String from,
-                                     @RequestParam("to") String to,
-                                     @AuthenticationPrincipal UserDetailsImpl user) throws Exception {
+    public ResponseEntity<JobStatus> move(@RequestParam("from") String from,
+                                          @RequestParam("to") String to,
+                                          @AuthenticationPrincipal UserDetailsImpl user) {
         String fromPath = buildFullPath(user, from);
         String toPath = buildFullPath(user, to);
-        folderService.moveFolder(from, to);
-        return ResponseEntity.ok().build();
+        return accepted(folderService.moveFolder(fromPath, toPath, user.getId()));
     }
 
     @GetMapping("/download-folder")
@@ -64,12 +118,17 @@ public class FolderController {
     }
 
     @GetMapping("/rename-folder")
-    public ResponseEntity<Void> renameFolder(@RequestParam("path") String path,
-                                             @RequestParam("newName") String newName,
-                                             @AuthenticationPrincipal UserDetailsImpl user) throws Exception {
+    public ResponseEntity<JobStatus> renameFolder(@RequestParam("path") String path,
+                                                  @RequestParam("newName") String newName,
+                                                  @AuthenticationPrincipal UserDetailsImpl user) {
         String fullPath = buildFullPath(user, path);
-        folderService.renameFolder(fullPath, newName);
-        return ResponseEntity.ok().build();
+        return accepted(folderService.renameFolder(fullPath, newName, user.getId()));
+    }
+
+    private ResponseEntity<JobStatus> accepted(JobStatus job) {
+        return ResponseEntity.accepted()
+                .location(URI.create("/jobs/" + job.id()))
+                .body(job);
     }
 
     private String buildFullPath(UserDetailsImpl user, String path) {
@@ -0,0 +1,24 @@
+package lain.projects.cloudstorage.storageservice.controller;
+
+import lain.projects.cloudstorage.model.security.UserDetailsImpl;
+import lain.projects.cloudstorage.storageservice.dto.JobStatus;
+import lain.projects.cloudstorage.storageservice.service.JobService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/jobs")
+@RequiredArgsConstructor
+public class JobController {
+    private final JobService jobService;
+
+    @GetMapping("/{id}")
+    public ResponseEntity<JobStatus> getJob(@PathVariable("id") String id,
+                                            @AuthenticationPrincipal UserDetailsImpl user) {
+        return jobService.findStatus(id, user.getId())
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+}
@@ -0,0 +1,62 @@
+package lain.projects.cloudstorage.storageservice.controller;
+
+import lain.projects.cloudstorage.model.security.UserDetailsImpl;
+import lain.projects.cloudstorage.storageservice.dto.PresignedUpload;
+import lain.projects.cloudstorage.storageservice.dto.PresignedUrl;
+import lain.projects.cloudstorage.storageservice.service.PresignedTransferService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+
+import java.net.URI;
+
+/**
+ * Ссылки для передачи напрямую в MinIO. Загрузка завершается и отменяется
+ * теми же вызовами, что и загрузка по частям: /file/upload/{id}/complete и DELETE /file/upload/{id}.
+ */
+@RestController
+@ConditionalOnProperty(name = "storage.backend", havingValue = "minio", matchIfMissing = true)
+@RequestMapping("/file/presigned")
+@RequiredArgsConstructor
+public class PresignedController {
+    private final PresignedTransferService presignedTransferService;
+
+    // redirect=true — сразу 302 на MinIO, удобно для ссылок в браузере
+    @GetMapping("/download")
+    public ResponseEntity<PresignedUrl> download(@RequestParam("path") String path,
+                                                 @RequestParam(value = "redirect", defaultValue = "false") boolean redirect,
+                                                 @AuthenticationPrincipal UserDetailsImpl user) throws Exception {
+        String fullPath = buildFullPath(user, path);
+        PresignedUrl url = presignedTransferService.download(fullPath);
+        if (redirect) {
+            return ResponseEntity.status(HttpStatus.FOUND).location(URI.create(url.url())).build();
+        }
+        return ResponseEntity.ok(url);
+    }
+
+    @PostMapping("/upload")
+    public ResponseEntity<PresignedUpload> upload(@RequestParam("path") String path,
+                                                  @RequestParam("size") long size,
+                                                  @RequestParam(value = "contentType", required = false) String contentType,
+                                                  @AuthenticationPrincipal UserDetailsImpl user) throws Exception {
+        String fullPath = buildFullPath(user, path);
+        PresignedUpload upload = presignedTransferService.upload(user.getId(), fullPath, size, contentType);
+        return ResponseEntity.status(HttpStatus.CREATED).body(upload);
+    }
+
+    @PostMapping("/upload/{id}/parts/{partNumber}")
+    public ResponseEntity<PresignedUrl> part(@PathVariable("id") String id,
+                                             @PathVariable("partNumber") int partNumber,
+                                             @RequestParam("size") long size,
+                                             @AuthenticationPrincipal UserDetailsImpl user) throws Exception {
+        return ResponseEntity.ok(presignedTransferService.part(id, user.getId(), partNumber, size));
+    }
+
+    private String buildFullPath(UserDetailsImpl user, String path) {
+        String fullPath = "user-" + user.getId() + "-files/" + path;
+        return fullPath;
+    }
+}
@@ -0,0 +1,53 @@
+package lain.projects.cloudstorage.storageservice.controller;
+
+import lain.projects.cloudstorage.model.security.UserDetailsImpl;
+import lain.projects.cloudstorage.storageservice.dto.FileInfo;
+import lain.projects.cloudstorage.storageservice.dto.FolderPage;
+import lain.projects.cloudstorage.storageservice.dto.SearchMode;
+import lain.projects.cloudstorage.storageservice.service.SearchService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/search")
+@RequiredArgsConstructor
+public class SearchController {
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    private final SearchService searchService;
+
+    @Value("${storage.search.default-page-size:100}")
+    private int defaultPageSize;
+
+    @Value("${storage.search.max-page-size:1000}")
+    private int maxPageSize;
+
+    /**
+     * path — папка, в которой искать (по умолчанию весь диск пользователя).
+     */
+    @GetMapping
+    public ResponseEntity<List<FileInfo>> search(@RequestParam("q") String query,
+                                                 @RequestParam(value = "mode", defaultValue = "SUBSTRING") SearchMode mode,
+                                                 @RequestParam(value = "path", defaultValue = "") String path,
+                                                 @RequestParam(value = "cursor", required = false) String cursor,
+                                                 @RequestParam(value = "limit", required = false) Integer limit,
+                                                 @AuthenticationPrincipal UserDetailsImpl user) {
+        String root = "user-" + user.getId() + "-files/" + path;
+        if (!root.endsWith("/")) {
+            root += "/";
+        }
+        int pageSize = limit == null ? defaultPageSize : Math.min(Math.max(limit, 1), maxPageSize);
+        FolderPage page = searchService.search(root, query, mode, cursor, pageSize);
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.nextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.nextCursor());
+        }
+        return response.body(page.items());
+    }
+}
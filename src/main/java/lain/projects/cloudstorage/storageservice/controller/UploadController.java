@@ -0,0 +1,65 @@
+package lain.projects.cloudstorage.storageservice.controller;
+
+import jakarta.servlet.http.HttpServletRequest;
+import lain.projects.cloudstorage.model.security.UserDetailsImpl;
+import lain.projects.cloudstorage.storageservice.dto.UploadPart;
+import lain.projects.cloudstorage.storageservice.dto.UploadStatus;
+import lain.projects.cloudstorage.storageservice.service.ChunkedUploadService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@ConditionalOnProperty(name = "storage.backend", havingValue = "minio", matchIfMissing = true)
+@RequestMapping("/file/upload")
+@RequiredArgsConstructor
+public class UploadController {
+    private final ChunkedUploadService chunkedUploadService;
+
+    @PostMapping
+    public ResponseEntity<UploadStatus> initiate(@RequestParam("path") String path,
+                                                 @RequestParam(value = "contentType", required = false) String contentType,
+                                                 @AuthenticationPrincipal UserDetailsImpl user) throws Exception {
+        String fullPath = buildFullPath(user, path);
+        UploadStatus status = chunkedUploadService.initiate(user.getId(), fullPath, contentType);
+        return ResponseEntity.status(HttpStatus.CREATED).body(status);
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<UploadStatus> status(@PathVariable("id") String id,
+                                               @AuthenticationPrincipal UserDetailsImpl user) {
+        return ResponseEntity.ok(chunkedUploadService.status(id, user.getId()));
+    }
+
+    @PutMapping("/{id}/parts/{partNumber}")
+    public ResponseEntity<UploadPart> uploadPart(@PathVariable("id") String id,
+                                                 @PathVariable("partNumber") int partNumber,
+                                                 HttpServletRequest request,
+                                                 @AuthenticationPrincipal UserDetailsImpl user) throws Exception {
+        UploadPart part = chunkedUploadService.uploadPart(id, user.getId(), partNumber,
+                request.getInputStream(), request.getContentLengthLong());
+        return ResponseEntity.ok(part);
+    }
+
+    @PostMapping("/{id}/complete")
+    public ResponseEntity<Void> complete(@PathVariable("id") String id,
+                                         @AuthenticationPrincipal UserDetailsImpl user) throws Exception {
+        chunkedUploadService.complete(id, user.getId());
+        return ResponseEntity.status(HttpStatus.CREATED).build();
+    }
+
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> abort(@PathVariable("id") String id,
+                                      @AuthenticationPrincipal UserDetailsImpl user) throws Exception {
+        chunkedUploadService.abort(id, user.getId());
+        return ResponseEntity.noContent().build();
+    }
+
+    private String buildFullPath(UserDetailsImpl user, String path) {
+        String fullPath = "user-" + user.getId() + "-files/" + path;
+        return fullPath;
+    }
+}
@@ -0,0 +1,21 @@
+package lain.projects.cloudstorage.storageservice.controller;
+
+import lain.projects.cloudstorage.model.security.UserDetailsImpl;
+import lain.projects.cloudstorage.storageservice.dto.Usage;
+import lain.projects.cloudstorage.storageservice.service.UsageService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/usage")
+@RequiredArgsConstructor
+public class UsageController {
+    private final UsageService usageService;
+
+    @GetMapping
+    public ResponseEntity<Usage> getUsage(@AuthenticationPrincipal UserDetailsImpl user) {
+        return ResponseEntity.ok(usageService.usage(user.getId()));
+    }
+}
@@ -3,6 +3,7 @@ package lain.projects.cloudstorage.storageservice.dto;
 public record FileInfo(
         String path,
         String name,
-        Long size, // null для папки
-        String type // FILE или DIRECTORY
+        Long size, // для папки — суммарный размер содержимого на любой глубине
+        String type, // FILE или DIRECTORY
+        Long files // число файлов в папке на любой глубине, null для файла
 ) {}
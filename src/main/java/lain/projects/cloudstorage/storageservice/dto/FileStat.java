@@ -0,0 +1,12 @@
+package lain.projects.cloudstorage.storageservice.dto;
+
+import java.time.Instant;
+
+public record FileStat(
+        String path,
+        long size,
+        String etag,
+        Instant lastModified,
+        String contentType,
+        String blob // хэш содержимого, если объект — указатель на дедуплицированный блоб
+) {}
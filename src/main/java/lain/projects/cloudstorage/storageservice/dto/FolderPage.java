@@ -0,0 +1,8 @@
+package lain.projects.cloudstorage.storageservice.dto;
+
+import java.util.List;
+
+public record FolderPage(
+        List<FileInfo> items,
+        String nextCursor // null, если это последняя страница
+) {}
@@ -0,0 +1,10 @@
+package lain.projects.cloudstorage.storageservice.dto;
+
+import java.time.Instant;
+
+public record FolderStatistics(
+        String path,
+        long bytes, // логический размер всех файлов на любой глубине
+        long files,
+        Instant lastModified // null, если в папке ещё ничего не менялось
+) {}
@@ -0,0 +1,26 @@
+package lain.projects.cloudstorage.storageservice.dto;
+
+import java.time.Instant;
+
+public record Job(
+        String id,
+        Type type,
+        Long userId,
+        String source,
+        String target, // null для DELETE
+        State state,
+        long processedObjects,
+        long totalObjects,
+        long processedBytes,
+        long errorCount,
+        Instant createdAt,
+        Instant updatedAt
+) {
+    public enum Type {RELOCATE, DELETE}
+
+    public enum State {QUEUED, RUNNING, COMPLETED, FAILED}
+
+    public boolean isActive() {
+        return state == State.QUEUED || state == State.RUNNING;
+    }
+}
@@ -0,0 +1,17 @@
+package lain.projects.cloudstorage.storageservice.dto;
+
+import java.time.Instant;
+import java.util.List;
+
+public record JobStatus(
+        String id,
+        Job.Type type,
+        Job.State state,
+        long processedObjects,
+        long totalObjects, // сколько объектов найдено листингом на данный момент
+        long processedBytes,
+        long errorCount,
+        List<ObjectFailure> errors,
+        Instant createdAt,
+        Instant updatedAt
+) {}
@@ -0,0 +1,5 @@
+package lain.projects.cloudstorage.storageservice.dto;
+
+public enum ListingSort {
+    NAME, SIZE, MODIFIED
+}
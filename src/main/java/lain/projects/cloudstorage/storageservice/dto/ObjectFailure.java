@@ -0,0 +1,6 @@
+package lain.projects.cloudstorage.storageservice.dto;
+
+public record ObjectFailure(
+        String path,
+        String reason
+) {}
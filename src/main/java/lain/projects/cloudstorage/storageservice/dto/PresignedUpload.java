@@ -0,0 +1,6 @@
+package lain.projects.cloudstorage.storageservice.dto;
+
+public record PresignedUpload(
+        UploadStatus upload, // завершение — POST /file/upload/{id}/complete
+        PresignedUrl part // ссылка на первую часть; для файла одним куском она единственная
+) {}
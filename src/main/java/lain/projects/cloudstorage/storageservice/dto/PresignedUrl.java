@@ -0,0 +1,9 @@
+package lain.projects.cloudstorage.storageservice.dto;
+
+import java.time.Instant;
+
+public record PresignedUrl(
+        String method, // GET или PUT
+        String url,
+        Instant expiresAt
+) {}
@@ -0,0 +1,18 @@
+package lain.projects.cloudstorage.storageservice.dto;
+
+import java.time.Instant;
+
+public record RelocationCheckpoint(
+        String id,
+        String from,
+        String to,
+        String startAfter, // последний ключ последнего завершённого чанка
+        long copiedObjects,
+        long copiedBytes,
+        Instant updatedAt
+) {
+    public RelocationCheckpoint advance(String lastKey, long objects, long bytes) {
+        return new RelocationCheckpoint(id, from, to, lastKey,
+                copiedObjects + objects, copiedBytes + bytes, Instant.now());
+    }
+}
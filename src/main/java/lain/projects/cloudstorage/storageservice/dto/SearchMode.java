@@ -0,0 +1,7 @@
+package lain.projects.cloudstorage.storageservice.dto;
+
+public enum SearchMode {
+    PREFIX, // имя начинается с запроса
+    SUBSTRING, // имя содержит запрос
+    GLOB // имя целиком совпадает с шаблоном: * — любая строка, ? — один символ
+}
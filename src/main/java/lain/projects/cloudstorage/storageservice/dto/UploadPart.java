@@ -0,0 +1,7 @@
+package lain.projects.cloudstorage.storageservice.dto;
+
+public record UploadPart(
+        int partNumber,
+        String etag, // null — часть выдана подписанной ссылкой и ещё не подтверждена
+        long size
+) {}
@@ -0,0 +1,11 @@
+package lain.projects.cloudstorage.storageservice.dto;
+
+public record UploadResult(
+        String path,
+        Status status,
+        String reason // null, если файл записан
+) {
+    public enum Status {
+        CREATED, FAILED
+    }
+}
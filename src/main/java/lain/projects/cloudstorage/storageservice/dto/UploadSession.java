@@ -0,0 +1,12 @@
+package lain.projects.cloudstorage.storageservice.dto;
+
+import java.time.Instant;
+
+public record UploadSession(
+        String id,
+        Long userId,
+        String path,
+        String uploadId, // id multipart upload в MinIO
+        String contentType,
+        Instant createdAt
+) {}
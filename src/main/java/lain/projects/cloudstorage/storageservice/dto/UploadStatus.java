@@ -0,0 +1,12 @@
+package lain.projects.cloudstorage.storageservice.dto;
+
+import java.time.Instant;
+import java.util.List;
+
+public record UploadStatus(
+        String id,
+        String path,
+        long maxPartSize,
+        List<UploadPart> parts, // уже принятые части, по возрастанию номера
+        Instant expiresAt
+) {}
@@ -0,0 +1,7 @@
+package lain.projects.cloudstorage.storageservice.dto;
+
+public record Usage(
+        long usedBytes,
+        long objects,
+        long quotaBytes
+) {}
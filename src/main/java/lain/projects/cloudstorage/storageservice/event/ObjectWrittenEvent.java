@@ -0,0 +1,15 @@
+package lain.projects.cloudstorage.storageservice.event;
+
+import java.time.Instant;
+
+/**
+ * Объект создан или перезаписан. Для папок — пустой объект-маркер с ключом на "/".
+ */
+public record ObjectWrittenEvent(
+        String path,
+        long size,
+        long previousSize, // -1, если объекта до записи не было
+        String etag,
+        String contentType,
+        Instant lastModified
+) {}
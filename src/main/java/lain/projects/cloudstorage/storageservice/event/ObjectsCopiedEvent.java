@@ -0,0 +1,22 @@
+package lain.projects.cloudstorage.storageservice.event;
+
+import java.util.List;
+
+/**
+ * Объекты sources скопированы в to + source.substring(from.length()).
+ * Удаление исходников при переносе приходит отдельным ObjectsRemovedEvent.
+ */
+public record ObjectsCopiedEvent(
+        String from,
+        String to,
+        List<String> sources,
+        List<Long> sizes // логические размеры sources в том же порядке
+) {
+    public long bytes() {
+        return sizes.stream().mapToLong(Long::longValue).sum();
+    }
+
+    public String targetOf(String source) {
+        return to + source.substring(from.length());
+    }
+}
@@ -0,0 +1,15 @@
+package lain.projects.cloudstorage.storageservice.event;
+
+import java.util.List;
+
+/**
+ * Удалённые объекты одного пользователя.
+ */
+public record ObjectsRemovedEvent(
+        List<String> paths,
+        List<Long> sizes // логические размеры paths в том же порядке
+) {
+    public long bytes() {
+        return sizes.stream().mapToLong(Long::longValue).sum();
+    }
+}
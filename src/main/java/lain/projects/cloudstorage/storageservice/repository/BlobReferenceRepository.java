@@ -0,0 +1,17 @@
+package lain.projects.cloudstorage.storageservice.repository;
+
+import lain.projects.cloudstorage.model.BlobReference;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface BlobReferenceRepository extends JpaRepository<BlobReference, String> {
+
+    @Query("select coalesce(sum(r.size), 0) from BlobReference r")
+    long sumReferencedBytes();
+
+    @Query("select coalesce(sum(r.size), 0) from BlobReference r where r.path like concat(:prefix, '%')")
+    long sumSizesUnder(@Param("prefix") String prefix);
+}
@@ -0,0 +1,46 @@
+package lain.projects.cloudstorage.storageservice.repository;
+
+import jakarta.persistence.LockModeType;
+import lain.projects.cloudstorage.model.Blob;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface BlobRepository extends JpaRepository<Blob, String> {
+
+    @Modifying
+    @Query("update Blob b set b.refCount = b.refCount + :delta, b.updatedAt = :now where b.hash = :hash")
+    int addReferences(@Param("hash") String hash, @Param("delta") long delta, @Param("now") Instant now);
+
+    // Два одновременных первых upload одного содержимого сходятся в одну строку
+    @Modifying
+    @Query(value = """
+            insert into blob (hash, size, ref_count, updated_at)
+            values (:hash, :size, :refCount, :now)
+            on conflict (hash) do update set
+                ref_count = blob.ref_count + excluded.ref_count,
+                updated_at = excluded.updated_at""", nativeQuery = true)
+    void upsert(@Param("hash") String hash,
+                @Param("size") long size,
+                @Param("refCount") long refCount,
+                @Param("now") Instant now);
+
+    @Query("select b.hash from Blob b where b.refCount <= 0 and b.updatedAt < :before")
+    List<String> findUnreferencedBefore(@Param("before") Instant before, Pageable pageable);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select b from Blob b where b.hash = :hash")
+    Optional<Blob> findForUpdate(@Param("hash") String hash);
+
+    @Query("select coalesce(sum(b.size), 0) from Blob b")
+    long sumStoredBytes();
+}
@@ -0,0 +1,94 @@
+package lain.projects.cloudstorage.storageservice.repository;
+
+import lain.projects.cloudstorage.storageservice.dto.ObjectFailure;
+import org.springframework.util.function.ThrowingConsumer;
+
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Хранилище объектов с ключами в духе S3: "user-1-files/a/b.txt", маркеры папок заканчиваются на "/".
+ * Реализация выбирается storage.backend: minio (по умолчанию) или filesystem.
+ */
+public interface FileStorageRepository {
+
+    InputStream get(String key) throws Exception;
+
+    /**
+     * Тело объекта, только если его etag всё ещё равен etag; иначе исключение.
+     */
+    InputStream get(String key, String etag) throws Exception;
+
+    InputStream get(String key, long offset, long length) throws Exception;
+
+    /**
+     * @param size длина тела или -1, если она заранее неизвестна
+     * @return etag записанного объекта
+     */
+    String put(String key, InputStream in, long size, String contentType) throws Exception;
+
+    /**
+     * put с пользовательскими метаданными (x-amz-meta-*), их возвращает stat.
+     * Хранилище без метаданных такие объекты не принимает.
+     */
+    default String put(String key, InputStream in, long size, String contentType,
+                       Map<String, String> userMetadata) throws Exception {
+        throw new UnsupportedOperationException("User metadata is not supported by this storage");
+    }
+
+    Optional<StoredObject> stat(String key) throws Exception;
+
+    /**
+     * Копия внутри хранилища, без передачи тела через узел.
+     */
+    void copy(String from, String to, long size) throws Exception;
+
+    /**
+     * @return ключи, которые удалить не удалось; отсутствующий ключ ошибкой не считается
+     */
+    List<ObjectFailure> delete(List<String> keys);
+
+    /**
+     * До limit записей под prefix по порядку ключей. Без recursive — только непосредственные потомки,
+     * вложенная папка приходит одной записью с directory = true. startAfter — ключ последней записи
+     * прошлой страницы; для вложенной папки пропускается и всё её содержимое.
+     */
+    List<StoredObject> list(String prefix, boolean recursive, String startAfter, int limit) throws Exception;
+
+    /**
+     * Обходит всё под prefix страницами list по pageSize записей.
+     */
+    default void forEachPage(String prefix, boolean recursive, int pageSize,
+                             ThrowingConsumer<List<StoredObject>> action) throws Exception {
+        String after = null;
+        List<StoredObject> page;
+        do {
+            page = list(prefix, recursive, after, pageSize);
+            if (page.isEmpty()) {
+                return;
+            }
+            action.acceptWithException(page);
+            after = page.get(page.size() - 1).key();
+        } while (page.size() == pageSize);
+    }
+
+    /**
+     * Переносит всё под from (ключ папки) в to одной операцией, если хранилище это умеет.
+     *
+     * @return false — не умеет или to уже существует; тогда переносить по объектам
+     */
+    default boolean renamePrefix(String from, String to) throws Exception {
+        return false;
+    }
+
+    /**
+     * Канал к телу объекта, если оно лежит в локальном файле: его можно отдать через transferTo.
+     * null — читать через get. Закрывает вызывающий.
+     */
+    default FileChannel openChannel(String key) throws Exception {
+        return null;
+    }
+}
@@ -0,0 +1,70 @@
+package lain.projects.cloudstorage.storageservice.repository;
+
+import lain.projects.cloudstorage.model.FolderStats;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+
+@Repository
+public interface FolderStatsRepository extends JpaRepository<FolderStats, String> {
+
+    // Живое изменение: попадает и в итог, и в дельту текущей пересборки
+    @Modifying
+    @Query(value = """
+            insert into folder_stats (path, bytes, files, last_modified, delta_bytes, delta_files, updated_at)
+            values (:path, :bytes, :files, :lastModified, :bytes, :files, :updatedAt)
+            on conflict (path) do update set
+                bytes = folder_stats.bytes + excluded.bytes,
+                files = folder_stats.files + excluded.files,
+                last_modified = greatest(folder_stats.last_modified, excluded.last_modified),
+                delta_bytes = folder_stats.delta_bytes + excluded.delta_bytes,
+                delta_files = folder_stats.delta_files + excluded.delta_files,
+                updated_at = excluded.updated_at""", nativeQuery = true)
+    void apply(@Param("path") String path,
+               @Param("bytes") long bytes,
+               @Param("files") long files,
+               @Param("lastModified") Instant lastModified,
+               @Param("updatedAt") Instant updatedAt);
+
+    // Поддерево root — диапазон [root, rootUpperBound) по idx_folder_stats_path_c, см. FolderStatsService
+    @Modifying
+    @Query(value = """
+            update folder_stats set delta_bytes = 0, delta_files = 0
+            where path collate "C" >= :root and path collate "C" < :rootUpperBound""", nativeQuery = true)
+    void resetDeltas(@Param("root") String root, @Param("rootUpperBound") String rootUpperBound);
+
+    // Результат скана плюс всё, что пришло живыми событиями, пока скан шёл
+    @Modifying
+    @Query(value = """
+            insert into folder_stats (path, bytes, files, last_modified, delta_bytes, delta_files, updated_at)
+            values (:path, :bytes, :files, :lastModified, 0, 0, :updatedAt)
+            on conflict (path) do update set
+                bytes = excluded.bytes + folder_stats.delta_bytes,
+                files = excluded.files + folder_stats.delta_files,
+                last_modified = greatest(folder_stats.last_modified, excluded.last_modified),
+                updated_at = excluded.updated_at""", nativeQuery = true)
+    void replace(@Param("path") String path,
+                 @Param("bytes") long bytes,
+                 @Param("files") long files,
+                 @Param("lastModified") Instant lastModified,
+                 @Param("updatedAt") Instant updatedAt);
+
+    // Папки, которых скан не нашёл и которые не менялись с его начала
+    @Modifying
+    @Query(value = """
+            delete from folder_stats
+            where path collate "C" >= :root and path collate "C" < :rootUpperBound
+              and updated_at < :instant""", nativeQuery = true)
+    int deleteUpdatedBefore(@Param("root") String root,
+                            @Param("rootUpperBound") String rootUpperBound,
+                            @Param("instant") Instant instant);
+
+    // Опустевшие папки не держим: отсутствие записи и есть нули
+    @Modifying
+    @Query("delete from FolderStats s where s.path in :paths and s.files <= 0 and s.bytes <= 0")
+    int deleteEmpty(@Param("paths") Iterable<String> paths);
+}
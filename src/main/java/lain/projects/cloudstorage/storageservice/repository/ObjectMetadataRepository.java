@@ -0,0 +1,106 @@
+package lain.projects.cloudstorage.storageservice.repository;
+
+import lain.projects.cloudstorage.model.ObjectMetadata;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface ObjectMetadataRepository extends JpaRepository<ObjectMetadata, String> {
+
+    @Query("""
+            select m from ObjectMetadata m
+            where m.parent = :parent and m.name > :name
+            order by m.name""")
+    List<ObjectMetadata> findChildrenByName(@Param("parent") String parent,
+                                            @Param("name") String afterName,
+                                            Pageable pageable);
+
+    @Query("""
+            select m from ObjectMetadata m
+            where m.parent = :parent
+              and (m.size > :size or (m.size = :size and m.name > :name))
+            order by m.size, m.name""")
+    List<ObjectMetadata> findChildrenBySize(@Param("parent") String parent,
+                                            @Param("size") long afterSize,
+                                            @Param("name") String afterName,
+                                            Pageable pageable);
+
+    @Query("""
+            select m from ObjectMetadata m
+            where m.parent = :parent
+              and (m.lastModified > :modified or (m.lastModified = :modified and m.name > :name))
+            order by m.lastModified, m.name""")
+    List<ObjectMetadata> findChildrenByModified(@Param("parent") String parent,
+                                                @Param("modified") Instant afterModified,
+                                                @Param("name") String afterName,
+                                                Pageable pageable);
+
+    // pattern — уже экранированный LIKE-шаблон в нижнем регистре, см. SearchService. Поддерево root —
+    // полуоткрытый диапазон [root, rootUpperBound) по индексу idx_object_metadata_path_c; сравнения в
+    // collate "C", чтобы диапазон и курсор шли в порядке байтов, как ключи в MinIO
+    @Query(value = """
+            select * from object_metadata m
+            where m.path collate "C" >= :root and m.path collate "C" < :rootUpperBound
+              and m.path collate "C" > :after
+              and lower(m.name) like :pattern escape '\\'
+            order by m.path collate "C"
+            limit :limit""", nativeQuery = true)
+    List<ObjectMetadata> searchByName(@Param("root") String root,
+                                      @Param("rootUpperBound") String rootUpperBound,
+                                      @Param("pattern") String pattern,
+                                      @Param("after") String afterPath,
+                                      @Param("limit") int limit);
+
+    // Листинг хранилища не знает Content-Type: пустой не затирает сохранённый при загрузке
+    @Modifying
+    @Query(value = """
+            insert into object_metadata (path, parent, name, size, type, etag, content_type, last_modified, marker, indexed_at)
+            values (:path, :parent, :name, :size, :type, :etag, :contentType, :lastModified, :marker, :indexedAt)
+            on conflict (path) do update set
+                size = excluded.size,
+                type = excluded.type,
+                etag = excluded.etag,
+                content_type = coalesce(excluded.content_type, object_metadata.content_type),
+                last_modified = excluded.last_modified,
+                marker = object_metadata.marker or excluded.marker,
+                indexed_at = excluded.indexed_at""", nativeQuery = true)
+    void upsert(@Param("path") String path,
+                @Param("parent") String parent,
+                @Param("name") String name,
+                @Param("size") long size,
+                @Param("type") String type,
+                @Param("etag") String etag,
+                @Param("contentType") String contentType,
+                @Param("lastModified") Instant lastModified,
+                @Param("marker") boolean marker,
+                @Param("indexedAt") Instant indexedAt);
+
+    // Неявная папка: существующую запись только помечаем как актуальную
+    @Modifying
+    @Query(value = """
+            insert into object_metadata (path, parent, name, size, type, last_modified, marker, indexed_at)
+            values (:path, :parent, :name, 0, 'DIRECTORY', :indexedAt, false, :indexedAt)
+            on conflict (path) do update set indexed_at = excluded.indexed_at""", nativeQuery = true)
+    void upsertDirectory(@Param("path") String path,
+                         @Param("parent") String parent,
+                         @Param("name") String name,
+                         @Param("indexedAt") Instant indexedAt);
+
+    @Modifying
+    @Query("""
+            delete from ObjectMetadata d
+            where d.path = :path and d.marker = false
+              and not exists (select c.path from ObjectMetadata c where c.parent = :path)""")
+    int deleteIfImplicitAndEmpty(@Param("path") String path);
+
+    @Modifying
+    @Query("delete from ObjectMetadata m where m.indexedAt < :instant")
+    int deleteIndexedBefore(@Param("instant") Instant instant);
+}
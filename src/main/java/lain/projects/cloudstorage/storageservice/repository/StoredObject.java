@@ -0,0 +1,22 @@
+package lain.projects.cloudstorage.storageservice.repository;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Объект хранилища или, в неглубоком листинге, вложенная папка (directory = true).
+ * Маркер папки — обычный пустой объект с ключом на "/", directory у него false.
+ */
+public record StoredObject(
+        String key,
+        long size,
+        String etag, // без кавычек; null для вложенной папки
+        Instant lastModified, // null для вложенной папки
+        String contentType, // только в stat и put
+        Map<String, String> userMetadata, // только в stat
+        boolean directory
+) {
+    public static StoredObject prefix(String key) {
+        return new StoredObject(key, 0, null, null, null, Map.of(), true);
+    }
+}
@@ -0,0 +1,435 @@
+package lain.projects.cloudstorage.storageservice.repository.filesystem;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.io.ByteStreams;
+import jakarta.annotation.PostConstruct;
+import lain.projects.cloudstorage.storageservice.dto.ObjectFailure;
+import lain.projects.cloudstorage.storageservice.repository.FileStorageRepository;
+import lain.projects.cloudstorage.storageservice.repository.StoredObject;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Repository;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Хранилище в каталоге локальной файловой системы: ключ "user-1-files/a/b.txt" — файл
+ * root/user-1-files/a/b.txt. Запись идёт во временный файл и атомарно переименовывается на место,
+ * копирование — FileChannel.transferTo без прохода через heap, перенос папки — одно переименование каталога.
+ * Опустевшие каталоги удаляются, как исчезают в S3 папки без маркера; маркер папки — скрытый файл внутри неё.
+ * Content-Type загрузки хранится в расширенном атрибуте файла, если файловая система их поддерживает.
+ * Отсортированное содержимое каталогов кэшируется, пока не изменится время модификации каталога:
+ * страница листинга — двоичный поиск startAfter, а не чтение и сортировка всего каталога заново.
+ */
+@Slf4j
+@Repository
+@ConditionalOnProperty(name = "storage.backend", havingValue = "filesystem")
+public class FilesystemFileStorageRepository implements FileStorageRepository {
+    static final String MARKER = ".folder-marker";
+    private static final String STAGING = ".staging";
+    private static final String DIRECTORY_CONTENT_TYPE = "application/x-directory";
+    private static final int MOVE_ATTEMPTS = 3;
+    private static final String CONTENT_TYPE_ATTRIBUTE = "content-type";
+    // Время модификации на части файловых систем хранится с точностью до секунды или двух: каталог,
+    // изменённый только что, может измениться ещё раз с тем же временем, поэтому такой листинг не кэшируется
+    private static final Duration RACY_WINDOW = Duration.ofSeconds(2);
+
+    @Value("${storage.filesystem.root:${java.io.tmpdir}/storage-files}")
+    private Path root;
+
+    // Суммарное число записей в закэшированных листингах каталогов
+    @Value("${storage.filesystem.listing-cache-entries:100000}")
+    private long listingCacheEntries;
+
+    private Path staging;
+    private boolean userAttributes;
+    private Cache<Path, Listing> listings;
+
+    @PostConstruct
+    void init() throws IOException {
+        root = root.toAbsolutePath().normalize();
+        staging = root.resolve(STAGING);
+        Files.createDirectories(staging);
+        userAttributes = Files.getFileStore(root).supportsFileAttributeView(UserDefinedFileAttributeView.class);
+        if (!userAttributes) {
+            log.warn("{} does not support user attributes: content type will be derived from the file extension", root);
+        }
+        listings = Caffeine.newBuilder()
+                .maximumWeight(listingCacheEntries)
+                .weigher((Path directory, Listing listing) -> listing.children().size() + 1)
+                .build();
+    }
+
+    @Override
+    public InputStream get(String key) throws Exception {
+        return Files.newInputStream(fileOf(key));
+    }
+
+    // Файл заменяется переносом на место, поэтому открытый поток не сменит версию после проверки
+    @Override
+    public InputStream get(String key, String etag) throws Exception {
+        Path file = fileOf(key);
+        InputStream in = Files.newInputStream(file);
+        String current = etagOf(Files.readAttributes(file, BasicFileAttributes.class));
+        if (!current.equals(etag)) {
+            in.close();
+            throw new IOException("Object " + key + " changed: etag " + current + ", expected " + etag);
+        }
+        return in;
+    }
+
+    @Override
+    public InputStream get(String key, long offset, long length) throws Exception {
+        FileChannel channel = FileChannel.open(fileOf(key), StandardOpenOption.READ);
+        channel.position(offset);
+        return ByteStreams.limit(Channels.newInputStream(channel), length);
+    }
+
+    @Override
+    public String put(String key, InputStream in, long size, String contentType) throws Exception {
+        Path temp = Files.createTempFile(staging, "put-", ".tmp");
+        try {
+            long written = Files.copy(in, temp, StandardCopyOption.REPLACE_EXISTING);
+            if (size >= 0 && written != size) {
+                throw new IOException("Body length " + written + " does not match declared " + size);
+            }
+            writeContentType(temp, contentType);
+            return etagOf(moveIntoPlace(temp, fileOf(key)));
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Override
+    public Optional<StoredObject> stat(String key) throws Exception {
+        Path file = fileOf(key);
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            return Optional.of(toStoredObject(key, attributes, contentTypeOf(key, file)));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public void copy(String from, String to, long size) throws Exception {
+        Path temp = Files.createTempFile(staging, "copy-", ".tmp");
+        try {
+            try (FileChannel in = FileChannel.open(fileOf(from), StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                long total = in.size();
+                for (long position = 0; position < total; ) {
+                    position += in.transferTo(position, total - position, out);
+                }
+            }
+            writeContentType(temp, readContentType(fileOf(from)));
+            moveIntoPlace(temp, fileOf(to));
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    @Override
+    public List<ObjectFailure> delete(List<String> keys) {
+        List<ObjectFailure> failures = new ArrayList<>();
+        for (String key : keys) {
+            try {
+                Path file = fileOf(key);
+                Files.deleteIfExists(file);
+                pruneEmpty(file.getParent());
+            } catch (Exception e) {
+                failures.add(new ObjectFailure(key, e.getMessage()));
+            }
+        }
+        return failures;
+    }
+
+    @Override
+    public List<StoredObject> list(String prefix, boolean recursive, String startAfter, int limit) throws Exception {
+        String directoryKey = prefix.substring(0, prefix.lastIndexOf('/') + 1);
+        List<StoredObject> objects = new ArrayList<>();
+        Path directory = directoryOf(directoryKey);
+        if (Files.isDirectory(directory)) {
+            walk(directory, directoryKey, prefix, recursive, startAfter, limit, objects);
+        }
+        return objects;
+    }
+
+    @Override
+    public boolean renamePrefix(String from, String to) throws Exception {
+        Path source = directoryOf(from);
+        Path target = directoryOf(to);
+        if (!Files.isDirectory(source) || Files.exists(target)) {
+            return false;
+        }
+
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException | DirectoryNotEmptyException e) {
+            return false;
+        }
+        pruneEmpty(source.getParent());
+        return true;
+    }
+
+    @Override
+    public FileChannel openChannel(String key) throws Exception {
+        try {
+            return FileChannel.open(fileOf(key), StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    // Потомки directory по порядку ключей, как их отдал бы ListObjects; в глубину — только при recursive
+    private void walk(Path directory, String directoryKey, String prefix, boolean recursive, String startAfter,
+                      int limit, List<StoredObject> objects) throws IOException {
+        List<Child> children = childrenOf(directory, directoryKey);
+        int from = firstNotBefore(children, prefix);
+        if (startAfter != null) {
+            from = Math.max(from, firstNotBefore(children, startAfter + '\0'));
+            // Из ключей не после startAfter нужна только папка, внутри которой он лежит, — наибольший из них
+            if (from > 0 && children.get(from - 1).directory() && startAfter.startsWith(children.get(from - 1).key())) {
+                from--;
+            }
+        }
+
+        for (Child child : children.subList(from, children.size())) {
+            if (objects.size() == limit) {
+                return;
+            }
+            if (!child.key().startsWith(prefix)) {
+                // Ключи с prefix идут подряд: после них совпадений уже не будет
+                if (compareKeys(child.key(), prefix) > 0) {
+                    return;
+                }
+                continue;
+            }
+
+            boolean after = startAfter == null || compareKeys(child.key(), startAfter) > 0;
+            if (!child.directory()) {
+                try {
+                    BasicFileAttributes attributes = Files.readAttributes(child.path(), BasicFileAttributes.class);
+                    objects.add(toStoredObject(child.key(), attributes, null));
+                } catch (NoSuchFileException e) {
+                    // Удалён между листингом каталога и чтением атрибутов
+                }
+            } else if (!recursive) {
+                if (after) {
+                    objects.add(StoredObject.prefix(child.key()));
+                }
+            } else {
+                // Всё содержимое папки с ключом до startAfter целиком раньше него
+                walk(child.path(), child.key(), prefix, true, startAfter, limit, objects);
+            }
+        }
+    }
+
+    // Отсортированные потомки каталога: из кэша, если каталог не менялся с тех пор, как его прочитали
+    private List<Child> childrenOf(Path directory, String directoryKey) throws IOException {
+        FileTime modified;
+        try {
+            modified = Files.getLastModifiedTime(directory);
+        } catch (NoSuchFileException e) {
+            return List.of();
+        }
+        Listing cached = listings.getIfPresent(directory);
+        if (cached != null && cached.modified().equals(modified)) {
+            return cached.children();
+        }
+
+        List<Child> children = new ArrayList<>();
+        try (Stream<Path> entries = Files.list(directory)) {
+            for (Path entry : (Iterable<Path>) entries::iterator) {
+                String name = entry.getFileName().toString();
+                if (name.equals(MARKER)) {
+                    children.add(new Child(directoryKey, entry, false));
+                } else if (!(directoryKey.isEmpty() && name.equals(STAGING))) {
+                    boolean isDirectory = Files.isDirectory(entry);
+                    children.add(new Child(directoryKey + name + (isDirectory ? "/" : ""), entry, isDirectory));
+                }
+            }
+        } catch (NoSuchFileException e) {
+            return List.of();
+        }
+        children.sort(Comparator.comparing(Child::key, FilesystemFileStorageRepository::compareKeys));
+        children = List.copyOf(children);
+
+        if (modified.toInstant().isBefore(Instant.now().minus(RACY_WINDOW))) {
+            listings.put(directory, new Listing(modified, children));
+        }
+        return children;
+    }
+
+    // Индекс первого потомка с ключом не меньше key
+    private static int firstNotBefore(List<Child> children, String key) {
+        int low = 0;
+        int high = children.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compareKeys(children.get(middle).key(), key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Порядок ключей ListObjects — байты UTF-8, то есть кодовые точки. String.compareTo сравнивает
+     * единицы UTF-16 и ставит символы вне BMP (суррогатные пары) раньше U+E000–U+FFFF.
+     */
+    static int compareKeys(String a, String b) {
+        int length = Math.min(a.length(), b.length());
+        for (int i = 0; i < length; i++) {
+            char x = a.charAt(i);
+            char y = b.charAt(i);
+            if (x != y) {
+                boolean xSurrogate = Character.isSurrogate(x);
+                if (xSurrogate != Character.isSurrogate(y)) {
+                    return xSurrogate ? 1 : -1;
+                }
+                return x - y;
+            }
+        }
+        return a.length() - b.length();
+    }
+
+    private record Child(String key, Path path, boolean directory) {
+    }
+
+    private record Listing(FileTime modified, List<Child> children) {
+    }
+
+    private StoredObject toStoredObject(String key, BasicFileAttributes attributes, String contentType) {
+        return new StoredObject(key, attributes.size(), etagOf(attributes), attributes.lastModifiedTime().toInstant(),
+                contentType, Map.of(), false);
+    }
+
+    // Сохранённый при загрузке, иначе по расширению, как его определил бы MinIO
+    private String contentTypeOf(String key, Path file) throws IOException {
+        if (key.endsWith("/")) {
+            return DIRECTORY_CONTENT_TYPE;
+        }
+        String stored = readContentType(file);
+        if (stored != null) {
+            return stored;
+        }
+        return MediaTypeFactory.getMediaType(key.substring(key.lastIndexOf('/') + 1))
+                .orElse(MediaType.APPLICATION_OCTET_STREAM)
+                .toString();
+    }
+
+    private void writeContentType(Path file, String contentType) throws IOException {
+        if (!userAttributes || contentType == null) {
+            return;
+        }
+        Files.getFileAttributeView(file, UserDefinedFileAttributeView.class)
+                .write(CONTENT_TYPE_ATTRIBUTE, StandardCharsets.UTF_8.encode(contentType));
+    }
+
+    private String readContentType(Path file) throws IOException {
+        if (!userAttributes) {
+            return null;
+        }
+        UserDefinedFileAttributeView view = Files.getFileAttributeView(file, UserDefinedFileAttributeView.class);
+        if (!view.list().contains(CONTENT_TYPE_ATTRIBUTE)) {
+            return null;
+        }
+        ByteBuffer value = ByteBuffer.allocate(view.size(CONTENT_TYPE_ATTRIBUTE));
+        view.read(CONTENT_TYPE_ATTRIBUTE, value);
+        return StandardCharsets.UTF_8.decode(value.flip()).toString();
+    }
+
+    // Меняется при каждой записи: файл всегда заменяется новым. Время изменения на части файловых систем
+    // грубое, и две записи одного размера в один тик совпали бы, поэтому в etag входит и inode (fileKey):
+    // новый файл создаётся, пока старый ещё на месте, и получает другой
+    private static String etagOf(BasicFileAttributes attributes) {
+        String etag = Long.toHexString(attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS))
+                + "-" + Long.toHexString(attributes.size());
+        Object fileKey = attributes.fileKey();
+        return fileKey == null ? etag : etag + "-" + Integer.toHexString(fileKey.hashCode());
+    }
+
+    // Параллельное удаление может убрать только что созданный родительский каталог — тогда пробуем ещё раз
+    private BasicFileAttributes moveIntoPlace(Path temp, Path target) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                Files.createDirectories(target.getParent());
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                return Files.readAttributes(target, BasicFileAttributes.class);
+            } catch (NoSuchFileException e) {
+                if (attempt == MOVE_ATTEMPTS) {
+                    throw e;
+                }
+            } catch (FileAlreadyExistsException | DirectoryNotEmptyException e) {
+                // В S3 "a/b" и "a/b/" уживаются, на диске файл и каталог с одним именем — нет
+                throw new ResponseStatusException(HttpStatus.CONFLICT, "Path conflicts with an existing file or folder");
+            }
+        }
+    }
+
+    private void pruneEmpty(Path directory) throws IOException {
+        for (Path dir = directory; dir != null && !dir.equals(root) && dir.startsWith(root); dir = dir.getParent()) {
+            try {
+                Files.delete(dir);
+            } catch (DirectoryNotEmptyException | NoSuchFileException e) {
+                return;
+            }
+        }
+    }
+
+    private Path fileOf(String key) {
+        return key.endsWith("/") ? directoryOf(key).resolve(MARKER) : resolve(key);
+    }
+
+    private Path directoryOf(String key) {
+        return key.isEmpty() ? root : resolve(key.substring(0, key.length() - 1));
+    }
+
+    // Ключи с пустыми, "." и ".." сегментами на диске не представимы
+    private Path resolve(String key) {
+        String[] segments = key.split("/", -1);
+        for (String segment : segments) {
+            if (segment.isEmpty() || segment.equals(".") || segment.equals("..") || segment.equals(MARKER)) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unsupported path: " + key);
+            }
+        }
+        if (segments[0].equals(STAGING)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unsupported path: " + key);
+        }
+        return root.resolve(key);
+    }
+}
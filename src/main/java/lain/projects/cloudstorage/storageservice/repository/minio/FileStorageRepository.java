@@ -1,4 +0,0 @@
-package lain.projects.cloudstorage.storageservice.repository.minio;
-
-public interface FileStorageRepository {
-}
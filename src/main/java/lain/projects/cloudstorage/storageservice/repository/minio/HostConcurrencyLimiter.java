@@ -0,0 +1,151 @@
+package lain.projects.cloudstorage.storageservice.repository.minio;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Ограничивает число одновременных запросов к одному хосту MinIO. Разрешение держится,
+ * пока не закрыто тело ответа, поэтому долгое скачивание занимает слот всё время передачи.
+ * Передачи содержимого берут слоты из отдельных пулов: скачивания (GetObject) и загрузки
+ * (PutObject, UploadPart) — каждая из своего. Медленные скачивания и ZIP-архивы не занимают слоты
+ * листингов, stat и удалений, а все потоки storage.download, держащие GetObject, не оставляют без слотов загрузки.
+ * Лимит не зависит от числа потоков: при виртуальных потоках ожидание слота ничего не стоит.
+ */
+public class HostConcurrencyLimiter implements Interceptor {
+    private static final String CONTROL = "control";
+    private static final String DOWNLOAD = "download";
+    private static final String UPLOAD = "upload";
+    private static final Set<String> UPLOADS = Set.of("PutObject", "UploadPart");
+
+    private final int permitsPerHost;
+    private final int downloadPermitsPerHost;
+    private final int uploadPermitsPerHost;
+    private final Duration acquireTimeout;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Semaphore> pools = new ConcurrentHashMap<>();
+
+    public HostConcurrencyLimiter(int permitsPerHost, int downloadPermitsPerHost, int uploadPermitsPerHost,
+                                  Duration acquireTimeout, MeterRegistry meterRegistry) {
+        this.permitsPerHost = permitsPerHost;
+        this.downloadPermitsPerHost = downloadPermitsPerHost;
+        this.uploadPermitsPerHost = uploadPermitsPerHost;
+        this.acquireTimeout = acquireTimeout;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        String host = request.url().host() + ":" + request.url().port();
+        String pool = poolOf(MinioOperations.operationOf(request));
+        Semaphore semaphore = pools.computeIfAbsent(host + " " + pool, key -> newSemaphore(host, pool));
+
+        try {
+            if (!semaphore.tryAcquire(acquireTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new IOException("Timed out waiting for a connection slot to " + host);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+
+        AtomicBoolean released = new AtomicBoolean();
+        Runnable release = () -> {
+            if (released.compareAndSet(false, true)) {
+                semaphore.release();
+            }
+        };
+
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException | RuntimeException e) {
+            release.run();
+            throw e;
+        }
+        if (response.body() == null) {
+            release.run();
+            return response;
+        }
+        return response.newBuilder()
+                .body(new ReleasingBody(response.body(), release))
+                .build();
+    }
+
+    private static String poolOf(String operation) {
+        if ("GetObject".equals(operation)) {
+            return DOWNLOAD;
+        }
+        return UPLOADS.contains(operation) ? UPLOAD : CONTROL;
+    }
+
+    private Semaphore newSemaphore(String host, String pool) {
+        int permits = switch (pool) {
+            case DOWNLOAD -> downloadPermitsPerHost;
+            case UPLOAD -> uploadPermitsPerHost;
+            default -> permitsPerHost;
+        };
+        Semaphore semaphore = new Semaphore(permits, true);
+        Gauge.builder("storage.minio.in-flight", semaphore, s -> permits - s.availablePermits())
+                .tag("host", host)
+                .tag("pool", pool)
+                .register(meterRegistry);
+        Gauge.builder("storage.minio.waiting", semaphore, Semaphore::getQueueLength)
+                .tag("host", host)
+                .tag("pool", pool)
+                .register(meterRegistry);
+        return semaphore;
+    }
+
+    private static final class ReleasingBody extends ResponseBody {
+        private final ResponseBody delegate;
+        private final BufferedSource source;
+
+        ReleasingBody(ResponseBody delegate, Runnable release) {
+            this.delegate = delegate;
+            this.source = Okio.buffer(new ForwardingSource(delegate.source()) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        release.run();
+                    }
+                }
+            });
+        }
+
+        @Override
+        public MediaType contentType() {
+            return delegate.contentType();
+        }
+
+        @Override
+        public long contentLength() {
+            return delegate.contentLength();
+        }
+
+        @Override
+        public BufferedSource source() {
+            return source;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package lain.projects.cloudstorage.storageservice.repository.minio;
+
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Наблюдение на каждую попытку запроса к MinIO до получения заголовков ответа, по операциям S3:
+ * таймер storage.minio.requests и span. Клиент MinIO выполняет запросы на потоках OkHttp,
+ * поэтому родительское наблюдение запоминается при создании Call на вызывающем потоке.
+ * Передача тела ответа (скачивание) сюда не входит.
+ */
+public class MetricsInterceptor implements Interceptor {
+    private final ObservationRegistry observationRegistry;
+    private final Map<Call, Observation> parents = new ConcurrentHashMap<>();
+
+    public MetricsInterceptor(ObservationRegistry observationRegistry) {
+        this.observationRegistry = observationRegistry;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Observation observation = Observation.createNotStarted("storage.minio.requests", observationRegistry)
+                .parentObservation(parents.get(chain.call()))
+                .contextualName("minio " + MinioOperations.operationOf(chain.request()))
+                .lowCardinalityKeyValue("operation", MinioOperations.operationOf(chain.request()))
+                .start();
+        String status = "IO_ERROR";
+        try (Observation.Scope scope = observation.openScope()) {
+            Response response = chain.proceed(chain.request());
+            status = String.valueOf(response.code());
+            return response;
+        } catch (IOException | RuntimeException e) {
+            observation.error(e);
+            throw e;
+        } finally {
+            observation.lowCardinalityKeyValue("status", status).stop();
+        }
+    }
+
+    public EventListener.Factory eventListenerFactory() {
+        return call -> {
+            Observation parent = observationRegistry.getCurrentObservation();
+            if (parent == null) {
+                return EventListener.NONE;
+            }
+            parents.put(call, parent);
+            return new EventListener() {
+                @Override
+                public void callEnd(Call call) {
+                    parents.remove(call);
+                }
+
+                @Override
+                public void callFailed(Call call, IOException ioe) {
+                    parents.remove(call);
+                }
+
+                @Override
+                public void canceled(Call call) {
+                    parents.remove(call);
+                }
+            };
+        };
+    }
+}
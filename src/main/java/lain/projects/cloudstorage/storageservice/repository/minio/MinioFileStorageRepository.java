@@ -0,0 +1,204 @@
+package lain.projects.cloudstorage.storageservice.repository.minio;
+
+import io.minio.*;
+import io.minio.errors.ErrorResponseException;
+import io.minio.messages.DeleteError;
+import io.minio.messages.DeleteObject;
+import io.minio.messages.Item;
+import lain.projects.cloudstorage.storageservice.dto.ObjectFailure;
+import lain.projects.cloudstorage.storageservice.repository.FileStorageRepository;
+import lain.projects.cloudstorage.storageservice.repository.StoredObject;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+import org.springframework.util.unit.DataSize;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+@Repository
+@ConditionalOnProperty(name = "storage.backend", havingValue = "minio", matchIfMissing = true)
+@RequiredArgsConstructor
+public class MinioFileStorageRepository implements FileStorageRepository {
+    private static final String NO_SUCH_KEY = "NoSuchKey";
+    // Больше 5 GiB copyObject не умеет, такие объекты копируются по частям через composeObject
+    private static final long MAX_COPY_OBJECT_SIZE = 5L * 1024 * 1024 * 1024;
+    private static final int MAX_KEYS_PER_REQUEST = 1000;
+
+    private final MinioClient minioClient;
+
+    @Value("${minio.bucket}")
+    private String bucket;
+
+    // Размер части multipart upload для потоков неизвестной длины (минимум S3 — 5 MiB)
+    @Value("${storage.upload.stream-part-size:8MB}")
+    private DataSize streamPartSize;
+
+    @Override
+    public InputStream get(String key) throws Exception {
+        return minioClient.getObject(
+                GetObjectArgs.builder()
+                        .bucket(bucket)
+                        .object(key)
+                        .build()
+        );
+    }
+
+    @Override
+    public InputStream get(String key, String etag) throws Exception {
+        return minioClient.getObject(
+                GetObjectArgs.builder()
+                        .bucket(bucket)
+                        .object(key)
+                        .matchETag(etag)
+                        .build()
+        );
+    }
+
+    @Override
+    public InputStream get(String key, long offset, long length) throws Exception {
+        return minioClient.getObject(
+                GetObjectArgs.builder()
+                        .bucket(bucket)
+                        .object(key)
+                        .offset(offset)
+                        .length(length)
+                        .build()
+        );
+    }
+
+    @Override
+    public String put(String key, InputStream in, long size, String contentType) throws Exception {
+        return put(key, in, size, contentType, Map.of());
+    }
+
+    @Override
+    public String put(String key, InputStream in, long size, String contentType,
+                      Map<String, String> userMetadata) throws Exception {
+        ObjectWriteResponse response = minioClient.putObject(
+                PutObjectArgs.builder()
+                        .bucket(bucket)
+                        .object(key)
+                        .stream(in, size, size < 0 ? streamPartSize.toBytes() : -1)
+                        .contentType(contentType)
+                        .userMetadata(userMetadata)
+                        .build()
+        );
+        return unquote(response.etag());
+    }
+
+    @Override
+    public Optional<StoredObject> stat(String key) throws Exception {
+        try {
+            StatObjectResponse stat = minioClient.statObject(
+                    StatObjectArgs.builder()
+                            .bucket(bucket)
+                            .object(key)
+                            .build()
+            );
+            return Optional.of(new StoredObject(key, stat.size(), unquote(stat.etag()), stat.lastModified().toInstant(),
+                    stat.contentType(), stat.userMetadata(), false));
+        } catch (ErrorResponseException e) {
+            if (NO_SUCH_KEY.equals(e.errorResponse().code())) {
+                return Optional.empty();
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void copy(String from, String to, long size) throws Exception {
+        if (size > MAX_COPY_OBJECT_SIZE) {
+            minioClient.composeObject(
+                    ComposeObjectArgs.builder()
+                            .bucket(bucket)
+                            .object(to)
+                            .sources(List.of(ComposeSource.builder()
+                                    .bucket(bucket)
+                                    .object(from)
+                                    .build()))
+                            .build()
+            );
+            return;
+        }
+
+        minioClient.copyObject(
+                CopyObjectArgs.builder()
+                        .bucket(bucket)
+                        .object(to)
+                        .source(CopySource.builder()
+                                .bucket(bucket)
+                                .object(from)
+                                .build())
+                        .build()
+        );
+    }
+
+    @Override
+    public List<ObjectFailure> delete(List<String> keys) {
+        List<ObjectFailure> failures = new ArrayList<>();
+        try {
+            Iterable<Result<DeleteError>> errors = minioClient.removeObjects(
+                    RemoveObjectsArgs.builder()
+                            .bucket(bucket)
+                            .objects(keys.stream().map(DeleteObject::new).toList())
+                            .build()
+            );
+
+            for (Result<DeleteError> result : errors) {
+                DeleteError error = result.get();
+                failures.add(new ObjectFailure(error.objectName(), error.message()));
+            }
+        } catch (Exception e) {
+            for (String key : keys) {
+                failures.add(new ObjectFailure(key, e.getMessage()));
+            }
+        }
+        return failures;
+    }
+
+    @Override
+    public List<StoredObject> list(String prefix, boolean recursive, String startAfter, int limit) throws Exception {
+        ListObjectsArgs.Builder args = ListObjectsArgs.builder()
+                .bucket(bucket)
+                .prefix(prefix)
+                .recursive(recursive)
+                .maxKeys(Math.min(limit, MAX_KEYS_PER_REQUEST));
+        // Папка "a/" с startAfter = "a/" возвращается снова: ключи внутри неё больше "a/" и сворачиваются
+        // в тот же префикс. Строки, которая была бы больше всех ключей папки и меньше следующего
+        // за ней ключа в байтовом порядке UTF-8, нет, поэтому повтор просто пропускается
+        boolean skipFolder = startAfter != null && !recursive && startAfter.endsWith("/") && !startAfter.equals(prefix);
+        if (startAfter != null) {
+            args.startAfter(startAfter);
+        }
+
+        List<StoredObject> objects = new ArrayList<>();
+        for (Result<Item> result : minioClient.listObjects(args.build())) {
+            Item item = result.get();
+            if (skipFolder && item.isDir() && item.objectName().equals(startAfter)) {
+                continue;
+            }
+            objects.add(toStoredObject(item));
+            if (objects.size() == limit) {
+                break;
+            }
+        }
+        return objects;
+    }
+
+    private static StoredObject toStoredObject(Item item) {
+        if (item.isDir()) {
+            return StoredObject.prefix(item.objectName());
+        }
+        return new StoredObject(item.objectName(), item.size(), unquote(item.etag()),
+                item.lastModified().toInstant(), null, Map.of(), false);
+    }
+
+    private static String unquote(String etag) {
+        return etag == null ? null : etag.replace("\"", "");
+    }
+}
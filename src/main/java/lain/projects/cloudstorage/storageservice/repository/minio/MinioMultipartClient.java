@@ -0,0 +1,134 @@
+package lain.projects.cloudstorage.storageservice.repository.minio;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+import io.minio.GetPresignedObjectUrlArgs;
+import io.minio.MinioAsyncClient;
+import io.minio.ObjectWriteResponse;
+import io.minio.http.Method;
+import io.minio.messages.ListPartsResult;
+import io.minio.messages.Part;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.BufferedSink;
+import okio.Okio;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Открывает низкоуровневые операции multipart upload, которые в MinioAsyncClient защищены.
+ */
+public class MinioMultipartClient extends MinioAsyncClient {
+    private static final int PART_URL_TTL_SECONDS = 900;
+
+    private final OkHttpClient httpClient;
+
+    public MinioMultipartClient(MinioAsyncClient client, OkHttpClient httpClient) {
+        super(client);
+        this.httpClient = httpClient;
+    }
+
+    public String createUpload(String bucket, String object, String contentType) throws Exception {
+        Multimap<String, String> headers = HashMultimap.create();
+        if (contentType != null) {
+            headers.put("Content-Type", contentType);
+        }
+        return createMultipartUploadAsync(bucket, null, object, headers, null)
+                .get()
+                .result()
+                .uploadId();
+    }
+
+    /**
+     * Потоковая запись части известной длины. uploadPartAsync принимает только массив, поэтому часть
+     * уходит по подписанной ссылке: её подпись не включает хэш тела, и тело пишется в сокет по мере
+     * чтения. Запрос идёт через тот же OkHttpClient, поэтому слоты на хост и метрики общие.
+     *
+     * @throws EOFException если data кончился раньше length
+     */
+    public String streamPart(String bucket, String object, String uploadId, int partNumber,
+                             InputStream data, long length) throws Exception {
+        String url = getPresignedObjectUrl(GetPresignedObjectUrlArgs.builder()
+                .method(Method.PUT)
+                .bucket(bucket)
+                .object(object)
+                .expiry(PART_URL_TTL_SECONDS)
+                .extraQueryParams(Map.of("uploadId", uploadId, "partNumber", String.valueOf(partNumber)))
+                .build());
+
+        Request request = new Request.Builder()
+                .url(url)
+                .put(new StreamBody(data, length))
+                .build();
+        try (Response response = httpClient.newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                throw new IOException("UploadPart " + partNumber + " of " + object + " failed: HTTP "
+                        + response.code() + " " + response.body().string());
+            }
+            return response.header("ETag");
+        }
+    }
+
+    public ObjectWriteResponse completeUpload(String bucket, String object, String uploadId, Part[] parts) throws Exception {
+        return completeMultipartUploadAsync(bucket, null, object, uploadId, parts, null, null).get();
+    }
+
+    // Части, которые MinIO уже принял, по возрастанию номера
+    public List<Part> listParts(String bucket, String object, String uploadId) throws Exception {
+        List<Part> parts = new ArrayList<>();
+        Integer marker = null;
+        ListPartsResult result;
+        do {
+            result = listPartsAsync(bucket, null, object, 1000, marker, uploadId, null, null)
+                    .get()
+                    .result();
+            parts.addAll(result.partList());
+            marker = result.nextPartNumberMarker();
+        } while (result.isTruncated());
+        return parts;
+    }
+
+    public void abortUpload(String bucket, String object, String uploadId) throws Exception {
+        abortMultipartUploadAsync(bucket, null, object, uploadId, null, null).get();
+    }
+
+    // Одноразовое тело: поток запроса не перечитать, поэтому OkHttp не должен его повторять
+    private static final class StreamBody extends RequestBody {
+        private final InputStream data;
+        private final long length;
+
+        StreamBody(InputStream data, long length) {
+            this.data = data;
+            this.length = length;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return null;
+        }
+
+        @Override
+        public long contentLength() {
+            return length;
+        }
+
+        @Override
+        public boolean isOneShot() {
+            return true;
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            // Поток запроса не закрывается: им владеет контейнер
+            sink.write(Okio.source(data), length);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package lain.projects.cloudstorage.storageservice.repository.minio;
+
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+
+/**
+ * Имя операции S3 по HTTP-запросу — тег для метрик транспорта.
+ */
+public final class MinioOperations {
+
+    private MinioOperations() {
+    }
+
+    public static String operationOf(Request request) {
+        HttpUrl url = request.url();
+        // Путь вида /bucket или /bucket/key
+        boolean objectLevel = url.pathSegments().size() > 1
+                && !(url.pathSegments().size() == 2 && url.pathSegments().get(1).isEmpty());
+
+        return switch (request.method()) {
+            case "GET" -> {
+                if (url.queryParameter("location") != null) yield "GetBucketLocation";
+                if (url.queryParameter("uploadId") != null) yield "ListParts";
+                if (url.queryParameter("uploads") != null) yield "ListMultipartUploads";
+                yield objectLevel ? "GetObject" : "ListObjects";
+            }
+            case "HEAD" -> objectLevel ? "HeadObject" : "HeadBucket";
+            case "PUT" -> {
+                if (url.queryParameter("partNumber") != null) {
+                    yield request.header("x-amz-copy-source") != null ? "UploadPartCopy" : "UploadPart";
+                }
+                if (request.header("x-amz-copy-source") != null) yield "CopyObject";
+                yield objectLevel ? "PutObject" : "CreateBucket";
+            }
+            case "POST" -> {
+                if (url.queryParameter("delete") != null) yield "DeleteObjects";
+                if (url.queryParameter("uploads") != null) yield "CreateMultipartUpload";
+                if (url.queryParameter("uploadId") != null) yield "CompleteMultipartUpload";
+                yield "Post";
+            }
+            case "DELETE" -> {
+                if (url.queryParameter("uploadId") != null) yield "AbortMultipartUpload";
+                yield objectLevel ? "DeleteObject" : "DeleteBucket";
+            }
+            default -> request.method();
+        };
+    }
+}
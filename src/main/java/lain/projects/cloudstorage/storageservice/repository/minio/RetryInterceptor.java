@@ -0,0 +1,72 @@
+package lain.projects.cloudstorage.storageservice.repository.minio;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.Set;
+
+/**
+ * Повторяет идемпотентные чтения при сетевой ошибке или ответах 500/502/503/504
+ * с экспоненциальной паузой. Запись не повторяется: тело может быть одноразовым потоком.
+ */
+public class RetryInterceptor implements Interceptor {
+    private static final Set<String> IDEMPOTENT_METHODS = Set.of("GET", "HEAD");
+    private static final Set<Integer> RETRYABLE_STATUSES = Set.of(500, 502, 503, 504);
+
+    private final int maxRetries;
+    private final Duration backoff;
+    private final MeterRegistry meterRegistry;
+
+    public RetryInterceptor(int maxRetries, Duration backoff, MeterRegistry meterRegistry) {
+        this.maxRetries = maxRetries;
+        this.backoff = backoff;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (!IDEMPOTENT_METHODS.contains(request.method())) {
+            return chain.proceed(request);
+        }
+
+        for (int attempt = 0; ; attempt++) {
+            Response response;
+            try {
+                response = chain.proceed(request);
+            } catch (IOException e) {
+                if (attempt >= maxRetries || e instanceof InterruptedIOException && chain.call().isCanceled()) {
+                    throw e;
+                }
+                retried(request, "io_error", attempt);
+                continue;
+            }
+
+            if (attempt >= maxRetries || !RETRYABLE_STATUSES.contains(response.code())) {
+                return response;
+            }
+            response.close();
+            retried(request, String.valueOf(response.code()), attempt);
+        }
+    }
+
+    private void retried(Request request, String reason, int attempt) throws IOException {
+        Counter.builder("storage.minio.retries")
+                .tag("operation", MinioOperations.operationOf(request))
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment();
+        try {
+            Thread.sleep(backoff.toMillis() << attempt);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+}
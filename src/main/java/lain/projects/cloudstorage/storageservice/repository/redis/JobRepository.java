@@ -0,0 +1,149 @@
+package lain.projects.cloudstorage.storageservice.repository.redis;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lain.projects.cloudstorage.storageservice.dto.Job;
+import lain.projects.cloudstorage.storageservice.dto.ObjectFailure;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Repository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+@Repository
+@RequiredArgsConstructor
+public class JobRepository {
+    private static final String KEY_PREFIX = "job:";
+    private static final String ACTIVE_KEY = "jobs:active";
+
+    // Аренду продлевает и снимает только её владелец: после истечения TTL задачу мог подобрать другой узел
+    private static final RedisScript<Long> REFRESH_CLAIM = RedisScript.of("""
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                return redis.call('PEXPIRE', KEYS[1], ARGV[2])
+            end
+            return 0
+            """, Long.class);
+
+    private static final RedisScript<Long> RELEASE = RedisScript.of("""
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                return redis.call('DEL', KEYS[1])
+            end
+            return 0
+            """, Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+
+    public void save(Job job) {
+        Map<String, String> fields = new HashMap<>();
+        fields.put("type", job.type().name());
+        fields.put("userId", String.valueOf(job.userId()));
+        fields.put("source", job.source());
+        fields.put("target", job.target() == null ? "" : job.target());
+        fields.put("state", job.state().name());
+        fields.put("processedObjects", String.valueOf(job.processedObjects()));
+        fields.put("totalObjects", String.valueOf(job.totalObjects()));
+        fields.put("processedBytes", String.valueOf(job.processedBytes()));
+        fields.put("errorCount", String.valueOf(job.errorCount()));
+        fields.put("createdAt", String.valueOf(job.createdAt().toEpochMilli()));
+        fields.put("updatedAt", String.valueOf(job.updatedAt().toEpochMilli()));
+
+        redisTemplate.opsForHash().putAll(KEY_PREFIX + job.id(), fields);
+        if (job.isActive()) {
+            redisTemplate.opsForSet().add(ACTIVE_KEY, job.id());
+        } else {
+            redisTemplate.opsForSet().remove(ACTIVE_KEY, job.id());
+        }
+    }
+
+    public Optional<Job> findById(String id) {
+        Map<Object, Object> fields = redisTemplate.opsForHash().entries(KEY_PREFIX + id);
+        if (fields.isEmpty()) {
+            return Optional.empty();
+        }
+
+        String target = (String) fields.get("target");
+        return Optional.of(new Job(
+                id,
+                Job.Type.valueOf((String) fields.get("type")),
+                Long.parseLong((String) fields.get("userId")),
+                (String) fields.get("source"),
+                target.isEmpty() ? null : target,
+                Job.State.valueOf((String) fields.get("state")),
+                Long.parseLong((String) fields.get("processedObjects")),
+                Long.parseLong((String) fields.get("totalObjects")),
+                Long.parseLong((String) fields.get("processedBytes")),
+                Long.parseLong((String) fields.get("errorCount")),
+                Instant.ofEpochMilli(Long.parseLong((String) fields.get("createdAt"))),
+                Instant.ofEpochMilli(Long.parseLong((String) fields.get("updatedAt")))
+        ));
+    }
+
+    public Set<String> findActiveIds() {
+        Set<String> ids = redisTemplate.opsForSet().members(ACTIVE_KEY);
+        return ids == null ? Set.of() : ids;
+    }
+
+    public void appendErrors(String id, List<ObjectFailure> failures, int limit) {
+        if (failures.isEmpty()) {
+            return;
+        }
+
+        String key = KEY_PREFIX + id + ":errors";
+        List<String> values = failures.stream().map(this::toJson).toList();
+        redisTemplate.opsForList().rightPushAll(key, values);
+        redisTemplate.opsForList().trim(key, 0, limit - 1);
+    }
+
+    public List<ObjectFailure> findErrors(String id) {
+        List<String> values = redisTemplate.opsForList().range(KEY_PREFIX + id + ":errors", 0, -1);
+        if (values == null) {
+            return List.of();
+        }
+        return values.stream().map(this::fromJson).toList();
+    }
+
+    public void expire(String id, Duration ttl) {
+        redisTemplate.expire(KEY_PREFIX + id, ttl);
+        redisTemplate.expire(KEY_PREFIX + id + ":errors", ttl);
+    }
+
+    public boolean tryClaim(String id, String owner, Duration ttl) {
+        return Boolean.TRUE.equals(
+                redisTemplate.opsForValue().setIfAbsent(KEY_PREFIX + id + ":lease", owner, ttl));
+    }
+
+    // false, если аренда уже не принадлежит owner
+    public boolean refreshClaim(String id, String owner, Duration ttl) {
+        Long refreshed = redisTemplate.execute(REFRESH_CLAIM, List.of(KEY_PREFIX + id + ":lease"),
+                owner, String.valueOf(ttl.toMillis()));
+        return refreshed != null && refreshed == 1;
+    }
+
+    public void release(String id, String owner) {
+        redisTemplate.execute(RELEASE, List.of(KEY_PREFIX + id + ":lease"), owner);
+    }
+
+    private String toJson(ObjectFailure failure) {
+        try {
+            return objectMapper.writeValueAsString(failure);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private ObjectFailure fromJson(String value) {
+        try {
+            return objectMapper.readValue(value, ObjectFailure.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
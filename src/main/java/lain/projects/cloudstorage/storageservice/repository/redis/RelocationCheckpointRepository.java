@@ -0,0 +1,96 @@
+package lain.projects.cloudstorage.storageservice.repository.redis;
+
+import lain.projects.cloudstorage.storageservice.dto.RelocationCheckpoint;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Repository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+@Repository
+@RequiredArgsConstructor
+public class RelocationCheckpointRepository {
+    private static final String KEY_PREFIX = "relocation:checkpoint:";
+    private static final String INDEX_KEY = "relocation:checkpoints";
+
+    // Продлить и снять блокировку может только её владелец: после истечения TTL её мог взять другой узел
+    private static final RedisScript<Long> REFRESH_LOCK = RedisScript.of("""
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                return redis.call('PEXPIRE', KEYS[1], ARGV[2])
+            end
+            return 0
+            """, Long.class);
+
+    private static final RedisScript<Long> UNLOCK = RedisScript.of("""
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                return redis.call('DEL', KEYS[1])
+            end
+            return 0
+            """, Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+
+    public void save(RelocationCheckpoint checkpoint) {
+        Map<String, String> fields = new HashMap<>();
+        fields.put("from", checkpoint.from());
+        fields.put("to", checkpoint.to());
+        fields.put("startAfter", checkpoint.startAfter() == null ? "" : checkpoint.startAfter());
+        fields.put("copiedObjects", String.valueOf(checkpoint.copiedObjects()));
+        fields.put("copiedBytes", String.valueOf(checkpoint.copiedBytes()));
+        fields.put("updatedAt", String.valueOf(checkpoint.updatedAt().toEpochMilli()));
+
+        redisTemplate.opsForHash().putAll(KEY_PREFIX + checkpoint.id(), fields);
+        redisTemplate.opsForSet().add(INDEX_KEY, checkpoint.id());
+    }
+
+    public Optional<RelocationCheckpoint> findById(String id) {
+        Map<Object, Object> fields = redisTemplate.opsForHash().entries(KEY_PREFIX + id);
+        if (fields.isEmpty()) {
+            return Optional.empty();
+        }
+
+        String startAfter = (String) fields.get("startAfter");
+        return Optional.of(new RelocationCheckpoint(
+                id,
+                (String) fields.get("from"),
+                (String) fields.get("to"),
+                startAfter.isEmpty() ? null : startAfter,
+                Long.parseLong((String) fields.get("copiedObjects")),
+                Long.parseLong((String) fields.get("copiedBytes")),
+                Instant.ofEpochMilli(Long.parseLong((String) fields.get("updatedAt")))
+        ));
+    }
+
+    public Set<String> findAllIds() {
+        Set<String> ids = redisTemplate.opsForSet().members(INDEX_KEY);
+        return ids == null ? Set.of() : ids;
+    }
+
+    public void delete(String id) {
+        redisTemplate.delete(KEY_PREFIX + id);
+        redisTemplate.opsForSet().remove(INDEX_KEY, id);
+    }
+
+    public boolean tryLock(String id, String owner, Duration ttl) {
+        return Boolean.TRUE.equals(
+                redisTemplate.opsForValue().setIfAbsent(KEY_PREFIX + id + ":lock", owner, ttl));
+    }
+
+    // false, если блокировка уже не принадлежит owner
+    public boolean refreshLock(String id, String owner, Duration ttl) {
+        Long refreshed = redisTemplate.execute(REFRESH_LOCK, List.of(KEY_PREFIX + id + ":lock"),
+                owner, String.valueOf(ttl.toMillis()));
+        return refreshed != null && refreshed == 1;
+    }
+
+    public void unlock(String id, String owner) {
+        redisTemplate.execute(UNLOCK, List.of(KEY_PREFIX + id + ":lock"), owner);
+    }
+}
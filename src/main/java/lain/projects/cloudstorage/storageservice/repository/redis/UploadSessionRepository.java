@@ -0,0 +1,88 @@
+package lain.projects.cloudstorage.storageservice.repository.redis;
+
+import lain.projects.cloudstorage.storageservice.dto.UploadPart;
+import lain.projects.cloudstorage.storageservice.dto.UploadSession;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+@Repository
+@RequiredArgsConstructor
+public class UploadSessionRepository {
+    private static final String KEY_PREFIX = "upload:";
+    private static final String BY_CREATED_KEY = "uploads:by-created";
+
+    private final StringRedisTemplate redisTemplate;
+
+    public void save(UploadSession session) {
+        Map<String, String> fields = new HashMap<>();
+        fields.put("userId", String.valueOf(session.userId()));
+        fields.put("path", session.path());
+        fields.put("uploadId", session.uploadId());
+        fields.put("contentType", session.contentType() == null ? "" : session.contentType());
+        fields.put("createdAt", String.valueOf(session.createdAt().toEpochMilli()));
+
+        redisTemplate.opsForHash().putAll(KEY_PREFIX + session.id(), fields);
+        redisTemplate.opsForZSet().add(BY_CREATED_KEY, session.id(), session.createdAt().toEpochMilli());
+    }
+
+    public Optional<UploadSession> findById(String id) {
+        Map<Object, Object> fields = redisTemplate.opsForHash().entries(KEY_PREFIX + id);
+        if (fields.isEmpty()) {
+            return Optional.empty();
+        }
+
+        String contentType = (String) fields.get("contentType");
+        return Optional.of(new UploadSession(
+                id,
+                Long.parseLong((String) fields.get("userId")),
+                (String) fields.get("path"),
+                (String) fields.get("uploadId"),
+                contentType.isEmpty() ? null : contentType,
+                Instant.ofEpochMilli(Long.parseLong((String) fields.get("createdAt")))
+        ));
+    }
+
+    public void savePart(String id, UploadPart part) {
+        redisTemplate.opsForHash().put(KEY_PREFIX + id + ":parts",
+                String.valueOf(part.partNumber()), (part.etag() == null ? "" : part.etag()) + ":" + part.size());
+    }
+
+    public List<UploadPart> findParts(String id) {
+        Map<Object, Object> fields = redisTemplate.opsForHash().entries(KEY_PREFIX + id + ":parts");
+        return fields.entrySet().stream()
+                .map(entry -> {
+                    String value = (String) entry.getValue();
+                    int separator = value.lastIndexOf(':');
+                    return new UploadPart(
+                            Integer.parseInt((String) entry.getKey()),
+                            separator == 0 ? null : value.substring(0, separator),
+                            Long.parseLong(value.substring(separator + 1)));
+                })
+                .sorted(Comparator.comparingInt(UploadPart::partNumber))
+                .toList();
+    }
+
+    public Set<String> findCreatedBefore(Instant instant) {
+        Set<String> ids = redisTemplate.opsForZSet().rangeByScore(BY_CREATED_KEY, 0, instant.toEpochMilli());
+        return ids == null ? Set.of() : ids;
+    }
+
+    /**
+     * @return true, если сессию удалил именно этот вызов — так сборщик мусора на разных узлах
+     * не обрабатывает одну сессию дважды
+     */
+    public boolean delete(String id) {
+        Long removed = redisTemplate.opsForZSet().remove(BY_CREATED_KEY, id);
+        redisTemplate.delete(List.of(KEY_PREFIX + id, KEY_PREFIX + id + ":parts"));
+        return removed != null && removed > 0;
+    }
+}
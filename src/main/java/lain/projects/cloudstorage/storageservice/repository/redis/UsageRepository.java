@@ -0,0 +1,109 @@
+package lain.projects.cloudstorage.storageservice.repository.redis;
+
+import lain.projects.cloudstorage.storageservice.dto.Usage;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Счётчики занятого места: hash usage:{userId} с полями bytes и objects. Каждое изменение —
+ * один Lua-скрипт, поэтому счётчики не расходятся при параллельных запросах с разных узлов.
+ * Пока идёт сверка (поле scanning), дельты копятся ещё и в pending-*, чтобы результат скана
+ * не затёр изменения, сделанные во время него.
+ */
+@Repository
+@RequiredArgsConstructor
+public class UsageRepository {
+    private static final String KEY_PREFIX = "usage:";
+
+    private static final RedisScript<Long> APPLY = RedisScript.of("""
+            redis.call('HINCRBY', KEYS[1], 'bytes', ARGV[1])
+            redis.call('HINCRBY', KEYS[1], 'objects', ARGV[2])
+            if redis.call('HEXISTS', KEYS[1], 'scanning') == 1 then
+                redis.call('HINCRBY', KEYS[1], 'pending-bytes', ARGV[1])
+                redis.call('HINCRBY', KEYS[1], 'pending-objects', ARGV[2])
+            end
+            return 1
+            """, Long.class);
+
+    // Резервы вида "bytes:expiresAtMillis"; просроченные (упавший узел) удаляются при проверке
+    private static final RedisScript<Long> RESERVE = RedisScript.of("""
+            local used = tonumber(redis.call('HGET', KEYS[1], 'bytes') or '0')
+            local reserved = 0
+            local entries = redis.call('HGETALL', KEYS[2])
+            for i = 1, #entries, 2 do
+                local sep = string.find(entries[i + 1], ':')
+                local expires = tonumber(string.sub(entries[i + 1], sep + 1))
+                if entries[i] ~= ARGV[3] then
+                    if expires < tonumber(ARGV[4]) then
+                        redis.call('HDEL', KEYS[2], entries[i])
+                    else
+                        reserved = reserved + tonumber(string.sub(entries[i + 1], 1, sep - 1))
+                    end
+                end
+            end
+            if used + reserved + tonumber(ARGV[2]) > tonumber(ARGV[1]) then
+                return 0
+            end
+            redis.call('HSET', KEYS[2], ARGV[3], ARGV[2] .. ':' .. ARGV[5])
+            return 1
+            """, Long.class);
+
+    private static final RedisScript<Long> BEGIN_SCAN = RedisScript.of("""
+            redis.call('HSET', KEYS[1], 'scanning', '1', 'pending-bytes', '0', 'pending-objects', '0')
+            return 1
+            """, Long.class);
+
+    private static final RedisScript<Long> FINISH_SCAN = RedisScript.of("""
+            local pendingBytes = tonumber(redis.call('HGET', KEYS[1], 'pending-bytes') or '0')
+            local pendingObjects = tonumber(redis.call('HGET', KEYS[1], 'pending-objects') or '0')
+            redis.call('HSET', KEYS[1], 'bytes', tonumber(ARGV[1]) + pendingBytes,
+                    'objects', tonumber(ARGV[2]) + pendingObjects)
+            redis.call('HDEL', KEYS[1], 'scanning', 'pending-bytes', 'pending-objects')
+            return 1
+            """, Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+
+    public Usage find(Long userId, long quotaBytes) {
+        List<Object> values = redisTemplate.opsForHash().multiGet(KEY_PREFIX + userId, List.of("bytes", "objects"));
+        return new Usage(parse(values.get(0)), parse(values.get(1)), quotaBytes);
+    }
+
+    public void apply(Long userId, long bytesDelta, long objectsDelta) {
+        redisTemplate.execute(APPLY, List.of(KEY_PREFIX + userId),
+                String.valueOf(bytesDelta), String.valueOf(objectsDelta));
+    }
+
+    public boolean reserve(Long userId, String reservationId, long bytes, long quotaBytes, Instant expiresAt) {
+        Long reserved = redisTemplate.execute(RESERVE,
+                List.of(KEY_PREFIX + userId, KEY_PREFIX + userId + ":reserved"),
+                String.valueOf(quotaBytes), String.valueOf(bytes), reservationId,
+                String.valueOf(Instant.now().toEpochMilli()), String.valueOf(expiresAt.toEpochMilli()));
+        return Long.valueOf(1).equals(reserved);
+    }
+
+    public void release(Long userId, Collection<String> reservationIds) {
+        if (!reservationIds.isEmpty()) {
+            redisTemplate.opsForHash().delete(KEY_PREFIX + userId + ":reserved", reservationIds.toArray());
+        }
+    }
+
+    public void beginScan(Long userId) {
+        redisTemplate.execute(BEGIN_SCAN, List.of(KEY_PREFIX + userId));
+    }
+
+    public void finishScan(Long userId, long bytes, long objects) {
+        redisTemplate.execute(FINISH_SCAN, List.of(KEY_PREFIX + userId),
+                String.valueOf(bytes), String.valueOf(objects));
+    }
+
+    private static long parse(Object value) {
+        return value == null ? 0 : Long.parseLong((String) value);
+    }
+}
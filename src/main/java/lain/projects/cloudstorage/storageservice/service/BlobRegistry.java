@@ -0,0 +1,178 @@
+package lain.projects.cloudstorage.storageservice.service;
+
+import lain.projects.cloudstorage.model.Blob;
+import lain.projects.cloudstorage.model.BlobReference;
+import lain.projects.cloudstorage.storageservice.event.ObjectsCopiedEvent;
+import lain.projects.cloudstorage.storageservice.repository.BlobReferenceRepository;
+import lain.projects.cloudstorage.storageservice.repository.BlobRepository;
+import lain.projects.cloudstorage.storageservice.repository.StoredObject;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Ссылки пользовательских объектов-указателей на блобы и счётчики ссылок. Указатель в MinIO
+ * пустой, поэтому размер из листинга для него 0 — настоящий размер берётся отсюда.
+ */
+@Service
+@RequiredArgsConstructor
+public class BlobRegistry {
+    private final BlobRepository blobRepository;
+    private final BlobReferenceRepository referenceRepository;
+
+    /**
+     * Добавляет ссылку на блоб.
+     *
+     * @return true, если такого блоба ещё не было и его содержимое нужно сохранить
+     */
+    @Transactional
+    public boolean acquire(String hash, long size) {
+        Instant now = Instant.now();
+        if (blobRepository.addReferences(hash, 1, now) > 0) {
+            return false;
+        }
+        blobRepository.upsert(hash, size, 1, now);
+        return true;
+    }
+
+    @Transactional
+    public void release(String hash) {
+        blobRepository.addReferences(hash, -1, Instant.now());
+    }
+
+    /**
+     * Привязывает путь к блобу; ссылка, которую путь держал до перезаписи, отпускается.
+     */
+    @Transactional
+    public void attach(String path, String hash, long size) {
+        Optional<BlobReference> previous = referenceRepository.findById(path);
+        referenceRepository.save(new BlobReference(path, hash, size));
+        previous.ifPresent(reference -> release(reference.getHash()));
+    }
+
+    // Объект по пути перезаписан не через dedup — указателя там больше нет
+    @Transactional
+    public void detachIfReplaced(String path, String etag) {
+        referenceRepository.findById(path)
+                .filter(reference -> !reference.getHash().equals(etag))
+                .ifPresent(reference -> detach(List.of(path)));
+    }
+
+    @Transactional
+    public void copy(ObjectsCopiedEvent event) {
+        List<BlobReference> sources = referenceRepository.findAllById(event.sources());
+        if (sources.isEmpty()) {
+            return;
+        }
+
+        Map<String, BlobReference> replaced = new HashMap<>();
+        referenceRepository.findAllById(sources.stream().map(source -> event.targetOf(source.getPath())).toList())
+                .forEach(reference -> replaced.put(reference.getPath(), reference));
+
+        Map<String, Long> deltas = new HashMap<>();
+        for (BlobReference source : sources) {
+            String target = event.targetOf(source.getPath());
+            referenceRepository.save(new BlobReference(target, source.getHash(), source.getSize()));
+            deltas.merge(source.getHash(), 1L, Long::sum);
+            BlobReference previous = replaced.get(target);
+            if (previous != null) {
+                deltas.merge(previous.getHash(), -1L, Long::sum);
+            }
+        }
+        applyDeltas(deltas);
+    }
+
+    @Transactional
+    public void detach(Collection<String> paths) {
+        List<BlobReference> references = referenceRepository.findAllById(paths);
+        if (references.isEmpty()) {
+            return;
+        }
+
+        referenceRepository.deleteAllInBatch(references);
+        Map<String, Long> deltas = new HashMap<>();
+        references.forEach(reference -> deltas.merge(reference.getHash(), -1L, Long::sum));
+        applyDeltas(deltas);
+    }
+
+    /**
+     * Настоящие размеры объектов-указателей среди objects; остальных объектов в ответе нет.
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Long> sizesOf(Collection<StoredObject> objects) {
+        List<String> candidates = objects.stream()
+                .filter(object -> !object.directory() && object.size() == 0)
+                .map(StoredObject::key)
+                .toList();
+        if (candidates.isEmpty()) {
+            return Map.of();
+        }
+
+        Map<String, Long> sizes = new HashMap<>();
+        referenceRepository.findAllById(candidates)
+                .forEach(reference -> sizes.put(reference.getPath(), reference.getSize()));
+        return sizes;
+    }
+
+    @Transactional(readOnly = true)
+    public Optional<BlobReference> find(String path) {
+        return referenceRepository.findById(path);
+    }
+
+    @Transactional(readOnly = true)
+    public long referencedBytesUnder(String prefix) {
+        return referenceRepository.sumSizesUnder(prefix);
+    }
+
+    @Transactional(readOnly = true)
+    public List<String> findCollectable(Instant before, int limit) {
+        return blobRepository.findUnreferencedBefore(before, PageRequest.of(0, limit));
+    }
+
+    /**
+     * Удаляет блоб, если на него по-прежнему нет ссылок. Строка блокируется до конца транзакции,
+     * поэтому параллельный upload того же содержимого дождётся удаления и сохранит блоб заново.
+     */
+    @Transactional
+    public boolean collect(String hash, BlobRemover remover) throws Exception {
+        Optional<Blob> blob = blobRepository.findForUpdate(hash);
+        if (blob.isEmpty() || blob.get().getRefCount() > 0) {
+            return false;
+        }
+        remover.remove(hash);
+        blobRepository.delete(blob.get());
+        return true;
+    }
+
+    @Transactional(readOnly = true)
+    public long storedBytes() {
+        return blobRepository.sumStoredBytes();
+    }
+
+    @Transactional(readOnly = true)
+    public long referencedBytes() {
+        return referenceRepository.sumReferencedBytes();
+    }
+
+    private void applyDeltas(Map<String, Long> deltas) {
+        Instant now = Instant.now();
+        deltas.forEach((hash, delta) -> {
+            if (delta != 0) {
+                blobRepository.addReferences(hash, delta, now);
+            }
+        });
+    }
+
+    @FunctionalInterface
+    public interface BlobRemover {
+        void remove(String hash) throws Exception;
+    }
+}
@@ -0,0 +1,42 @@
+package lain.projects.cloudstorage.storageservice.service;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Ограничивает число одновременно выполняемых задач одной операции поверх общего пула.
+ * Задачи сами отвечают за обработку своих ошибок.
+ */
+public class BoundedExecution {
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final int limit;
+
+    public BoundedExecution(ExecutorService executor, int limit) {
+        this.executor = executor;
+        this.permits = new Semaphore(limit);
+        this.limit = limit;
+    }
+
+    public void submit(Runnable task) throws InterruptedException {
+        permits.acquire();
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    public void awaitAll() {
+        permits.acquireUninterruptibly(limit);
+        permits.release(limit);
+    }
+}
@@ -0,0 +1,115 @@
+package lain.projects.cloudstorage.storageservice.service;
+
+import lain.projects.cloudstorage.storageservice.dto.ObjectFailure;
+import lain.projects.cloudstorage.storageservice.event.ObjectsRemovedEvent;
+import lain.projects.cloudstorage.storageservice.repository.FileStorageRepository;
+import lain.projects.cloudstorage.storageservice.repository.StoredObject;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BulkDeleteService {
+    // Лимит S3 на количество ключей в одном DeleteObjects
+    private static final int MAX_BATCH_SIZE = 1000;
+
+    private final FileStorageRepository fileStorage;
+    private final ExecutorService storageExecutor;
+    private final BlobRegistry blobRegistry;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${storage.delete.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${storage.delete.max-in-flight:4}")
+    private int maxInFlight;
+
+    public void deletePrefix(String prefix, BulkOperationProgress progress) throws Exception {
+        int size = Math.min(batchSize, MAX_BATCH_SIZE);
+        BoundedExecution execution = new BoundedExecution(storageExecutor, maxInFlight);
+
+        try {
+            // Страница листинга и есть батч; продолжение от последнего ключа не зависит от того, удалён ли он
+            String after = null;
+            List<StoredObject> batch;
+            do {
+                batch = fileStorage.list(prefix, true, after, size);
+                if (batch.isEmpty()) {
+                    break;
+                }
+                progress.getDiscoveredObjects().addAndGet(batch.size());
+                after = batch.get(batch.size() - 1).key();
+                submitBatch(execution, batch, progress);
+            } while (batch.size() == size);
+        } finally {
+            // Дожидаемся всех отправленных батчей, даже если листинг упал
+            execution.awaitAll();
+        }
+    }
+
+    public List<ObjectFailure> deleteBatch(List<StoredObject> objects) {
+        return removeBatch(objects).failures();
+    }
+
+    private record BatchResult(List<ObjectFailure> failures, long removedBytes) {
+    }
+
+    private BatchResult removeBatch(List<StoredObject> objects) {
+        List<ObjectFailure> failures = new ArrayList<>();
+        try {
+            failures.addAll(fileStorage.delete(objects.stream().map(StoredObject::key).toList()));
+        } catch (Exception e) {
+            for (StoredObject object : objects) {
+                failures.add(new ObjectFailure(object.key(), e.getMessage()));
+            }
+            return new BatchResult(failures, 0);
+        }
+
+        Set<String> failed = failures.stream().map(ObjectFailure::path).collect(Collectors.toSet());
+        List<StoredObject> removed = objects.stream().filter(object -> !failed.contains(object.key())).toList();
+        if (removed.isEmpty()) {
+            return new BatchResult(failures, 0);
+        }
+        List<Long> sizes = logicalSizes(removed);
+        try {
+            eventPublisher.publishEvent(new ObjectsRemovedEvent(removed.stream().map(StoredObject::key).toList(),
+                    sizes));
+        } catch (RuntimeException e) {
+            // Объекты уже удалены: сбой слушателя не делает их неудалёнными
+            log.warn("Listeners failed after removing {} objects", removed.size(), e);
+        }
+        return new BatchResult(failures, sizes.stream().mapToLong(Long::longValue).sum());
+    }
+
+    private void submitBatch(BoundedExecution execution, List<StoredObject> batch, BulkOperationProgress progress)
+            throws InterruptedException {
+        execution.submit(() -> {
+            try {
+                BatchResult result = removeBatch(batch);
+                progress.getFailures().addAll(result.failures());
+                progress.getProcessedObjects().addAndGet(batch.size() - result.failures().size());
+                progress.getProcessedBytes().addAndGet(result.removedBytes());
+            } catch (RuntimeException e) {
+                log.warn("Failed to delete a batch of {} objects", batch.size(), e);
+                batch.forEach(object -> progress.getFailures().add(new ObjectFailure(object.key(), e.getMessage())));
+            }
+        });
+    }
+
+    // Размер с учётом указателей на дедуплицированные блобы
+    List<Long> logicalSizes(List<StoredObject> objects) {
+        Map<String, Long> blobSizes = blobRegistry.sizesOf(objects);
+        return objects.stream().map(object -> blobSizes.getOrDefault(object.key(), object.size())).toList();
+    }
+}
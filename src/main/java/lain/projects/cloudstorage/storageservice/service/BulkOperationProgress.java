@@ -0,0 +1,17 @@
+package lain.projects.cloudstorage.storageservice.service;
+
+import lain.projects.cloudstorage.storageservice.dto.ObjectFailure;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Getter
+public class BulkOperationProgress {
+    private final AtomicLong discoveredObjects = new AtomicLong();
+    private final AtomicLong processedObjects = new AtomicLong();
+    private final AtomicLong processedBytes = new AtomicLong();
+    private final List<ObjectFailure> failures = Collections.synchronizedList(new ArrayList<>());
+}
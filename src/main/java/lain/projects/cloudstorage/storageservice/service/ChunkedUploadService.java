@@ -0,0 +1,243 @@
+package lain.projects.cloudstorage.storageservice.service;
+
+import io.minio.ObjectWriteResponse;
+import io.minio.messages.Part;
+import lain.projects.cloudstorage.storageservice.dto.UploadPart;
+import lain.projects.cloudstorage.storageservice.dto.UploadSession;
+import lain.projects.cloudstorage.storageservice.dto.UploadStatus;
+import lain.projects.cloudstorage.storageservice.event.ObjectWrittenEvent;
+import lain.projects.cloudstorage.storageservice.repository.minio.MinioMultipartClient;
+import lain.projects.cloudstorage.storageservice.repository.redis.UploadSessionRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.EOFException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Загрузка файла по частям поверх multipart upload MinIO. Сессия хранится в Redis,
+ * поэтому части можно досылать через любой узел. Часть не пишется ни на диск, ни в память целиком:
+ * тело запроса с известной длиной по мере чтения уходит в MinIO. Часть можно и заявить
+ * (declarePart), а тело клиент отправит в MinIO сам по подписанной ссылке. Есть только с хранилищем minio.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "storage.backend", havingValue = "minio", matchIfMissing = true)
+@RequiredArgsConstructor
+public class ChunkedUploadService {
+    private static final int MAX_PART_NUMBER = 10000;
+    // Меньше может быть только последняя часть, иначе MinIO откажет при завершении
+    private static final long MIN_PART_SIZE = DataSize.ofMegabytes(5).toBytes();
+
+    private final MinioMultipartClient multipartClient;
+    private final UploadSessionRepository sessionRepository;
+    private final FileService fileService;
+    private final UsageService usageService;
+    private final StorageMetrics storageMetrics;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${minio.bucket}")
+    private String bucket;
+
+    @Value("${storage.upload.max-part-size:64MB}")
+    private DataSize maxPartSize;
+
+    @Value("${storage.upload.session-ttl:PT24H}")
+    private Duration sessionTtl;
+
+    public UploadStatus initiate(Long userId, String path, String contentType) throws Exception {
+        String uploadId = multipartClient.createUpload(bucket, path, contentType);
+        UploadSession session = new UploadSession(UUID.randomUUID().toString(), userId, path, uploadId,
+                contentType, Instant.now());
+        sessionRepository.save(session);
+        return toStatus(session, List.of());
+    }
+
+    public UploadStatus status(String id, Long userId) {
+        UploadSession session = findSession(id, userId);
+        return toStatus(session, sessionRepository.findParts(id));
+    }
+
+    public UploadPart uploadPart(String id, Long userId, int partNumber, InputStream body, long length) throws Exception {
+        checkPart(partNumber, length, maxPartSize);
+
+        UploadSession session = reservePart(id, userId, partNumber, length);
+        String etag;
+        try {
+            etag = multipartClient.streamPart(bucket, session.path(), session.uploadId(), partNumber, body, length);
+        } catch (EOFException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Part body is shorter than Content-Length");
+        }
+        storageMetrics.bytesIn("upload-part", length);
+        UploadPart part = new UploadPart(partNumber, etag, length);
+        sessionRepository.savePart(id, part);
+        return part;
+    }
+
+    /**
+     * Резервирует место под часть, которую клиент зальёт в MinIO сам по подписанной ссылке.
+     * Её etag и настоящий размер становятся известны только при завершении.
+     */
+    public UploadSession declarePart(String id, Long userId, int partNumber, long length, DataSize maxLength) {
+        checkPart(partNumber, length, maxLength);
+
+        UploadSession session = reservePart(id, userId, partNumber, length);
+        sessionRepository.savePart(id, new UploadPart(partNumber, null, length));
+        return session;
+    }
+
+    public void complete(String id, Long userId) throws Exception {
+        UploadSession session = findSession(id, userId);
+        List<UploadPart> parts = sessionRepository.findParts(id);
+        if (parts.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "No parts uploaded");
+        }
+        parts = confirmDeclaredParts(session, parts);
+        for (int i = 0; i < parts.size() - 1; i++) {
+            if (parts.get(i).size() < MIN_PART_SIZE) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                        "Part " + parts.get(i).partNumber() + " is smaller than 5MB and is not the last part");
+            }
+        }
+
+        long previousSize = fileService.sizeOf(session.path());
+        ObjectWriteResponse response = multipartClient.completeUpload(bucket, session.path(), session.uploadId(),
+                parts.stream()
+                        .map(part -> new Part(part.partNumber(), part.etag()))
+                        .toArray(Part[]::new));
+        sessionRepository.delete(id);
+
+        long size = parts.stream().mapToLong(UploadPart::size).sum();
+        eventPublisher.publishEvent(new ObjectWrittenEvent(session.path(), size, previousSize, response.etag(),
+                session.contentType(), Instant.now()));
+        usageService.release(userId, reservationIds(id, parts));
+    }
+
+    public void abort(String id, Long userId) throws Exception {
+        UploadSession session = findSession(id, userId);
+        List<UploadPart> parts = sessionRepository.findParts(id);
+        multipartClient.abortUpload(bucket, session.path(), session.uploadId());
+        sessionRepository.delete(id);
+        usageService.release(userId, reservationIds(id, parts));
+    }
+
+    @Scheduled(fixedDelayString = "${storage.upload.gc-interval:PT10M}")
+    public void collectExpired() {
+        for (String id : sessionRepository.findCreatedBefore(Instant.now().minus(sessionTtl))) {
+            Optional<UploadSession> session = sessionRepository.findById(id);
+            if (!sessionRepository.delete(id) || session.isEmpty()) {
+                continue;
+            }
+
+            try {
+                multipartClient.abortUpload(bucket, session.get().path(), session.get().uploadId());
+                log.info("Aborted expired upload {} for {}", id, session.get().path());
+            } catch (Exception e) {
+                log.warn("Failed to abort expired upload {}", id, e);
+            }
+        }
+    }
+
+    private void checkPart(int partNumber, long length, DataSize maxLength) {
+        if (partNumber < 1 || partNumber > MAX_PART_NUMBER) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Part number must be between 1 and " + MAX_PART_NUMBER);
+        }
+        if (length < 0) {
+            throw new ResponseStatusException(HttpStatus.LENGTH_REQUIRED, "Content-Length is required");
+        }
+        if (length > maxLength.toBytes()) {
+            throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE, "Part exceeds " + maxLength);
+        }
+    }
+
+    // Резерв на каждую часть живёт столько же, сколько сессия; повторная часть заменяет свой резерв
+    private UploadSession reservePart(String id, Long userId, int partNumber, long length) {
+        UploadSession session = findSession(id, userId);
+        checkPartOrder(id, partNumber, length);
+        usageService.reserve(userId, reservationId(id, partNumber), length,
+                Duration.between(Instant.now(), session.createdAt().plus(sessionTtl)));
+        return session;
+    }
+
+    // Часть меньше 5 МБ отклоняется до передачи, как только видно, что она не последняя:
+    // за ней уже есть часть или она сама идёт после такой части
+    private void checkPartOrder(String id, int partNumber, long length) {
+        for (UploadPart part : sessionRepository.findParts(id)) {
+            if (part.partNumber() > partNumber && length < MIN_PART_SIZE) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                        "Part " + partNumber + " is smaller than 5MB and is not the last part");
+            }
+            if (part.partNumber() < partNumber && part.size() < MIN_PART_SIZE) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                        "Part " + part.partNumber() + " is smaller than 5MB and is not the last part");
+            }
+        }
+    }
+
+    // Заявленные части сверяются с тем, что MinIO действительно принял: клиент мог не дослать часть
+    // или залить больше, чем зарезервировал — подписанная ссылка длину тела не ограничивает
+    private List<UploadPart> confirmDeclaredParts(UploadSession session, List<UploadPart> parts) throws Exception {
+        if (parts.stream().allMatch(part -> part.etag() != null)) {
+            return parts;
+        }
+
+        Map<Integer, Part> uploaded = multipartClient.listParts(bucket, session.path(), session.uploadId()).stream()
+                .collect(Collectors.toMap(Part::partNumber, Function.identity()));
+        List<UploadPart> confirmed = new ArrayList<>(parts.size());
+        long directBytes = 0;
+        for (UploadPart part : parts) {
+            if (part.etag() != null) {
+                confirmed.add(part);
+                continue;
+            }
+            Part actual = uploaded.get(part.partNumber());
+            if (actual == null) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Part " + part.partNumber() + " was not uploaded");
+            }
+            if (actual.partSize() > part.size()) {
+                throw new ResponseStatusException(HttpStatus.PAYLOAD_TOO_LARGE,
+                        "Part " + part.partNumber() + " is larger than declared");
+            }
+            confirmed.add(new UploadPart(part.partNumber(), actual.etag(), actual.partSize()));
+            directBytes += actual.partSize();
+        }
+        storageMetrics.bytesInDirect("upload-part", directBytes);
+        return confirmed;
+    }
+
+    private static String reservationId(String id, int partNumber) {
+        return "upload:" + id + ":" + partNumber;
+    }
+
+    private static List<String> reservationIds(String id, List<UploadPart> parts) {
+        return parts.stream().map(part -> reservationId(id, part.partNumber())).toList();
+    }
+
+    private UploadSession findSession(String id, Long userId) {
+        return sessionRepository.findById(id)
+                .filter(session -> session.userId().equals(userId))
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Upload not found"));
+    }
+
+    private UploadStatus toStatus(UploadSession session, List<UploadPart> parts) {
+        return new UploadStatus(session.id(), session.path().substring(session.path().indexOf("/") + 1),
+                maxPartSize.toBytes(), parts, session.createdAt().plus(sessionTtl));
+    }
+}
@@ -0,0 +1,47 @@
+package lain.projects.cloudstorage.storageservice.service;
+
+import lain.projects.cloudstorage.storageservice.event.ObjectWrittenEvent;
+import lain.projects.cloudstorage.storageservice.event.ObjectsCopiedEvent;
+import lain.projects.cloudstorage.storageservice.event.ObjectsRemovedEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Ведёт ссылки на блобы при копировании, переносе и удалении указателей. Работает и при
+ * выключенном storage.dedup.enabled, чтобы уже созданные указатели оставались учтёнными.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DedupListener {
+    private final BlobRegistry blobRegistry;
+
+    @EventListener
+    public void onWritten(ObjectWrittenEvent event) {
+        try {
+            blobRegistry.detachIfReplaced(event.path(), event.etag());
+        } catch (RuntimeException e) {
+            log.warn("Failed to update blob reference of {}", event.path(), e);
+        }
+    }
+
+    @EventListener
+    public void onCopied(ObjectsCopiedEvent event) {
+        try {
+            blobRegistry.copy(event);
+        } catch (RuntimeException e) {
+            log.warn("Failed to copy blob references {} -> {}", event.from(), event.to(), e);
+        }
+    }
+
+    @EventListener
+    public void onRemoved(ObjectsRemovedEvent event) {
+        try {
+            blobRegistry.detach(event.paths());
+        } catch (RuntimeException e) {
+            log.warn("Failed to release blob references of {} objects", event.paths().size(), e);
+        }
+    }
+}
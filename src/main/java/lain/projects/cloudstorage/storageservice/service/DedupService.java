@@ -0,0 +1,243 @@
+package lain.projects.cloudstorage.storageservice.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lain.projects.cloudstorage.storageservice.config.StorageBackendConfig;
+import lain.projects.cloudstorage.storageservice.dto.ObjectFailure;
+import lain.projects.cloudstorage.storageservice.event.ObjectWrittenEvent;
+import lain.projects.cloudstorage.storageservice.repository.FileStorageRepository;
+import lain.projects.cloudstorage.storageservice.repository.StoredObject;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Дедупликация по содержимому. Содержимое хранится один раз под .blobs/sha256/{hash}, а по пользовательскому
+ * пути лежит пустой объект-указатель с хэшем в метаданных. Небольшой файл читается в память, и новый блоб
+ * пишется сразу под своим ключом; крупный пишется во временный ключ, попутно считается SHA-256, и при промахе
+ * копируется в блоб на стороне хранилища. Копирование и перенос указателя — это копия пустого объекта
+ * и новая ссылка в BlobRegistry, само содержимое не трогается.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DedupService {
+    public static final String BLOB_PREFIX = ".blobs/";
+    public static final String BLOB_METADATA = "blob";
+    public static final String BLOB_SIZE_METADATA = "blob-size";
+
+    private static final String STAGING_PREFIX = BLOB_PREFIX + "staging/";
+    private static final String CONTENT_PREFIX = BLOB_PREFIX + "sha256/";
+    private static final int COLLECT_BATCH_SIZE = 1000;
+
+    private final FileStorageRepository fileStorage;
+    private final BlobRegistry blobRegistry;
+    private final ApplicationEventPublisher eventPublisher;
+    private final MeterRegistry meterRegistry;
+
+    // Файлы до этого размера хэшируются в памяти и пишутся сразу в блоб, без временного ключа и копии.
+    // Столько же клиент MinIO и так держит в памяти на часть потока неизвестной длины
+    @Value("${storage.dedup.max-buffered-size:8MB}")
+    private DataSize maxBufferedSize;
+
+    @Value("${storage.dedup.enabled:false}")
+    private boolean enabled;
+
+    @Value("${storage.backend:minio}")
+    private String backend;
+
+    // Сколько блоб без ссылок живёт до удаления
+    @Value("${storage.dedup.gc-grace:PT1H}")
+    private Duration gcGrace;
+
+    private Counter hits;
+    private Counter misses;
+    private Counter savedBytes;
+    private final AtomicLong storedBytes = new AtomicLong();
+    private final AtomicLong referencedBytes = new AtomicLong();
+
+    @PostConstruct
+    void init() {
+        hits = Counter.builder("storage.dedup.uploads").tag("result", "hit").register(meterRegistry);
+        misses = Counter.builder("storage.dedup.uploads").tag("result", "miss").register(meterRegistry);
+        savedBytes = Counter.builder("storage.dedup.saved").baseUnit("bytes")
+                .description("Bytes not stored because identical content already existed")
+                .register(meterRegistry);
+        Gauge.builder("storage.dedup.stored", storedBytes, AtomicLong::get).baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("storage.dedup.referenced", referencedBytes, AtomicLong::get).baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public static String contentKey(String hash) {
+        return CONTENT_PREFIX + hash;
+    }
+
+    /**
+     * @return хэш блоба, если объект с такими метаданными — указатель
+     */
+    public static String blobOf(Map<String, String> userMetadata) {
+        return metadata(userMetadata, BLOB_METADATA);
+    }
+
+    public static long blobSizeOf(Map<String, String> userMetadata) {
+        return Long.parseLong(metadata(userMetadata, BLOB_SIZE_METADATA));
+    }
+
+    /**
+     * @param size длина потока или -1, если она заранее неизвестна
+     */
+    public void upload(String path, InputStream content, long size, String contentType,
+                       long previousSize) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        CountingInputStream in = new CountingInputStream(new DigestInputStream(content, digest));
+
+        int limit = (int) Math.min(maxBufferedSize.toBytes(), Integer.MAX_VALUE - 1);
+        byte[] head = size > limit ? new byte[0] : in.readNBytes(limit + 1);
+        String hash;
+        if (head.length <= limit && size <= limit) {
+            if (size >= 0 && head.length != size) {
+                throw new IOException("Body length " + head.length + " does not match declared " + size);
+            }
+            size = head.length;
+            hash = HexFormat.of().formatHex(digest.digest());
+            storeBlob(hash, size, () ->
+                    fileStorage.put(contentKey(hash), new ByteArrayInputStream(head), head.length, null));
+        } else {
+            String staging = STAGING_PREFIX + UUID.randomUUID();
+            try {
+                fileStorage.put(staging, new SequenceInputStream(new ByteArrayInputStream(head), in), size, null);
+                long staged = in.getCount();
+                hash = HexFormat.of().formatHex(digest.digest());
+                storeBlob(hash, staged, () -> fileStorage.copy(staging, contentKey(hash), staged));
+                size = staged;
+            } finally {
+                removeQuietly(staging);
+            }
+        }
+
+        try {
+            fileStorage.put(path, new ByteArrayInputStream(new byte[0]), 0, contentType,
+                    Map.of(BLOB_METADATA, hash, BLOB_SIZE_METADATA, String.valueOf(size)));
+            blobRegistry.attach(path, hash, size);
+        } catch (Exception e) {
+            blobRegistry.release(hash);
+            throw e;
+        }
+
+        eventPublisher.publishEvent(new ObjectWrittenEvent(path, size, previousSize, hash,
+                contentType, Instant.now()));
+    }
+
+    @Scheduled(fixedDelayString = "${storage.dedup.gc-interval:PT10M}")
+    public void collectUnreferenced() {
+        // Блобы и временные объекты бывают только в MinIO: с другим хранилищем дедупликацию не включить
+        if (!StorageBackendConfig.MINIO.equals(backend)) {
+            return;
+        }
+        List<String> hashes = blobRegistry.findCollectable(Instant.now().minus(gcGrace), COLLECT_BATCH_SIZE);
+        for (String hash : hashes) {
+            try {
+                blobRegistry.collect(hash, this::removeContent);
+            } catch (Exception e) {
+                log.warn("Failed to collect blob {}", hash, e);
+            }
+        }
+
+        collectStaging();
+        storedBytes.set(blobRegistry.storedBytes());
+        referencedBytes.set(blobRegistry.referencedBytes());
+    }
+
+    // Временные объекты upload, который упал между записью и копированием в блоб
+    private void collectStaging() {
+        Instant before = Instant.now().minus(gcGrace);
+        try {
+            fileStorage.forEachPage(STAGING_PREFIX, true, COLLECT_BATCH_SIZE, page -> {
+                List<String> stale = page.stream()
+                        .filter(object -> object.lastModified().isBefore(before))
+                        .map(StoredObject::key)
+                        .toList();
+                if (!stale.isEmpty()) {
+                    fileStorage.delete(stale).forEach(failure ->
+                            log.warn("Failed to collect staged upload {}: {}", failure.path(), failure.reason()));
+                }
+            });
+        } catch (Exception e) {
+            log.warn("Failed to collect staged uploads", e);
+        }
+    }
+
+    /**
+     * Ссылка на блоб hash; при промахе блоб создаёт write. Если запись не удалась, ссылка снимается.
+     */
+    private void storeBlob(String hash, long size, BlobWriter write) throws Exception {
+        if (!blobRegistry.acquire(hash, size)) {
+            hits.increment();
+            savedBytes.increment(size);
+            return;
+        }
+        try {
+            write.write();
+        } catch (Exception e) {
+            blobRegistry.release(hash);
+            throw e;
+        }
+        misses.increment();
+    }
+
+    @FunctionalInterface
+    private interface BlobWriter {
+        void write() throws Exception;
+    }
+
+    private void removeContent(String hash) throws Exception {
+        List<ObjectFailure> failures = fileStorage.delete(List.of(contentKey(hash)));
+        if (!failures.isEmpty()) {
+            throw new IOException("Failed to delete blob " + hash + ": " + failures.get(0).reason());
+        }
+    }
+
+    // Временный объект без ссылок, оставшийся после сбоя, подберёт collectStaging
+    private void removeQuietly(String key) {
+        fileStorage.delete(List.of(key)).forEach(failure ->
+                log.warn("Failed to remove staged upload {}: {}", failure.path(), failure.reason()));
+    }
+
+    // Имена пользовательских метаданных приходят в том регистре, в каком их вернул сервер
+    private static String metadata(Map<String, String> userMetadata, String name) {
+        if (userMetadata == null) {
+            return null;
+        }
+        for (Map.Entry<String, String> entry : userMetadata.entrySet()) {
+            if (entry.getKey().equalsIgnoreCase(name) || entry.getKey().equalsIgnoreCase("x-amz-meta-" + name)) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+}
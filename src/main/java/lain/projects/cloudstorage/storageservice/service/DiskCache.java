@@ -0,0 +1,218 @@
+package lain.projects.cloudstorage.storageservice.service;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Локальная дисковая копия часто скачиваемых объектов. Ключ записи — путь и ETag версии, загрузчик
+ * читает объект только при совпадении ETag, поэтому под ключом лежит ровно эта версия. Запрос со старым
+ * ETag не трогает копию новой версии, а копия старой версии после перезаписи на другом узле просто
+ * вытесняется. Вытеснение по суммарному размеру (W-TinyLFU Caffeine), одновременные промахи по одной
+ * версии ждут одну загрузку.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class DiskCache {
+    private static final String FILE_PREFIX = "object-";
+    private static final String FILE_SUFFIX = ".bin";
+    // Разделитель пути и ETag в ключе; все версии пути лежат подряд в keys
+    private static final char VERSION_SEPARATOR = '\0';
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${storage.disk-cache.enabled:false}")
+    private boolean enabled;
+
+    @Value("${storage.disk-cache.directory:${java.io.tmpdir}/storage-disk-cache}")
+    private Path directory;
+
+    @Value("${storage.disk-cache.max-size:10GB}")
+    private DataSize maxSize;
+
+    // Объекты крупнее идут мимо кэша: один такой файл вытеснил бы весь горячий набор
+    @Value("${storage.disk-cache.max-object-size:256MB}")
+    private DataSize maxObjectSize;
+
+    private AsyncCache<String, Entry> entries;
+    // Ключи entries по порядку, чтобы invalidate находил все версии пути
+    private final NavigableSet<String> keys = new ConcurrentSkipListSet<>();
+
+    private record Entry(Path file, long size) {
+    }
+
+    /**
+     * Открывает тело версии, переданной в open, и падает, если объект уже другой (GET с If-Match).
+     */
+    @FunctionalInterface
+    public interface Loader {
+        InputStream open() throws Exception;
+    }
+
+    @PostConstruct
+    void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        // Индекс живёт в памяти, поэтому файлы прошлого запуска ничему не соответствуют. Каталог задаётся
+        // в настройках и может быть общим, поэтому удаляются только свои файлы
+        Files.createDirectories(directory);
+        try (DirectoryStream<Path> stale = Files.newDirectoryStream(directory, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            for (Path file : stale) {
+                Files.deleteIfExists(file);
+            }
+        }
+
+        entries = Caffeine.newBuilder()
+                .maximumWeight(maxSize.toBytes())
+                .weigher((String path, Entry entry) -> (int) Math.min(entry.size(), Integer.MAX_VALUE))
+                .removalListener((String key, Entry entry, RemovalCause cause) -> {
+                    if (key != null && !entries.asMap().containsKey(key)) {
+                        keys.remove(key);
+                    }
+                    if (entry != null) {
+                        delete(entry.file());
+                    }
+                })
+                .recordStats()
+                .buildAsync();
+        CaffeineCacheMetrics.monitor(meterRegistry, entries, "storage.disk");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Канал к локальной копии версии etag размером size. null — объект не кэшируется (выключено, слишком велик)
+     * или загрузка не удалась (в том числе объект уже другой версии); тогда читать надо из MinIO напрямую.
+     * Закрывает вызывающий.
+     */
+    public FileChannel open(String path, String etag, long size, Loader loader) throws IOException {
+        if (!enabled || size > maxObjectSize.toBytes()) {
+            return null;
+        }
+
+        String key = path + VERSION_SEPARATOR + etag;
+        for (int attempt = 0; attempt < 2; attempt++) {
+            CompletableFuture<Entry> future = entries.asMap().get(key);
+            if (future == null) {
+                CompletableFuture<Entry> fill = new CompletableFuture<>();
+                future = entries.asMap().putIfAbsent(key, fill);
+                if (future == null) {
+                    // Скачивает тот, кто первым поставил future; остальные ждут его результат
+                    future = fill;
+                    keys.add(key);
+                    fill(path, size, loader, fill);
+                }
+            }
+
+            Entry entry;
+            try {
+                entry = future.join();
+            } catch (CompletionException e) {
+                return null;
+            }
+
+            try {
+                return FileChannel.open(entry.file(), StandardOpenOption.READ);
+            } catch (NoSuchFileException e) {
+                // Вытеснено между поиском и открытием
+                entries.asMap().remove(key, future);
+            }
+        }
+        return null;
+    }
+
+    // Выбрасывает все версии путей
+    public void invalidate(Collection<String> paths) {
+        if (!enabled) {
+            return;
+        }
+        for (String path : paths) {
+            String from = path + VERSION_SEPARATOR;
+            Iterator<String> versions = keys.subSet(from, StoragePaths.upperBoundOf(from)).iterator();
+            while (versions.hasNext()) {
+                String key = versions.next();
+                versions.remove();
+                entries.synchronous().invalidate(key);
+            }
+        }
+    }
+
+    /**
+     * Отдаёт [position, position + count) копии через FileChannel.transferTo.
+     */
+    public static long transfer(FileChannel channel, long position, long count, OutputStream out) throws IOException {
+        WritableByteChannel target = Channels.newChannel(out);
+        long sent = 0;
+        while (sent < count) {
+            long written = channel.transferTo(position + sent, count - sent, target);
+            if (written <= 0) {
+                break;
+            }
+            sent += written;
+        }
+        return sent;
+    }
+
+    // Имя файла уникально для каждой загрузки: удаление вытесненной версии не заденет новую
+    private void fill(String path, long size, Loader loader, CompletableFuture<Entry> fill) {
+        Path file = null;
+        try {
+            file = Files.createTempFile(directory, FILE_PREFIX, FILE_SUFFIX);
+            try (InputStream in = loader.open()) {
+                Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            // Оборванное или чужое тело не должно остаться в кэше под этой версией
+            long written = Files.size(file);
+            if (written != size) {
+                throw new IOException("Cached " + written + " bytes of " + path + ", expected " + size);
+            }
+            fill.complete(new Entry(file, size));
+        } catch (Exception e) {
+            log.warn("Failed to cache {} on disk", path, e);
+            if (file != null) {
+                delete(file);
+            }
+            // Неудачная загрузка убирается из кэша, следующий запрос попробует снова
+            fill.completeExceptionally(e);
+        }
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Failed to delete cached file {}", file, e);
+        }
+    }
+}
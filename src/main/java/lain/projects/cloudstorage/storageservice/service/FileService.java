@@ -1,73 +1,192 @@
 package lain.projects.cloudstorage.storageservice.service;
 
-import io.minio.*;
+import io.micrometer.observation.annotation.Observed;
+import lain.projects.cloudstorage.storageservice.dto.FileStat;
+import lain.projects.cloudstorage.storageservice.dto.ObjectFailure;
+import lain.projects.cloudstorage.storageservice.event.ObjectWrittenEvent;
+import lain.projects.cloudstorage.storageservice.event.ObjectsCopiedEvent;
+import lain.projects.cloudstorage.storageservice.event.ObjectsRemovedEvent;
+import lain.projects.cloudstorage.storageservice.repository.FileStorageRepository;
+import lain.projects.cloudstorage.storageservice.repository.StoredObject;
 import lombok.RequiredArgsConstructor;
-import org.apache.tomcat.jni.FileInfo;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.time.Instant;
 import java.util.List;
+import java.util.UUID;
+
+import static lain.projects.cloudstorage.storageservice.service.StoragePaths.userIdOf;
 
 @Service
+@Observed(name = "storage.file")
 @RequiredArgsConstructor
 public class FileService {
+    private final FileStorageRepository fileStorage;
+    private final StorageCache storageCache;
+    private final DiskCache diskCache;
+    private final UsageService usageService;
+    private final DedupService dedupService;
+    private final StorageMetrics storageMetrics;
+    private final ApplicationEventPublisher eventPublisher;
 
-    private final MinioClient minioClient;
+    public void uploadFile(String path, MultipartFile file) throws Exception {
+        long previousSize = sizeOf(path);
+        Long userId = userIdOf(path);
+        String reservationId = UUID.randomUUID().toString();
+        // Квота проверяется до того, как тело пойдёт в MinIO
+        usageService.reserve(userId, reservationId, file.getSize() - Math.max(previousSize, 0));
 
-    @Value("${minio.bucket}")
-    private String bucket;
+        try (InputStream inputStream = file.getInputStream()) {
+            write(path, inputStream, file.getSize(), file.getContentType(), previousSize);
+        } finally {
+            usageService.release(userId, reservationId);
+        }
+    }
 
-    public void uploadFile(String path, MultipartFile file) throws Exception {
-        InputStream inputStream = file.getInputStream();
+    /**
+     * Запись потока, длина которого заранее неизвестна. Квоту резервирует вызывающий.
+     */
+    public void uploadStream(String path, InputStream inputStream, String contentType) throws Exception {
+        write(path, inputStream, -1, contentType, sizeOf(path));
+    }
+
+    private void write(String path, InputStream inputStream, long size, String contentType,
+                       long previousSize) throws Exception {
+        CountingInputStream counted = new CountingInputStream(inputStream);
+        if (dedupService.isEnabled()) {
+            try {
+                dedupService.upload(path, counted, size, contentType, previousSize);
+            } finally {
+                storageMetrics.bytesIn("upload", counted.getCount());
+            }
+            return;
+        }
 
-        minioClient.putObject(
-                PutObjectArgs.builder()
-                        .bucket(bucket)
-                        .object(path)
-                        .stream(inputStream, file.getSize(), -1)
-                        .contentType(file.getContentType())
-                        .build()
-        );
+        String etag = fileStorage.put(path, counted, size, contentType);
+
+        storageMetrics.bytesIn("upload", counted.getCount());
+        eventPublisher.publishEvent(new ObjectWrittenEvent(path, counted.getCount(), previousSize, etag,
+                contentType, Instant.now()));
     }
 
     public InputStream downloadFile(String path) throws Exception {
-        return minioClient.getObject(
-                GetObjectArgs.builder()
-                        .bucket(bucket)
-                        .object(path)
-                        .build()
-        );
+        if (diskCache.isEnabled()) {
+            FileStat stat = statFile(path);
+            FileChannel local = openLocal(path, stat);
+            if (local != null) {
+                return storageMetrics.meterOut("download", Channels.newInputStream(local));
+            }
+        }
+
+        return storageMetrics.meterOut("download", fileStorage.get(contentKeyOf(path)));
+    }
+
+    /**
+     * Отдаёт [position, position + count) из локального файла через FileChannel.transferTo: из самого
+     * хранилища, если оно файловое, иначе из копии в дисковом кэше.
+     *
+     * @return false, если локального файла нет и не будет (кэш выключен, объект велик, загрузка не удалась) —
+     * тогда читать через downloadFile
+     */
+    public boolean transferLocal(String path, FileStat stat, long position, long count,
+                                 OutputStream out) throws Exception {
+        try (FileChannel local = openLocal(path, stat)) {
+            if (local == null) {
+                return false;
+            }
+            storageMetrics.bytesOut("download", DiskCache.transfer(local, position, count, out));
+            return true;
+        }
+    }
+
+    private FileChannel openLocal(String path, FileStat stat) throws Exception {
+        // Для указателя содержимое лежит в блобе
+        String contentKey = stat.blob() == null ? path : DedupService.contentKey(stat.blob());
+        FileChannel stored = fileStorage.openChannel(contentKey);
+        if (stored != null) {
+            return stored;
+        }
+        // Блоб по хэшу не меняется, а у обычного объекта читается только версия из stat
+        return diskCache.open(path, stat.etag(), stat.size(), stat.blob() == null
+                ? () -> fileStorage.get(contentKey, stat.etag())
+                : () -> fileStorage.get(contentKey));
+    }
+
+    public InputStream downloadFile(String path, long offset, long length) throws Exception {
+        return storageMetrics.meterOut("download", fileStorage.get(contentKeyOf(path), offset, length));
+    }
+
+    /**
+     * Тело объекта для обработки на узле (превью): мимо дискового кэша и метрик скачиваний.
+     */
+    public InputStream readContent(String path) throws Exception {
+        return fileStorage.get(contentKeyOf(path));
+    }
+
+    public FileStat statFile(String path) throws Exception {
+        return storageCache.stat(path, () -> loadStat(path));
+    }
+
+    /**
+     * @return размер объекта или -1, если его нет
+     */
+    public long sizeOf(String path) throws Exception {
+        try {
+            return statFile(path).size();
+        } catch (ResponseStatusException e) {
+            if (HttpStatus.NOT_FOUND.equals(e.getStatusCode())) {
+                return -1;
+            }
+            throw e;
+        }
+    }
+
+    private FileStat loadStat(String path) throws Exception {
+        StoredObject stat = fileStorage.stat(path)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "File not found"));
+        String blob = DedupService.blobOf(stat.userMetadata());
+        if (blob != null) {
+            return new FileStat(path, DedupService.blobSizeOf(stat.userMetadata()), blob,
+                    stat.lastModified(), stat.contentType(), blob);
+        }
+        return new FileStat(path, stat.size(), stat.etag(), stat.lastModified(), stat.contentType(), null);
+    }
+
+    // Для указателя содержимое лежит в блобе
+    private String contentKeyOf(String path) throws Exception {
+        String blob = statFile(path).blob();
+        return blob == null ? path : DedupService.contentKey(blob);
     }
 
     public void deleteFile(String path) throws Exception {
-        minioClient.removeObject(
-                RemoveObjectArgs.builder()
-                        .bucket(bucket)
-                        .object(path)
-                        .build()
-        );
+        long size = sizeOf(path);
+        if (size < 0) {
+            return;
+        }
+
+        remove(path);
+
+        eventPublisher.publishEvent(new ObjectsRemovedEvent(List.of(path), List.of(size)));
     }
 
     public void move(String from, String to) throws Exception {
-        minioClient.copyObject(
-                CopyObjectArgs.builder()
-                        .bucket(bucket)
-                        .object(to)
-                        .source(CopySource.builder()
-                                .bucket(bucket)
-                                .object(from)
-                                .build())
-                        .build()
-        );
-
-        minioClient.removeObject(
-                RemoveObjectArgs.builder()
-                        .bucket(bucket)
-                        .object(from)
-                        .build()
-        );
+        long size = statFile(from).size();
+        fileStorage.copy(from, to, size);
+
+        eventPublisher.publishEvent(new ObjectsCopiedEvent(from, to, List.of(from), List.of(size)));
+
+        remove(from);
+
+        eventPublisher.publishEvent(new ObjectsRemovedEvent(List.of(from), List.of(size)));
     }
 
     public void renameFile(String from, String newName) throws Exception {
@@ -75,4 +194,11 @@ public class FileService {
         String to = dir + newName;
         move(from, to);
     }
+
+    private void remove(String path) throws Exception {
+        List<ObjectFailure> failures = fileStorage.delete(List.of(path));
+        if (!failures.isEmpty()) {
+            throw new IOException("Failed to delete " + path + ": " + failures.get(0).reason());
+        }
+    }
 }
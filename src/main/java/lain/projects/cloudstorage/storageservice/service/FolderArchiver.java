@@ -0,0 +1,231 @@
+package lain.projects.cloudstorage.storageservice.service;
+
+import jakarta.annotation.PostConstruct;
+import lain.projects.cloudstorage.storageservice.repository.FileStorageRepository;
+import lain.projects.cloudstorage.storageservice.repository.StoredObject;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Пишет содержимое папки в ZIP, пока следующие объекты уже скачиваются: до prefetch-depth
+ * небольших объектов загружаются параллельно в буферы в пределах общего бюджета памяти.
+ * Записи идут строго в порядке листинга. Объекты, которые не влезли в бюджет или больше
+ * max-buffered-entry, читаются потоком, когда до них доходит очередь.
+ */
+@Service
+@RequiredArgsConstructor
+public class FolderArchiver {
+    private static final Set<String> COMPRESSED_TYPES = Set.of(
+            "application/zip",
+            "application/gzip",
+            "application/x-gzip",
+            "application/x-bzip2",
+            "application/x-xz",
+            "application/zstd",
+            "application/x-7z-compressed",
+            "application/x-rar-compressed",
+            "application/vnd.rar",
+            "application/java-archive",
+            "application/pdf",
+            "application/vnd.openxmlformats-officedocument.wordprocessingml.document",
+            "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet",
+            "application/vnd.openxmlformats-officedocument.presentationml.presentation"
+    );
+    private static final Set<String> UNCOMPRESSED_MEDIA_SUBTYPES = Set.of("svg+xml", "bmp", "x-ms-bmp", "tiff", "wav", "x-wav");
+
+    private static final int LIST_PAGE_SIZE = 1000;
+
+    private final FileStorageRepository fileStorage;
+    private final ExecutorService storageExecutor;
+    private final BlobRegistry blobRegistry;
+
+    @Value("${storage.zip.prefetch-depth:8}")
+    private int prefetchDepth;
+
+    @Value("${storage.zip.memory-budget:64MB}")
+    private DataSize memoryBudget;
+
+    @Value("${storage.zip.max-buffered-entry:8MB}")
+    private DataSize maxBufferedEntry;
+
+    // Общий на все выгрузки, чтобы параллельные архивы не съели heap
+    private Semaphore budget;
+
+    @PostConstruct
+    void init() {
+        budget = new Semaphore((int) Math.min(memoryBudget.toBytes(), Integer.MAX_VALUE));
+    }
+
+    public void writeZip(String prefix, OutputStream outputStream) throws Exception {
+        Deque<StoredObject> listed = new ArrayDeque<>();
+        String after = null;
+        boolean exhausted = false;
+
+        Deque<PendingEntry> window = new ArrayDeque<>(prefetchDepth);
+        try (ZipOutputStream zipOut = new ZipOutputStream(outputStream)) {
+            while (true) {
+                while (window.size() < prefetchDepth) {
+                    if (listed.isEmpty() && !exhausted) {
+                        List<StoredObject> page = fileStorage.list(prefix, true, after, LIST_PAGE_SIZE);
+                        listed.addAll(page);
+                        exhausted = page.size() < LIST_PAGE_SIZE;
+                        if (!page.isEmpty()) {
+                            after = page.get(page.size() - 1).key();
+                        }
+                    }
+                    if (listed.isEmpty()) {
+                        break;
+                    }
+                    StoredObject object = listed.poll();
+                    if (!object.directory()) {
+                        window.add(schedule(resolve(object)));
+                    }
+                }
+                if (window.isEmpty()) {
+                    break;
+                }
+
+                PendingEntry entry = window.poll();
+                String name = entry.source().path().substring(prefix.length());
+                if (entry.content() != null) {
+                    writeBuffered(zipOut, name, entry);
+                } else {
+                    writeStreamed(zipOut, name, entry.source());
+                }
+            }
+            zipOut.finish();
+        } finally {
+            for (PendingEntry entry : window) {
+                entry.discard();
+            }
+        }
+    }
+
+    // Пустой объект может оказаться указателем на дедуплицированный блоб
+    private Source resolve(StoredObject object) {
+        if (object.size() > 0) {
+            return new Source(object.key(), object.key(), object.size());
+        }
+        return blobRegistry.find(object.key())
+                .map(reference -> new Source(object.key(), DedupService.contentKey(reference.getHash()),
+                        reference.getSize()))
+                .orElseGet(() -> new Source(object.key(), object.key(), 0));
+    }
+
+    private PendingEntry schedule(Source source) {
+        long size = source.size();
+        if (size > maxBufferedEntry.toBytes() || !budget.tryAcquire((int) size)) {
+            return new PendingEntry(source, null, budget);
+        }
+
+        CompletableFuture<byte[]> content = CompletableFuture.supplyAsync(() -> {
+            try (InputStream in = fileStorage.get(source.key())) {
+                return in.readAllBytes();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, storageExecutor);
+        return new PendingEntry(source, content, budget);
+    }
+
+    private void writeBuffered(ZipOutputStream zipOut, String name, PendingEntry entry) throws Exception {
+        try {
+            byte[] bytes = entry.content().join();
+            ZipEntry zipEntry = new ZipEntry(name);
+            if (isCompressed(name)) {
+                CRC32 crc = new CRC32();
+                crc.update(bytes);
+                zipEntry.setMethod(ZipEntry.STORED);
+                zipEntry.setSize(bytes.length);
+                zipEntry.setCompressedSize(bytes.length);
+                zipEntry.setCrc(crc.getValue());
+            }
+            zipOut.putNextEntry(zipEntry);
+            zipOut.write(bytes);
+            zipOut.closeEntry();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        } finally {
+            entry.discard();
+        }
+    }
+
+    private void writeStreamed(ZipOutputStream zipOut, String name, Source source) throws Exception {
+        // Для STORED нужен CRC заранее, поэтому уже сжатые большие объекты пишем DEFLATE без сжатия
+        boolean compressed = isCompressed(name);
+        try (InputStream objectStream = fileStorage.get(source.key())) {
+            zipOut.setLevel(compressed ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION);
+            zipOut.putNextEntry(new ZipEntry(name));
+            objectStream.transferTo(zipOut);
+            zipOut.closeEntry();
+        } finally {
+            zipOut.setLevel(Deflater.DEFAULT_COMPRESSION);
+        }
+    }
+
+    static boolean isCompressed(String name) {
+        return MediaTypeFactory.getMediaType(name)
+                .map(FolderArchiver::isCompressed)
+                .orElse(false);
+    }
+
+    private static boolean isCompressed(MediaType type) {
+        return switch (type.getType()) {
+            case "image", "audio", "video" -> !UNCOMPRESSED_MEDIA_SUBTYPES.contains(type.getSubtype());
+            default -> COMPRESSED_TYPES.contains(type.getType() + "/" + type.getSubtype());
+        };
+    }
+
+    // path — ключ в папке, key — откуда читать содержимое
+    private record Source(String path, String key, long size) {
+    }
+
+    private static final class PendingEntry {
+        private final Source source;
+        private final CompletableFuture<byte[]> content;
+        private final Semaphore budget;
+        private boolean released;
+
+        PendingEntry(Source source, CompletableFuture<byte[]> content, Semaphore budget) {
+            this.source = source;
+            this.content = content;
+            this.budget = budget;
+        }
+
+        Source source() {
+            return source;
+        }
+
+        CompletableFuture<byte[]> content() {
+            return content;
+        }
+
+        // Бюджет возвращается, когда буфер больше не нужен; для незавершённой загрузки — по её окончании
+        void discard() {
+            if (content == null || released) {
+                return;
+            }
+            released = true;
+            content.whenComplete((bytes, e) -> budget.release((int) source.size()));
+        }
+    }
+}
@@ -1,101 +1,153 @@
 package lain.projects.cloudstorage.storageservice.service;
 
-import io.minio.*;
-import io.minio.messages.Item;
+import io.micrometer.observation.annotation.Observed;
+import lain.projects.cloudstorage.model.FolderStats;
 import lain.projects.cloudstorage.storageservice.dto.FileInfo;
+import lain.projects.cloudstorage.storageservice.dto.FolderPage;
+import lain.projects.cloudstorage.storageservice.dto.FolderStatistics;
+import lain.projects.cloudstorage.storageservice.dto.JobStatus;
+import lain.projects.cloudstorage.storageservice.dto.ListingSort;
+import lain.projects.cloudstorage.storageservice.event.ObjectWrittenEvent;
+import lain.projects.cloudstorage.storageservice.repository.FileStorageRepository;
+import lain.projects.cloudstorage.storageservice.repository.StoredObject;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.util.function.ThrowingConsumer;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.io.ByteArrayInputStream;
-import java.io.InputStream;
 import java.io.OutputStream;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.Map;
 
 @Service
+@Observed(name = "storage.folder")
 @RequiredArgsConstructor
 public class FolderService {
-    private final MinioClient minioClient;
-
-    @Value("${minio.bucket}")
-    private String bucket;
+    private static final int STREAM_PAGE_SIZE = 1000;
+
+    private final FileStorageRepository fileStorage;
+    private final FileService fileService;
+    private final JobService jobService;
+    private final FolderArchiver folderArchiver;
+    private final MetadataIndexService metadataIndexService;
+    private final FolderStatsService folderStatsService;
+    private final BlobRegistry blobRegistry;
+    private final StorageMetrics storageMetrics;
+    private final StorageCache storageCache;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${storage.index.enabled:false}")
+    private boolean indexEnabled;
 
     public void createFolder(String path) throws Exception {
         if (!path.endsWith("/")) {
             path += "/";
         }
 
-        minioClient.putObject(
-                PutObjectArgs.builder()
-                        .bucket(bucket)
-                        .object(path)
-                        .stream(new ByteArrayInputStream(new byte[0]), 0, -1)
-                        .contentType("application/x-directory")
-                        .build()
-        );
+        long previousSize = fileService.sizeOf(path);
+        String etag = fileStorage.put(path, new ByteArrayInputStream(new byte[0]), 0, "application/x-directory");
+
+        eventPublisher.publishEvent(new ObjectWrittenEvent(path, 0, previousSize, etag,
+                "application/x-directory", Instant.now()));
     }
 
-    public List<FileInfo> listFolder(String path) throws Exception {
-        if (!path.endsWith("/")) {
-            path += "/";
-        }
+    public FolderPage listFolder(String path, ListingSort sort, String cursor, int limit) throws Exception {
+        String folder = path.endsWith("/") ? path : path + "/";
+        String variant = sort + "|" + (cursor == null ? "" : cursor) + "|" + limit;
+        return storageCache.listing(folder, variant, () -> loadFolder(folder, sort, cursor, limit));
+    }
 
-        Iterable<Result<Item>> results = minioClient.listObjects(
-                ListObjectsArgs.builder()
-                        .bucket(bucket)
-                        .prefix(path)
-                        .delimiter("/")
-                        .build()
-        );
+    private FolderPage loadFolder(String path, ListingSort sort, String cursor, int limit) throws Exception {
+        if (indexEnabled) {
+            return metadataIndexService.list(path, sort, cursor, limit);
+        }
+        requireLiveSort(sort);
 
-        List<FileInfo> items = new ArrayList<>();
+        String[] after = ListingCursor.decode(sort, cursor);
+        List<StoredObject> children = new ArrayList<>();
+        boolean hasMore = false;
 
-        for (Result<Item> result : results) {
-            Item item = result.get();
+        // +2: маркер самой папки тоже приходит в листинге
+        for (StoredObject object : fileStorage.list(path, false, after == null ? null : path + after[0], limit + 2)) {
+            if (object.key().equals(path)) continue;
 
-            String fullPath = item.objectName();
+            if (children.size() == limit) {
+                hasMore = true;
+                break;
+            }
+            children.add(object);
+        }
+        List<FileInfo> items = toFileInfos(children, path);
 
-            String name = fullPath.substring(path.length());
-            if (name.isEmpty()) continue;
+        String nextCursor = hasMore ? ListingCursor.encode(sort, items.get(items.size() - 1).name()) : null;
+        return new FolderPage(items, nextCursor);
+    }
 
-            String relativePath = fullPath.substring(fullPath.indexOf("/") + 1);
-            boolean isDir = item.isDir();
-            Long size = isDir ? null : item.size();
+    /**
+     * Отдаёт содержимое папки по одной записи, не собирая его в память.
+     */
+    public void streamFolder(String path, ListingSort sort, ThrowingConsumer<FileInfo> sink) throws Exception {
+        if (!path.endsWith("/")) {
+            path += "/";
+        }
 
-            items.add(new FileInfo(relativePath, name, size, isDir ? "DIRECTORY" : "FILE"));
+        if (indexEnabled) {
+            String cursor = null;
+            do {
+                FolderPage page = metadataIndexService.list(path, sort, cursor, STREAM_PAGE_SIZE);
+                for (FileInfo info : page.items()) {
+                    sink.acceptWithException(info);
+                }
+                cursor = page.nextCursor();
+            } while (cursor != null);
+            return;
         }
+        requireLiveSort(sort);
+
+        // Размеры указателей на блобы подтягиваются пачкой на страницу листинга
+        String afterKey = null;
+        List<StoredObject> page;
+        do {
+            page = fileStorage.list(path, false, afterKey, STREAM_PAGE_SIZE);
+            List<StoredObject> batch = new ArrayList<>(page.size());
+            for (StoredObject object : page) {
+                if (!object.key().equals(path)) {
+                    batch.add(object);
+                }
+            }
+            for (FileInfo info : toFileInfos(batch, path)) {
+                sink.acceptWithException(info);
+            }
+            if (!page.isEmpty()) {
+                afterKey = page.get(page.size() - 1).key();
+            }
+        } while (page.size() == STREAM_PAGE_SIZE);
+    }
 
-        return items;
+    public FolderStatistics stats(String path) {
+        String folder = path.endsWith("/") ? path : path + "/";
+        FolderStats stats = folderStatsService.statsOf(List.of(folder)).get(folder);
+        String relativePath = folder.substring(folder.indexOf("/") + 1);
+        return stats == null
+                ? new FolderStatistics(relativePath, 0, 0, null)
+                : new FolderStatistics(relativePath, stats.getBytes(), stats.getFiles(), stats.getLastModified());
     }
 
-    public void deleteRecursiveFolder(String path) throws Exception {
+    public JobStatus deleteRecursiveFolder(String path, Long userId) {
         if (!path.endsWith("/")) {
             path += "/";
         }
 
-        Iterable<Result<Item>> results = minioClient.listObjects(
-                ListObjectsArgs.builder()
-                        .bucket(bucket)
-                        .prefix(path)
-                        .recursive(true)
-                        .build()
-        );
-
-        for (Result<Item> result : results) {
-            Item item = result.get();
-
-            minioClient.removeObject(
-                    RemoveObjectArgs.builder()
-                            .bucket(bucket)
-                            .object(item.objectName())
-                            .build());
-        }
+        return jobService.submitDelete(userId, path);
     }
 
-    public void moveFolder(String from, String to) throws Exception {
+    public JobStatus moveFolder(String from, String to, Long userId) {
         if (!from.endsWith("/")) from += "/";
         if (!to.endsWith("/")) to += "/";
 
@@ -107,109 +159,60 @@ public class FolderService {
 
         String targetBasePath = to + folderName + "/";
 
-        Iterable<Result<Item>> results = minioClient.listObjects(
-                ListObjectsArgs.builder()
-                        .bucket(bucket)
-                        .prefix(from)
-                        .recursive(true)
-                        .build()
-        );
-
-        for (Result<Item> result : results) {
-            Item item = result.get();
-            String source = item.objectName();
-            String target = targetBasePath + source.substring(from.length());
-
-            minioClient.copyObject(
-                    CopyObjectArgs.builder()
-                            .bucket(bucket)
-                            .object(target)
-                            .source(CopySource.builder()
-                                    .bucket(bucket)
-                                    .object(source)
-                                    .build())
-                            .build()
-            );
-
-            minioClient.removeObject(
-                    RemoveObjectArgs.builder()
-                            .bucket(bucket)
-                            .object(source)
-                            .build()
-            );
-        }
+        return jobService.submitRelocation(userId, from, targetBasePath);
     }
 
     public void streamFolderAsZip(String path, OutputStream outputStream) throws Exception {
         if (!path.endsWith("/")) path += "/";
 
-        try (ZipOutputStream zipOut = new ZipOutputStream(outputStream)) {
-            Iterable<Result<Item>> results = minioClient.listObjects(
-                    ListObjectsArgs.builder()
-                            .bucket(bucket)
-                            .prefix(path)
-                            .recursive(true)
-                            .build()
-            );
-
-            for (Result<Item> result : results) {
-                Item item = result.get();
-
-                if (item.isDir()) continue;
-
-                String objectName = item.objectName();
-                try (InputStream objectStream = minioClient.getObject(
-                        GetObjectArgs.builder()
-                                .bucket(bucket)
-                                .object(objectName)
-                                .build()
-                )) {
-                    zipOut.putNextEntry(new ZipEntry(objectName.substring(path.length())));
-                    objectStream.transferTo(zipOut);
-                    zipOut.closeEntry();
-                }
-            }
-            zipOut.finish();
-        }
+        folderArchiver.writeZip(path, storageMetrics.meterOut("zip", outputStream));
     }
 
-    public void renameFolder(String from, String newName) throws Exception {
+    public JobStatus renameFolder(String from, String newName, Long userId) {
         if (!from.endsWith("/")) from += "/";
         String parent = from.substring(0, from.lastIndexOf("/", from.length() - 2) + 1);
         String to = parent + newName + "/";
 
         // folder1/folder2 -> folder1/NewFolder
 
-        Iterable<Result<Item>> results = minioClient.listObjects(
-                ListObjectsArgs.builder()
-                        .bucket(bucket)
-                        .prefix(from)
-                        .recursive(true)
-                        .build()
-        );
-
-        for (Result<Item> result : results) {
-            Item item = result.get();
-            String source = item.objectName();
-            String target = to + source.substring(from.length());
-
-            minioClient.copyObject(
-                    CopyObjectArgs.builder()
-                            .bucket(bucket)
-                            .object(target)
-                            .source(CopySource.builder()
-                                    .bucket(bucket)
-                                    .object(source)
-                                    .build())
-                            .build()
-            );
-
-            minioClient.removeObject(
-                    RemoveObjectArgs.builder()
-                            .bucket(bucket)
-                            .object(source)
-                            .build()
-            );
+        return jobService.submitRelocation(userId, from, to);
+    }
+
+    // Размеры указателей на блобы и итоги вложенных папок подтягиваются пачкой на страницу
+    private List<FileInfo> toFileInfos(List<StoredObject> objects, String path) {
+        Map<String, Long> blobSizes = blobRegistry.sizesOf(objects);
+        Map<String, FolderStats> folderStats = folderStatsService.statsOf(objects.stream()
+                .filter(StoredObject::directory)
+                .map(StoredObject::key)
+                .toList());
+        return objects.stream()
+                .map(object -> object.directory()
+                        ? toFolderInfo(object, path, folderStats.get(object.key()))
+                        : toFileInfo(object, path, blobSizes.getOrDefault(object.key(), object.size())))
+                .toList();
+    }
+
+    private FileInfo toFileInfo(StoredObject object, String path, long itemSize) {
+        String fullPath = object.key();
+
+        String name = fullPath.substring(path.length());
+
+        String relativePath = fullPath.substring(fullPath.indexOf("/") + 1);
+
+        return new FileInfo(relativePath, name, itemSize, "FILE", null);
+    }
+
+    // Папки без записи в статистике пусты
+    private FileInfo toFolderInfo(StoredObject object, String path, FolderStats stats) {
+        String fullPath = object.key();
+        String relativePath = fullPath.substring(fullPath.indexOf("/") + 1);
+        return new FileInfo(relativePath, fullPath.substring(path.length()),
+                stats == null ? 0 : stats.getBytes(), "DIRECTORY", stats == null ? 0 : stats.getFiles());
+    }
+
+    private void requireLiveSort(ListingSort sort) {
+        if (sort != ListingSort.NAME) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Sorting requires the metadata index");
         }
     }
 }
@@ -0,0 +1,95 @@
+package lain.projects.cloudstorage.storageservice.service;
+
+import lain.projects.cloudstorage.storageservice.event.ObjectWrittenEvent;
+import lain.projects.cloudstorage.storageservice.event.ObjectsCopiedEvent;
+import lain.projects.cloudstorage.storageservice.event.ObjectsRemovedEvent;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static lain.projects.cloudstorage.storageservice.service.FolderStatsService.addToAncestors;
+import static lain.projects.cloudstorage.storageservice.service.StoragePaths.userIdOf;
+
+/**
+ * Поднимает каждое изменение файла по цепочке папок. Маркеры папок файлами не считаются.
+ * Как и для индекса, ошибка здесь не отменяет операцию: итоги выправит FolderStatsRebuilder.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class FolderStatsListener {
+    private final FolderStatsService folderStatsService;
+
+    @EventListener
+    @Order(0)
+    public void onWritten(ObjectWrittenEvent event) {
+        if (!isCounted(event.path())) {
+            return;
+        }
+        Map<String, FolderStatsService.Delta> deltas = new HashMap<>();
+        addToAncestors(deltas, event.path(), event.size() - Math.max(event.previousSize(), 0),
+                event.previousSize() >= 0 ? 0 : 1, event.lastModified());
+        apply(deltas, event.path());
+    }
+
+    @EventListener
+    @Order(0)
+    public void onCopied(ObjectsCopiedEvent event) {
+        Instant now = Instant.now();
+        Map<String, FolderStatsService.Delta> deltas = new HashMap<>();
+        List<String> sources = event.sources();
+        for (int i = 0; i < sources.size(); i++) {
+            if (isCounted(sources.get(i))) {
+                addToAncestors(deltas, event.targetOf(sources.get(i)), event.sizes().get(i), 1, now);
+            }
+        }
+        apply(deltas, event.to());
+    }
+
+    @EventListener
+    @Order(0)
+    public void onRemoved(ObjectsRemovedEvent event) {
+        Instant now = Instant.now();
+        Map<String, FolderStatsService.Delta> deltas = new HashMap<>();
+        List<String> paths = event.paths();
+        for (int i = 0; i < paths.size(); i++) {
+            if (isCounted(paths.get(i))) {
+                addToAncestors(deltas, paths.get(i), -event.sizes().get(i), -1, now);
+            }
+        }
+        if (!paths.isEmpty()) {
+            apply(deltas, paths.get(0));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${storage.folder-stats.root-flush-interval:PT1S}")
+    @PreDestroy
+    public void flushRoots() {
+        try {
+            folderStatsService.flushRoots();
+        } catch (RuntimeException e) {
+            log.warn("Failed to flush folder statistics of user roots", e);
+        }
+    }
+
+    private boolean isCounted(String path) {
+        return !path.endsWith("/") && userIdOf(path) != null;
+    }
+
+    private void apply(Map<String, FolderStatsService.Delta> deltas, String path) {
+        try {
+            folderStatsService.apply(deltas);
+        } catch (RuntimeException e) {
+            log.warn("Failed to update folder statistics for {}", path, e);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package lain.projects.cloudstorage.storageservice.service;
+
+import lain.projects.cloudstorage.storageservice.repository.FileStorageRepository;
+import lain.projects.cloudstorage.storageservice.repository.StoredObject;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static lain.projects.cloudstorage.storageservice.service.FolderStatsService.addToAncestors;
+import static lain.projects.cloudstorage.storageservice.service.StoragePaths.userIdOf;
+
+/**
+ * Пересчитывает итоги папок полным сканом префикса каждого пользователя. Изменения, пришедшие
+ * во время скана, копятся в дельтах строк и прибавляются к результату.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class FolderStatsRebuilder {
+    private static final String LOCK_KEY = "folder-stats:rebuild:lock";
+    private static final int SCAN_BATCH_SIZE = 1000;
+
+    private final FileStorageRepository fileStorage;
+    private final FolderStatsService folderStatsService;
+    private final BlobRegistry blobRegistry;
+    private final StringRedisTemplate redisTemplate;
+
+    @Value("${storage.folder-stats.rebuild-lock-ttl:PT1H}")
+    private Duration lockTtl;
+
+    @Scheduled(cron = "${storage.folder-stats.rebuild-cron:0 0 5 * * *}")
+    public void rebuild() {
+        if (!Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(LOCK_KEY, "locked", lockTtl))) {
+            log.debug("Folder statistics rebuild is already running on another node");
+            return;
+        }
+
+        try {
+            fileStorage.forEachPage("", false, SCAN_BATCH_SIZE, roots -> {
+                for (StoredObject root : roots) {
+                    if (root.directory() && userIdOf(root.key()) != null) {
+                        rebuildRoot(root.key());
+                        redisTemplate.expire(LOCK_KEY, lockTtl);
+                    }
+                }
+            });
+        } catch (Exception e) {
+            log.error("Folder statistics rebuild failed", e);
+        } finally {
+            redisTemplate.delete(LOCK_KEY);
+        }
+    }
+
+    private void rebuildRoot(String root) throws Exception {
+        Instant scanStart = Instant.now();
+        folderStatsService.beginRebuild(root);
+
+        Map<String, FolderStatsService.Delta> scanned = new HashMap<>();
+        fileStorage.forEachPage(root, true, SCAN_BATCH_SIZE, batch -> aggregate(batch.stream()
+                .filter(object -> !object.key().endsWith("/"))
+                .toList(), scanned));
+
+        int removed = folderStatsService.finishRebuild(root, scanned, scanStart);
+        log.debug("Folder statistics under {} rebuilt: {} folders, {} stale removed", root, scanned.size(), removed);
+    }
+
+    // Указатели на блобы в листинге пустые, их размер берётся из реестра пачкой
+    private void aggregate(List<StoredObject> batch, Map<String, FolderStatsService.Delta> scanned) {
+        Map<String, Long> blobSizes = blobRegistry.sizesOf(batch);
+        for (StoredObject object : batch) {
+            addToAncestors(scanned, object.key(), blobSizes.getOrDefault(object.key(), object.size()), 1,
+                    object.lastModified());
+        }
+    }
+}
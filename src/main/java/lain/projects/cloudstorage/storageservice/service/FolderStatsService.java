@@ -0,0 +1,179 @@
+package lain.projects.cloudstorage.storageservice.service;
+
+import lain.projects.cloudstorage.model.FolderStats;
+import lain.projects.cloudstorage.storageservice.repository.FolderStatsRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static lain.projects.cloudstorage.storageservice.service.StoragePaths.ancestorsOf;
+import static lain.projects.cloudstorage.storageservice.service.StoragePaths.isBelowRoot;
+import static lain.projects.cloudstorage.storageservice.service.StoragePaths.upperBoundOf;
+
+/**
+ * Рекурсивные итоги папок в Postgres. Изменение файла поднимается по цепочке предков одной
+ * транзакцией, так что итоги папки всегда готовы и листинг читает их одним запросом на страницу.
+ * Исключение — корень пользователя: его строку меняет каждая запись, поэтому его дельты копятся
+ * в памяти и пишутся пачкой раз в root-flush-interval (FolderStatsListener). В листингах корень
+ * не показывается, а потерянную при падении узла пачку исправит FolderStatsRebuilder.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class FolderStatsService {
+    private final FolderStatsRepository repository;
+    private final JdbcTemplate jdbcTemplate;
+
+    private final Map<String, Delta> pendingRoots = new ConcurrentHashMap<>();
+
+    public record Delta(long bytes, long files, Instant lastModified) {
+        Delta plus(Delta other) {
+            Instant latest = lastModified.isAfter(other.lastModified) ? lastModified : other.lastModified;
+            return new Delta(bytes + other.bytes, files + other.files, latest);
+        }
+    }
+
+    /**
+     * Добавляет изменение файла path ко всем папкам над ним, от родителя до корня пользователя.
+     */
+    public static void addToAncestors(Map<String, Delta> deltas, String path, long bytes, long files,
+                                      Instant lastModified) {
+        Delta delta = new Delta(bytes, files, lastModified);
+        for (String folder : ancestorsOf(path)) {
+            deltas.merge(folder, delta, Delta::plus);
+        }
+    }
+
+    /**
+     * Индекс, который ddl-auto описать не умеет: пересборка выбирает поддерево корня диапазоном путей
+     * в порядке байтов, а первичный ключ в сортировке базы для этого не годится.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void createIndexes() {
+        try {
+            jdbcTemplate.execute("""
+                    create index if not exists idx_folder_stats_path_c
+                    on folder_stats (path collate "C")""");
+        } catch (DataAccessException e) {
+            log.warn("Failed to create folder statistics path index, rebuilds will scan folder_stats", e);
+        }
+    }
+
+    @Transactional
+    public void apply(Map<String, Delta> deltas) {
+        Map<String, Delta> folders = new TreeMap<>();
+        Map<String, Delta> roots = new HashMap<>();
+        deltas.forEach((folder, delta) -> (isBelowRoot(folder) ? folders : roots).put(folder, delta));
+        write(folders);
+        roots.forEach((root, delta) -> pendingRoots.merge(root, delta, Delta::plus));
+    }
+
+    /**
+     * Пишет накопленные дельты корней пользователей.
+     */
+    @Transactional
+    public void flushRoots() {
+        Map<String, Delta> drained = new TreeMap<>();
+        for (String root : pendingRoots.keySet()) {
+            Delta delta = pendingRoots.remove(root);
+            if (delta != null) {
+                drained.put(root, delta);
+            }
+        }
+        try {
+            write(drained);
+        } catch (RuntimeException e) {
+            drained.forEach((root, delta) -> pendingRoots.merge(root, delta, Delta::plus));
+            throw e;
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public Map<String, FolderStats> statsOf(Collection<String> folders) {
+        if (folders.isEmpty()) {
+            return Map.of();
+        }
+        Map<String, FolderStats> stats = new HashMap<>();
+        repository.findAllById(folders).forEach(row -> stats.put(row.getPath(), row));
+        // Корню добавляется ещё не записанная дельта этого узла, чтобы своя запись была видна сразу
+        for (String folder : folders) {
+            Delta pending = pendingRoots.get(folder);
+            if (pending != null) {
+                stats.put(folder, withPending(folder, stats.get(folder), pending));
+            }
+        }
+        return stats;
+    }
+
+    // Дельта корня, накопленная до начала скана, уже есть в нём самом и в дельту пересборки попасть не должна
+    @Transactional
+    public void beginRebuild(String root) {
+        flushRoot(root);
+        repository.resetDeltas(root, upperBoundOf(root));
+    }
+
+    /**
+     * Заменяет итоги под root результатом скана, начатого в scanStart, и убирает папки,
+     * которых скан не нашёл. Возвращает число удалённых записей.
+     */
+    @Transactional
+    public int finishRebuild(String root, Map<String, Delta> scanned, Instant scanStart) {
+        flushRoot(root);
+        Instant now = Instant.now();
+        for (Map.Entry<String, Delta> entry : new TreeMap<>(scanned).entrySet()) {
+            Delta delta = entry.getValue();
+            repository.replace(entry.getKey(), delta.bytes(), delta.files(), delta.lastModified(), now);
+        }
+        return repository.deleteUpdatedBefore(root, upperBoundOf(root), scanStart);
+    }
+
+    private static FolderStats withPending(String root, FolderStats row, Delta pending) {
+        if (row == null) {
+            return FolderStats.builder().path(root).bytes(pending.bytes()).files(pending.files())
+                    .lastModified(pending.lastModified()).build();
+        }
+        Delta total = new Delta(row.getBytes(), row.getFiles(), row.getLastModified()).plus(pending);
+        return FolderStats.builder().path(root).bytes(total.bytes()).files(total.files())
+                .lastModified(total.lastModified()).build();
+    }
+
+    private void flushRoot(String root) {
+        Delta delta = pendingRoots.remove(root);
+        if (delta != null) {
+            write(Map.of(root, delta));
+        }
+    }
+
+    private void write(Map<String, Delta> deltas) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+        Instant now = Instant.now();
+        List<String> shrunk = new ArrayList<>();
+        // Строки блокируются в порядке путей: встречные транзакции по одной ветке не сцепятся
+        for (Map.Entry<String, Delta> entry : new TreeMap<>(deltas).entrySet()) {
+            Delta delta = entry.getValue();
+            repository.apply(entry.getKey(), delta.bytes(), delta.files(), delta.lastModified(), now);
+            if (delta.files() < 0) {
+                shrunk.add(entry.getKey());
+            }
+        }
+        if (!shrunk.isEmpty()) {
+            repository.deleteEmpty(shrunk);
+        }
+    }
+}
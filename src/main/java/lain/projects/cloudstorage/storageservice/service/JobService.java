@@ -0,0 +1,235 @@
+package lain.projects.cloudstorage.storageservice.service;
+
+import lain.projects.cloudstorage.storageservice.dto.Job;
+import lain.projects.cloudstorage.storageservice.dto.JobStatus;
+import lain.projects.cloudstorage.storageservice.dto.ObjectFailure;
+import lain.projects.cloudstorage.storageservice.repository.redis.JobRepository;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Фоновое выполнение долгих операций над папками. Состояние задач хранится в Redis,
+ * поэтому статус может отдать любой узел. Узел, выполняющий задачу, держит на неё
+ * аренду и продлевает её вместе со сбросом счётчиков; задачу с истёкшей арендой
+ * подбирает первый узел, который успеет её захватить.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class JobService {
+    private static final int MAX_STORED_ERRORS = 1000;
+
+    private final JobRepository jobRepository;
+    private final RelocationService relocationService;
+    private final BulkDeleteService bulkDeleteService;
+    private final ExecutorService backgroundExecutor;
+    private final StorageMetrics storageMetrics;
+    private final ObservationRegistry observationRegistry;
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Map<String, RunningJob> running = new ConcurrentHashMap<>();
+    // Не synchronized: внутри запросы в Redis, а монитор закрепил бы виртуальный поток за носителем
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    @Value("${storage.jobs.lease-ttl:PT1M}")
+    private Duration leaseTtl;
+
+    @Value("${storage.jobs.retention:P1D}")
+    private Duration retention;
+
+    public JobStatus submitRelocation(Long userId, String from, String to) {
+        if (to.startsWith(from)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Cannot move a folder into itself");
+        }
+        return submit(newJob(Job.Type.RELOCATE, userId, from, to));
+    }
+
+    public JobStatus submitDelete(Long userId, String prefix) {
+        return submit(newJob(Job.Type.DELETE, userId, prefix, null));
+    }
+
+    public Optional<JobStatus> findStatus(String id, Long userId) {
+        return jobRepository.findById(id)
+                .filter(job -> job.userId().equals(userId))
+                .map(job -> toStatus(job, jobRepository.findErrors(id)));
+    }
+
+    @Scheduled(fixedDelayString = "${storage.jobs.heartbeat-interval:PT10S}")
+    public void heartbeat() {
+        for (String id : running.keySet()) {
+            flush(id, Job.State.RUNNING);
+            if (!jobRepository.refreshClaim(id, nodeId, leaseTtl)) {
+                log.warn("Job {} lease is held by another node", id);
+            }
+        }
+
+        for (String id : jobRepository.findActiveIds()) {
+            if (running.containsKey(id) || !jobRepository.tryClaim(id, nodeId, leaseTtl)) {
+                continue;
+            }
+
+            Optional<Job> orphan = jobRepository.findById(id);
+            if (orphan.isPresent() && orphan.get().isActive()) {
+                log.info("Picked up orphaned job {}", id);
+                start(orphan.get());
+            } else {
+                jobRepository.release(id, nodeId);
+            }
+        }
+    }
+
+    private Job newJob(Job.Type type, Long userId, String source, String target) {
+        Instant now = Instant.now();
+        return new Job(UUID.randomUUID().toString(), type, userId, source, target,
+                Job.State.QUEUED, 0, 0, 0, 0, now, now);
+    }
+
+    private JobStatus submit(Job job) {
+        jobRepository.tryClaim(job.id(), nodeId, leaseTtl);
+        jobRepository.save(job);
+        start(job);
+        return toStatus(job, List.of());
+    }
+
+    private void start(Job job) {
+        BulkOperationProgress progress = new BulkOperationProgress();
+        progress.getProcessedObjects().set(job.processedObjects());
+        progress.getProcessedBytes().set(job.processedBytes());
+
+        RunningJob runningJob = new RunningJob(job, progress);
+        running.put(job.id(), runningJob);
+        backgroundExecutor.execute(() -> Observation.createNotStarted("storage.job", observationRegistry)
+                .contextualName("job " + job.type())
+                .lowCardinalityKeyValue("type", job.type().name())
+                .observe(() -> execute(runningJob)));
+    }
+
+    private void execute(RunningJob runningJob) {
+        Job job = runningJob.job();
+        BulkOperationProgress progress = runningJob.progress();
+        Job.State state = Job.State.COMPLETED;
+
+        try {
+            flush(job.id(), Job.State.RUNNING);
+            switch (job.type()) {
+                case RELOCATE -> {
+                    if (relocationService.hasCheckpoint(job.id())) {
+                        relocationService.resume(job.id(), progress);
+                    } else {
+                        relocationService.relocate(job.id(), job.source(), job.target(), progress);
+                    }
+                    // Чекпоинт остаётся, только если перенос остановился на неудачном чанке
+                    if (relocationService.hasCheckpoint(job.id())) {
+                        relocationService.discard(job.id());
+                        state = Job.State.FAILED;
+                    }
+                }
+                case DELETE -> bulkDeleteService.deletePrefix(job.source(), progress);
+            }
+        } catch (ResponseStatusException e) {
+            if (HttpStatus.CONFLICT.equals(e.getStatusCode())) {
+                // Перенос ещё держит блокировку упавшего узла — подберём задачу на следующем цикле
+                running.remove(job.id());
+                jobRepository.release(job.id(), nodeId);
+                return;
+            }
+            state = fail(job, progress, e);
+        } catch (Exception e) {
+            state = fail(job, progress, e);
+        }
+
+        finish(job.id(), state);
+    }
+
+    private void finish(String id, Job.State state) {
+        flushLock.lock();
+        try {
+            flush(id, state);
+            RunningJob finished = running.get(id);
+            if (finished != null) {
+                Job job = finished.job();
+                storageMetrics.folderOperation(job.type().name(), state.name(), job.processedObjects(),
+                        job.processedBytes(), job.errorCount());
+            }
+            running.remove(id);
+            jobRepository.expire(id, retention);
+            jobRepository.release(id, nodeId);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private Job.State fail(Job job, BulkOperationProgress progress, Exception e) {
+        log.warn("Job {} failed", job.id(), e);
+        progress.getFailures().add(new ObjectFailure(job.source(), e.getMessage()));
+        return Job.State.FAILED;
+    }
+
+    private void flush(String id, Job.State state) {
+        flushLock.lock();
+        try {
+            flushLocked(id, state);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void flushLocked(String id, Job.State state) {
+        RunningJob runningJob = running.get(id);
+        if (runningJob == null) {
+            return;
+        }
+
+        BulkOperationProgress progress = runningJob.progress();
+        List<ObjectFailure> failures;
+        synchronized (progress.getFailures()) {
+            failures = new ArrayList<>(progress.getFailures().subList(
+                    runningJob.flushedErrors(), progress.getFailures().size()));
+        }
+
+        Job job = runningJob.job();
+        long errorCount = job.errorCount() + failures.size();
+        Job updated = new Job(job.id(), job.type(), job.userId(), job.source(), job.target(), state,
+                progress.getProcessedObjects().get(),
+                Math.max(job.totalObjects(), progress.getDiscoveredObjects().get()),
+                progress.getProcessedBytes().get(),
+                errorCount, job.createdAt(), Instant.now());
+
+        jobRepository.appendErrors(job.id(), failures.stream().map(this::toRelative).toList(), MAX_STORED_ERRORS);
+        jobRepository.save(updated);
+        running.put(id, new RunningJob(updated, progress, runningJob.flushedErrors() + failures.size()));
+    }
+
+    private ObjectFailure toRelative(ObjectFailure failure) {
+        return new ObjectFailure(failure.path().substring(failure.path().indexOf("/") + 1), failure.reason());
+    }
+
+    private JobStatus toStatus(Job job, List<ObjectFailure> errors) {
+        return new JobStatus(job.id(), job.type(), job.state(), job.processedObjects(), job.totalObjects(),
+                job.processedBytes(), job.errorCount(), errors, job.createdAt(), job.updatedAt());
+    }
+
+    private record RunningJob(Job job, BulkOperationProgress progress, int flushedErrors) {
+        RunningJob(Job job, BulkOperationProgress progress) {
+            this(job, progress, 0);
+        }
+    }
+}
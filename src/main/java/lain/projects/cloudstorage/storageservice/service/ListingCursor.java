@@ -0,0 +1,47 @@
+package lain.projects.cloudstorage.storageservice.service;
+
+import lain.projects.cloudstorage.storageservice.dto.ListingSort;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Непрозрачный курсор листинга: сортировка, ключ сортировки последней отданной записи и её имя.
+ * Для сортировки по имени формат одинаков у индекса и у живого листинга MinIO.
+ */
+public final class ListingCursor {
+
+    private ListingCursor() {
+    }
+
+    public static String encode(ListingSort sort, String... values) {
+        String value = sort + "|" + String.join("|", values);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return значения в том же порядке, что и при encode, или null для первой страницы
+     */
+    public static String[] decode(ListingSort sort, String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+
+        int expected = sort == ListingSort.NAME ? 2 : 3;
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            // Имя идёт последним, поэтому "|" внутри имени не ломает разбор
+            String[] parts = value.split("\\|", expected);
+            if (parts.length != expected || !parts[0].equals(sort.name())) {
+                throw new IllegalArgumentException("Cursor does not match sort " + sort);
+            }
+            String[] values = new String[expected - 1];
+            System.arraycopy(parts, 1, values, 0, values.length);
+            return values;
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package lain.projects.cloudstorage.storageservice.service;
+
+import lain.projects.cloudstorage.storageservice.event.ObjectWrittenEvent;
+import lain.projects.cloudstorage.storageservice.event.ObjectsCopiedEvent;
+import lain.projects.cloudstorage.storageservice.event.ObjectsRemovedEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Держит индекс в актуальном состоянии после изменений в MinIO. Ошибка индекса не должна
+ * ронять уже выполненную операцию: расхождение исправит MetadataReconciler.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "storage.index.enabled", havingValue = "true")
+@RequiredArgsConstructor
+public class MetadataIndexListener {
+    private final MetadataIndexService metadataIndexService;
+
+    @EventListener
+    @Order(0)
+    public void onWritten(ObjectWrittenEvent event) {
+        try {
+            metadataIndexService.indexObject(event.path(), event.size(), event.etag(),
+                    event.contentType(), event.lastModified());
+        } catch (RuntimeException e) {
+            log.warn("Failed to index {}", event.path(), e);
+        }
+    }
+
+    @EventListener
+    @Order(0)
+    public void onCopied(ObjectsCopiedEvent event) {
+        try {
+            metadataIndexService.indexCopies(event);
+        } catch (RuntimeException e) {
+            log.warn("Failed to index copies {} -> {}", event.from(), event.to(), e);
+        }
+    }
+
+    @EventListener
+    @Order(0)
+    public void onRemoved(ObjectsRemovedEvent event) {
+        try {
+            metadataIndexService.removeObjects(event.paths());
+        } catch (RuntimeException e) {
+            log.warn("Failed to remove {} objects from index", event.paths().size(), e);
+        }
+    }
+}
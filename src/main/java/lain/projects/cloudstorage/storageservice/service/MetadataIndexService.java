@@ -0,0 +1,186 @@
+package lain.projects.cloudstorage.storageservice.service;
+
+import lain.projects.cloudstorage.model.FolderStats;
+import lain.projects.cloudstorage.model.ObjectMetadata;
+import lain.projects.cloudstorage.storageservice.dto.FileInfo;
+import lain.projects.cloudstorage.storageservice.dto.FolderPage;
+import lain.projects.cloudstorage.storageservice.dto.ListingSort;
+import lain.projects.cloudstorage.storageservice.event.ObjectsCopiedEvent;
+import lain.projects.cloudstorage.storageservice.repository.ObjectMetadataRepository;
+import lain.projects.cloudstorage.storageservice.repository.StoredObject;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static lain.projects.cloudstorage.storageservice.service.StoragePaths.isBelowRoot;
+import static lain.projects.cloudstorage.storageservice.service.StoragePaths.parentOf;
+import static lain.projects.cloudstorage.storageservice.service.StoragePaths.upperBoundOf;
+
+/**
+ * Индекс метаданных объектов в Postgres. Папки, у которых нет объекта-маркера,
+ * хранятся как неявные записи и удаляются вместе с последним дочерним объектом.
+ */
+@Service
+@RequiredArgsConstructor
+public class MetadataIndexService {
+    private static final String FILE = "FILE";
+    private static final String DIRECTORY = "DIRECTORY";
+
+    private final ObjectMetadataRepository repository;
+    private final BlobRegistry blobRegistry;
+    private final FolderStatsService folderStatsService;
+
+    @Transactional(readOnly = true)
+    public FolderPage list(String folder, ListingSort sort, String cursor, int limit) {
+        String[] after = ListingCursor.decode(sort, cursor);
+        Pageable page = PageRequest.of(0, limit + 1);
+
+        List<ObjectMetadata> rows = switch (sort) {
+            case NAME -> repository.findChildrenByName(folder, after == null ? "" : after[0], page);
+            case SIZE -> repository.findChildrenBySize(folder,
+                    after == null ? -1 : Long.parseLong(after[0]), after == null ? "" : after[1], page);
+            case MODIFIED -> repository.findChildrenByModified(folder,
+                    after == null ? Instant.EPOCH : Instant.parse(after[0]), after == null ? "" : after[1], page);
+        };
+
+        boolean hasMore = rows.size() > limit;
+        List<ObjectMetadata> pageRows = hasMore ? rows.subList(0, limit) : rows;
+        List<FileInfo> items = toFileInfos(pageRows);
+        String nextCursor = hasMore ? encodeCursor(sort, pageRows.get(pageRows.size() - 1)) : null;
+        return new FolderPage(items, nextCursor);
+    }
+
+    /**
+     * Поиск по имени среди всех объектов под root, по порядку путей.
+     *
+     * @param pattern LIKE-шаблон в нижнем регистре, спецсимволы экранированы обратной косой чертой
+     */
+    @Transactional(readOnly = true)
+    public FolderPage search(String root, String pattern, String cursor, int limit) {
+        String after = cursor == null || cursor.isEmpty() ? "" : decodeSearchCursor(cursor);
+        List<ObjectMetadata> rows = repository.searchByName(root, upperBoundOf(root), pattern, after, limit + 1);
+
+        boolean hasMore = rows.size() > limit;
+        List<ObjectMetadata> pageRows = hasMore ? rows.subList(0, limit) : rows;
+        List<FileInfo> items = toFileInfos(pageRows);
+        String nextCursor = hasMore ? encodeSearchCursor(pageRows.get(pageRows.size() - 1).getPath()) : null;
+        return new FolderPage(items, nextCursor);
+    }
+
+    @Transactional
+    public void indexObject(String path, long size, String etag, String contentType, Instant lastModified) {
+        Instant now = Instant.now();
+        upsert(path, size, etag, contentType, lastModified, true, now);
+        indexAncestors(parentOf(path), now, new HashSet<>());
+    }
+
+    @Transactional
+    public void indexScanned(List<StoredObject> objects, Set<String> knownDirectories) {
+        Instant now = Instant.now();
+        Map<String, Long> blobSizes = blobRegistry.sizesOf(objects);
+        for (StoredObject object : objects) {
+            long size = blobSizes.getOrDefault(object.key(), object.size());
+            upsert(object.key(), size, object.etag(), object.contentType(), object.lastModified(), true, now);
+            indexAncestors(parentOf(object.key()), now, knownDirectories);
+        }
+    }
+
+    @Transactional
+    public void indexCopies(ObjectsCopiedEvent event) {
+        Instant now = Instant.now();
+        Set<String> knownDirectories = new HashSet<>();
+        for (ObjectMetadata source : repository.findAllById(event.sources())) {
+            String target = event.targetOf(source.getPath());
+            upsert(target, source.getSize(), source.getEtag(), source.getContentType(),
+                    source.getLastModified(), source.isMarker(), now);
+            indexAncestors(parentOf(target), now, knownDirectories);
+        }
+    }
+
+    @Transactional
+    public void removeObjects(Collection<String> paths) {
+        repository.deleteAllByIdInBatch(paths);
+
+        // Сначала самые глубокие папки, чтобы опустевший родитель проверялся после детей
+        TreeSet<String> directories = new TreeSet<>(Comparator.comparingInt(String::length).reversed()
+                .thenComparing(Comparator.naturalOrder()));
+        paths.forEach(path -> directories.add(parentOf(path)));
+        while (!directories.isEmpty()) {
+            String directory = directories.pollFirst();
+            if (isBelowRoot(directory) && repository.deleteIfImplicitAndEmpty(directory) > 0) {
+                directories.add(parentOf(directory));
+            }
+        }
+    }
+
+    @Transactional
+    public int removeIndexedBefore(Instant instant) {
+        return repository.deleteIndexedBefore(instant);
+    }
+
+    private void upsert(String path, long size, String etag, String contentType, Instant lastModified,
+                        boolean marker, Instant indexedAt) {
+        repository.upsert(path, parentOf(path), path.substring(parentOf(path).length()), size,
+                path.endsWith("/") ? DIRECTORY : FILE, etag, contentType, lastModified, marker, indexedAt);
+    }
+
+    private void indexAncestors(String directory, Instant indexedAt, Set<String> knownDirectories) {
+        for (String dir = directory; isBelowRoot(dir) && knownDirectories.add(dir); dir = parentOf(dir)) {
+            repository.upsertDirectory(dir, parentOf(dir), dir.substring(parentOf(dir).length()), indexedAt);
+        }
+    }
+
+    // Итоги папок страницы читаются одним запросом
+    private List<FileInfo> toFileInfos(List<ObjectMetadata> rows) {
+        Map<String, FolderStats> folderStats = folderStatsService.statsOf(rows.stream()
+                .filter(row -> DIRECTORY.equals(row.getType()))
+                .map(ObjectMetadata::getPath)
+                .toList());
+        return rows.stream().map(row -> toFileInfo(row, folderStats.get(row.getPath()))).toList();
+    }
+
+    private FileInfo toFileInfo(ObjectMetadata row, FolderStats stats) {
+        String relativePath = row.getPath().substring(row.getPath().indexOf("/") + 1);
+        if (!DIRECTORY.equals(row.getType())) {
+            return new FileInfo(relativePath, row.getName(), row.getSize(), row.getType(), null);
+        }
+        return new FileInfo(relativePath, row.getName(), stats == null ? 0 : stats.getBytes(), row.getType(),
+                stats == null ? 0 : stats.getFiles());
+    }
+
+    private String encodeCursor(ListingSort sort, ObjectMetadata last) {
+        return switch (sort) {
+            case NAME -> ListingCursor.encode(sort, last.getName());
+            case SIZE -> ListingCursor.encode(sort, String.valueOf(last.getSize()), last.getName());
+            case MODIFIED -> ListingCursor.encode(sort, last.getLastModified().toString(), last.getName());
+        };
+    }
+
+    // Курсор поиска — путь последней отданной записи
+    private static String encodeSearchCursor(String path) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(path.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodeSearchCursor(String cursor) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package lain.projects.cloudstorage.storageservice.service;
+
+import lain.projects.cloudstorage.storageservice.repository.FileStorageRepository;
+import lain.projects.cloudstorage.storageservice.repository.ObjectMetadataRepository;
+import lain.projects.cloudstorage.storageservice.repository.StoredObject;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.ExecutorService;
+
+import static lain.projects.cloudstorage.storageservice.service.StoragePaths.userIdOf;
+
+/**
+ * Перестраивает индекс полным сканом префиксов пользователей. Всё, что скан не подтвердил и что не обновлялось
+ * живыми событиями после его начала, удаляется по indexed_at.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "storage.index.enabled", havingValue = "true")
+@RequiredArgsConstructor
+public class MetadataReconciler {
+    private static final String LOCK_KEY = "index:reconcile:lock";
+    private static final int BATCH_SIZE = 1000;
+
+    private final FileStorageRepository fileStorage;
+    private final MetadataIndexService metadataIndexService;
+    private final ObjectMetadataRepository metadataRepository;
+    private final StringRedisTemplate redisTemplate;
+    private final ExecutorService backgroundExecutor;
+
+    @Value("${storage.index.reconcile-lock-ttl:PT1H}")
+    private Duration lockTtl;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildIfEmpty() {
+        if (metadataRepository.count() == 0) {
+            backgroundExecutor.execute(this::reconcile);
+        }
+    }
+
+    @Scheduled(cron = "${storage.index.reconcile-cron:0 0 4 * * *}")
+    public void reconcile() {
+        if (!Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(LOCK_KEY, "locked", lockTtl))) {
+            log.debug("Index reconciliation is already running on another node");
+            return;
+        }
+
+        try {
+            rebuild();
+        } catch (Exception e) {
+            log.error("Index reconciliation failed", e);
+        } finally {
+            redisTemplate.delete(LOCK_KEY);
+        }
+    }
+
+    private void rebuild() throws Exception {
+        Instant scanStart = Instant.now();
+        Set<String> knownDirectories = new HashSet<>();
+        AtomicLong scanned = new AtomicLong();
+
+        // Верхний уровень — префиксы пользователей "user-{id}-files/"; блобы дедупликации, превью
+        // и прочие служебные ключи в листинги не попадают
+        fileStorage.forEachPage("", false, BATCH_SIZE, roots -> {
+            for (StoredObject root : roots) {
+                if (!root.directory() || userIdOf(root.key()) == null) {
+                    continue;
+                }
+                fileStorage.forEachPage(root.key(), true, BATCH_SIZE, batch -> {
+                    metadataIndexService.indexScanned(batch, knownDirectories);
+                    scanned.addAndGet(batch.size());
+                });
+            }
+        });
+
+        int removed = metadataIndexService.removeIndexedBefore(scanStart);
+        log.info("Index reconciled: {} objects scanned, {} stale entries removed", scanned.get(), removed);
+    }
+}
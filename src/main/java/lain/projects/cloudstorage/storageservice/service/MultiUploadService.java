@@ -0,0 +1,111 @@
+package lain.projects.cloudstorage.storageservice.service;
+
+import lain.projects.cloudstorage.storageservice.dto.UploadResult;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.fileupload2.core.FileItemInput;
+import org.apache.commons.fileupload2.core.FileItemInputIterator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Загрузка нескольких файлов из одного multipart-запроса без буферизации всего тела:
+ * запись части в MinIO начинается, как только часть начала приходить, и идёт параллельно
+ * с чтением следующих частей (не больше max-in-flight одновременно). Ошибка одного файла
+ * не прерывает остальные.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class MultiUploadService {
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final FileService fileService;
+    private final UsageService usageService;
+    private final ExecutorService storageExecutor;
+
+    @Value("${storage.upload.multi.max-in-flight:4}")
+    private int maxInFlight;
+
+    // Сколько чанков одной части может ждать записи в MinIO
+    @Value("${storage.upload.multi.pipe-chunks:16}")
+    private int pipeChunks;
+
+    // Итератор частей, в отличие от parseRequest, file-count-max сам не проверяет
+    @Value("${storage.upload.multi.max-files:1000}")
+    private int maxFiles;
+
+    /**
+     * @param contentLength длина тела запроса: квота резервируется на неё целиком до начала чтения
+     */
+    public List<UploadResult> uploadAll(Long userId, String folder, FileItemInputIterator parts,
+                                        long contentLength) throws Exception {
+        String reservationId = UUID.randomUUID().toString();
+        usageService.reserve(userId, reservationId, contentLength);
+
+        List<UploadResult> results = Collections.synchronizedList(new ArrayList<>());
+        BoundedExecution execution = new BoundedExecution(storageExecutor, maxInFlight);
+        try {
+            int files = 0;
+            while (parts.hasNext()) {
+                FileItemInput part = parts.next();
+                if (part.isFormField() || part.getName() == null || part.getName().isEmpty()) {
+                    continue;
+                }
+
+                String path = folder + "/" + part.getName();
+                if (++files > maxFiles) {
+                    results.add(new UploadResult(path.substring(path.indexOf("/") + 1), UploadResult.Status.FAILED,
+                            "Request has more than " + maxFiles + " files"));
+                    break;
+                }
+                PartPipe pipe = new PartPipe(pipeChunks);
+                execution.submit(() -> results.add(upload(path, pipe, part.getContentType())));
+                pump(part, pipe);
+            }
+        } finally {
+            execution.awaitAll();
+            usageService.release(userId, reservationId);
+        }
+        return results;
+    }
+
+    private UploadResult upload(String path, PartPipe pipe, String contentType) {
+        String relativePath = path.substring(path.indexOf("/") + 1);
+        try (pipe) {
+            fileService.uploadStream(path, pipe, contentType);
+            return new UploadResult(relativePath, UploadResult.Status.CREATED, null);
+        } catch (Exception e) {
+            log.warn("Failed to upload {}", path, e);
+            return new UploadResult(relativePath, UploadResult.Status.FAILED, e.getMessage());
+        }
+    }
+
+    // Переливает тело части в pipe; если запись в MinIO уже упала, дочитывает часть вхолостую
+    private void pump(FileItemInput part, PartPipe pipe) throws IOException {
+        try (InputStream body = part.getInputStream()) {
+            try {
+                byte[] chunk;
+                while ((chunk = body.readNBytes(CHUNK_SIZE)).length > 0) {
+                    pipe.write(chunk);
+                }
+                pipe.finish();
+            } catch (IOException e) {
+                if (!pipe.isClosed()) {
+                    pipe.fail();
+                    throw e;
+                }
+                body.transferTo(OutputStream.nullOutputStream());
+            }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package lain.projects.cloudstorage.storageservice.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ограниченная очередь чанков между потоком, читающим тело запроса, и потоком, который
+ * пишет часть в MinIO. Если запись в MinIO прервалась, читатель закрывает pipe, и писатель
+ * получает IOException вместо вечного ожидания места в очереди. Если оборвалось тело запроса,
+ * писатель вызывает fail(), и запись в MinIO получает IOException.
+ */
+final class PartPipe extends InputStream {
+    private static final byte[] END = new byte[0];
+    private static final byte[] FAILED = new byte[0];
+
+    private final BlockingQueue<byte[]> chunks;
+    private volatile boolean closed;
+    private byte[] current;
+    private int position;
+
+    PartPipe(int capacity) {
+        chunks = new ArrayBlockingQueue<>(capacity);
+    }
+
+    void write(byte[] chunk) throws IOException {
+        offer(chunk);
+    }
+
+    void finish() throws IOException {
+        offer(END);
+    }
+
+    // Писатель — единственный производитель, поэтому после clear() место в очереди точно есть
+    void fail() {
+        chunks.clear();
+        chunks.offer(FAILED);
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (current == END) {
+            return -1;
+        }
+        if (current == FAILED) {
+            throw new IOException("Request body ended before the part was complete");
+        }
+        if (current == null || position == current.length) {
+            try {
+                current = chunks.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            position = 0;
+            if (current == END) {
+                return -1;
+            }
+            if (current == FAILED) {
+                throw new IOException("Request body ended before the part was complete");
+            }
+        }
+
+        int n = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        chunks.clear();
+    }
+
+    private void offer(byte[] chunk) throws IOException {
+        try {
+            while (!chunks.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+                if (closed) {
+                    throw new IOException("Upload of the part was aborted");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        if (closed) {
+            throw new IOException("Upload of the part was aborted");
+        }
+    }
+}
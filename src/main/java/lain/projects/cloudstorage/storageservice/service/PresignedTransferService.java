@@ -0,0 +1,127 @@
+package lain.projects.cloudstorage.storageservice.service;
+
+import io.minio.GetPresignedObjectUrlArgs;
+import io.minio.MinioClient;
+import io.minio.http.Method;
+import jakarta.annotation.PostConstruct;
+import lain.projects.cloudstorage.storageservice.dto.FileStat;
+import lain.projects.cloudstorage.storageservice.dto.PresignedUpload;
+import lain.projects.cloudstorage.storageservice.dto.PresignedUrl;
+import lain.projects.cloudstorage.storageservice.dto.UploadSession;
+import lain.projects.cloudstorage.storageservice.dto.UploadStatus;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Передача тела напрямую между клиентом и MinIO. Узел проверяет, что путь лежит под префиксом
+ * пользователя, и выдаёт короткоживущую подписанную ссылку; загрузка оформляется как сессия
+ * ChunkedUploadService, так что завершение, квоты и события остаются общими с загрузкой через узел.
+ */
+@Service
+@ConditionalOnProperty(name = "storage.backend", havingValue = "minio", matchIfMissing = true)
+@RequiredArgsConstructor
+public class PresignedTransferService {
+    private final FileService fileService;
+    private final ChunkedUploadService chunkedUploadService;
+    private final StorageMetrics storageMetrics;
+
+    @Value("${minio.bucket}")
+    private String bucket;
+
+    @Value("${minio.access-key}")
+    private String accessKey;
+
+    @Value("${minio.secret-key}")
+    private String secretKey;
+
+    @Value("${storage.presigned.enabled:false}")
+    private boolean enabled;
+
+    // Адрес MinIO, видимый клиентам: хост входит в подпись, внутренний адрес сюда не подойдёт
+    @Value("${storage.presigned.endpoint:${minio.url}}")
+    private String endpoint;
+
+    // С явным регионом подпись считается локально, без запроса расположения бакета
+    @Value("${storage.presigned.region:us-east-1}")
+    private String region;
+
+    @Value("${storage.presigned.url-ttl:PT15M}")
+    private Duration urlTtl;
+
+    // Часть не проходит через память узла, поэтому предел — ограничение S3, а не max-part-size
+    @Value("${storage.presigned.max-part-size:5GB}")
+    private DataSize maxPartSize;
+
+    private MinioClient signer;
+
+    @PostConstruct
+    void init() {
+        if (enabled) {
+            signer = MinioClient.builder()
+                    .endpoint(endpoint)
+                    .credentials(accessKey, secretKey)
+                    .region(region)
+                    .build();
+        }
+    }
+
+    public PresignedUrl download(String path) throws Exception {
+        requireEnabled();
+        FileStat stat = fileService.statFile(path);
+        // Содержимое указателя на блоб лежит в самом блобе
+        String key = stat.blob() == null ? path : DedupService.contentKey(stat.blob());
+        String name = path.substring(path.lastIndexOf('/') + 1);
+
+        PresignedUrl url = sign(Method.GET, key, Map.of("response-content-disposition",
+                ContentDisposition.attachment().filename(name, StandardCharsets.UTF_8).build().toString()));
+        storageMetrics.bytesOutDirect("download", stat.size());
+        return url;
+    }
+
+    /**
+     * Открывает сессию и сразу выдаёт ссылку на первую часть размером size.
+     */
+    public PresignedUpload upload(Long userId, String path, long size, String contentType) throws Exception {
+        requireEnabled();
+        UploadStatus status = chunkedUploadService.initiate(userId, path, contentType);
+        return new PresignedUpload(status, part(status.id(), userId, 1, size));
+    }
+
+    public PresignedUrl part(String id, Long userId, int partNumber, long size) throws Exception {
+        requireEnabled();
+        UploadSession session = chunkedUploadService.declarePart(id, userId, partNumber, size, maxPartSize);
+        return sign(Method.PUT, session.path(), Map.of(
+                "uploadId", session.uploadId(),
+                "partNumber", String.valueOf(partNumber)));
+    }
+
+    private PresignedUrl sign(Method method, String key, Map<String, String> queryParams) throws Exception {
+        Instant expiresAt = Instant.now().plus(urlTtl);
+        String url = signer.getPresignedObjectUrl(
+                GetPresignedObjectUrlArgs.builder()
+                        .method(method)
+                        .bucket(bucket)
+                        .object(key)
+                        .expiry((int) urlTtl.toSeconds())
+                        .extraQueryParams(queryParams)
+                        .build());
+        return new PresignedUrl(method.name(), url, expiresAt);
+    }
+
+    private void requireEnabled() {
+        if (!enabled) {
+            throw new ResponseStatusException(HttpStatus.NOT_IMPLEMENTED, "Presigned transfers are disabled");
+        }
+    }
+}
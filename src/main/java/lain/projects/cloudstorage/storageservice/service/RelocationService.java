@@ -0,0 +1,211 @@
+package lain.projects.cloudstorage.storageservice.service;
+
+import lain.projects.cloudstorage.storageservice.dto.ObjectFailure;
+import lain.projects.cloudstorage.storageservice.dto.RelocationCheckpoint;
+import lain.projects.cloudstorage.storageservice.event.ObjectsCopiedEvent;
+import lain.projects.cloudstorage.storageservice.event.ObjectsRemovedEvent;
+import lain.projects.cloudstorage.storageservice.repository.FileStorageRepository;
+import lain.projects.cloudstorage.storageservice.repository.StoredObject;
+import lain.projects.cloudstorage.storageservice.repository.redis.RelocationCheckpointRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Перенос всех объектов из одного префикса в другой: параллельное серверное копирование
+ * чанками, удаление исходников чанка одним батчем только после успешного копирования
+ * всего чанка и чекпоинт в Redis после каждого чанка. Если хранилище умеет переименовать
+ * префикс целиком (файловая система), перенос делается одной операцией. Замок переноса
+ * продлевается по расписанию, пока перенос идёт: чанк на медленном хранилище может длиться дольше lock-ttl.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class RelocationService {
+    private static final int MAX_CHUNK_SIZE = 1000;
+
+    private final FileStorageRepository fileStorage;
+    private final ExecutorService storageExecutor;
+    private final BulkDeleteService bulkDeleteService;
+    private final RelocationCheckpointRepository checkpointRepository;
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Map<String, BulkOperationProgress> running = new ConcurrentHashMap<>();
+
+    @Value("${storage.relocation.chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${storage.relocation.max-in-flight:16}")
+    private int maxInFlight;
+
+    @Value("${storage.relocation.lock-ttl:PT1M}")
+    private Duration lockTtl;
+
+    public List<ObjectFailure> relocate(String id, String from, String to,
+                                        BulkOperationProgress progress) throws Exception {
+        if (to.startsWith(from)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Cannot move a folder into itself");
+        }
+
+        RelocationCheckpoint checkpoint = new RelocationCheckpoint(id, from, to, null, 0, 0, Instant.now());
+        checkpointRepository.save(checkpoint);
+        return run(checkpoint, progress);
+    }
+
+    public List<ObjectFailure> resume(String id, BulkOperationProgress progress) throws Exception {
+        RelocationCheckpoint checkpoint = checkpointRepository.findById(id)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Checkpoint not found"));
+
+        progress.getProcessedObjects().set(checkpoint.copiedObjects());
+        progress.getProcessedBytes().set(checkpoint.copiedBytes());
+        return run(checkpoint, progress);
+    }
+
+    public boolean hasCheckpoint(String id) {
+        return checkpointRepository.findById(id).isPresent();
+    }
+
+    public void discard(String id) {
+        checkpointRepository.delete(id);
+    }
+
+    public Optional<BulkOperationProgress> progress(String id) {
+        return Optional.ofNullable(running.get(id));
+    }
+
+    @Scheduled(fixedDelayString = "${storage.relocation.heartbeat-interval:PT10S}")
+    public void heartbeat() {
+        for (String id : running.keySet()) {
+            try {
+                if (!checkpointRepository.refreshLock(id, nodeId, lockTtl)) {
+                    log.warn("Relocation lock {} is held by another node", id);
+                }
+            } catch (RuntimeException e) {
+                log.warn("Failed to refresh relocation lock {}", id, e);
+            }
+        }
+    }
+
+    private List<ObjectFailure> run(RelocationCheckpoint checkpoint, BulkOperationProgress progress) throws Exception {
+        String id = checkpoint.id();
+        if (!checkpointRepository.tryLock(id, nodeId, lockTtl)) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Relocation is already running");
+        }
+
+        running.put(id, progress);
+        try {
+            int size = Math.min(chunkSize, MAX_CHUNK_SIZE);
+            // После частичного переноса часть объектов уже на месте, переименовывать целиком нельзя
+            if (checkpoint.startAfter() == null && fileStorage.renamePrefix(checkpoint.from(), checkpoint.to())) {
+                announceRenamed(checkpoint, size, progress);
+                checkpointRepository.delete(id);
+                return progress.getFailures();
+            }
+
+            List<StoredObject> chunk;
+            do {
+                chunk = fileStorage.list(checkpoint.from(), true, checkpoint.startAfter(), size);
+                if (chunk.isEmpty()) {
+                    break;
+                }
+                progress.getDiscoveredObjects().addAndGet(chunk.size());
+                checkpoint = relocateChunk(checkpoint, chunk, progress);
+                if (checkpoint == null) {
+                    return progress.getFailures();
+                }
+            } while (chunk.size() == size);
+
+            checkpointRepository.delete(id);
+            return progress.getFailures();
+        } finally {
+            running.remove(id);
+            checkpointRepository.unlock(id, nodeId);
+        }
+    }
+
+    /**
+     * @return новый чекпоинт или null, если хотя бы одна копия в чанке не удалась —
+     * тогда исходники чанка остаются на месте, а перенос можно продолжить через resume
+     */
+    private RelocationCheckpoint relocateChunk(RelocationCheckpoint checkpoint, List<StoredObject> chunk,
+                                               BulkOperationProgress progress) throws InterruptedException {
+        BoundedExecution execution = new BoundedExecution(storageExecutor, maxInFlight);
+        AtomicBoolean failed = new AtomicBoolean();
+        try {
+            for (StoredObject object : chunk) {
+                execution.submit(() -> {
+                    try {
+                        fileStorage.copy(object.key(),
+                                checkpoint.to() + object.key().substring(checkpoint.from().length()), object.size());
+                    } catch (Exception e) {
+                        failed.set(true);
+                        progress.getFailures().add(new ObjectFailure(object.key(), e.getMessage()));
+                    }
+                });
+            }
+        } finally {
+            execution.awaitAll();
+        }
+
+        if (failed.get()) {
+            return null;
+        }
+
+        List<Long> sizes = bulkDeleteService.logicalSizes(chunk);
+        long bytes = sizes.stream().mapToLong(Long::longValue).sum();
+        List<String> sources = chunk.stream().map(StoredObject::key).toList();
+        eventPublisher.publishEvent(new ObjectsCopiedEvent(checkpoint.from(), checkpoint.to(), sources, sizes));
+        progress.getFailures().addAll(bulkDeleteService.deleteBatch(chunk));
+        progress.getProcessedObjects().addAndGet(chunk.size());
+        progress.getProcessedBytes().addAndGet(bytes);
+
+        RelocationCheckpoint next = checkpoint.advance(sources.get(sources.size() - 1), chunk.size(), bytes);
+        checkpointRepository.save(next);
+        return next;
+    }
+
+    // Объекты уже под to; слушателям они показываются как обычный перенос: копия, затем удаление исходников
+    private void announceRenamed(RelocationCheckpoint checkpoint, int size, BulkOperationProgress progress)
+            throws Exception {
+        String after = null;
+        List<StoredObject> page;
+        do {
+            page = fileStorage.list(checkpoint.to(), true, after, size);
+            if (page.isEmpty()) {
+                break;
+            }
+            after = page.get(page.size() - 1).key();
+
+            // Указатели на блобы в реестре пока записаны под старыми ключами
+            List<StoredObject> sources = page.stream()
+                    .map(object -> new StoredObject(checkpoint.from() + object.key().substring(checkpoint.to().length()),
+                            object.size(), object.etag(), object.lastModified(), object.contentType(),
+                            object.userMetadata(), false))
+                    .toList();
+            List<String> keys = sources.stream().map(StoredObject::key).toList();
+            List<Long> sizes = bulkDeleteService.logicalSizes(sources);
+            eventPublisher.publishEvent(new ObjectsCopiedEvent(checkpoint.from(), checkpoint.to(), keys, sizes));
+            eventPublisher.publishEvent(new ObjectsRemovedEvent(keys, sizes));
+
+            progress.getDiscoveredObjects().addAndGet(page.size());
+            progress.getProcessedObjects().addAndGet(page.size());
+            progress.getProcessedBytes().addAndGet(sizes.stream().mapToLong(Long::longValue).sum());
+        } while (page.size() == size);
+    }
+}
@@ -0,0 +1,102 @@
+package lain.projects.cloudstorage.storageservice.service;
+
+import lain.projects.cloudstorage.storageservice.dto.FolderPage;
+import lain.projects.cloudstorage.storageservice.dto.SearchMode;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Locale;
+
+/**
+ * Поиск файлов и папок по имени в индексе метаданных. Индекс обновляется теми же событиями,
+ * что и листинг, так что загрузка, перенос, переименование и удаление видны в поиске сразу.
+ * Подстроки и шаблоны ищутся по триграммному GIN-индексу pg_trgm над lower(name).
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SearchService {
+    private final MetadataIndexService metadataIndexService;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${storage.index.enabled:false}")
+    private boolean indexEnabled;
+
+    // Короче трёх символов триграммы не помогают, и подстрока свелась бы к полному просмотру
+    @Value("${storage.search.min-substring-length:3}")
+    private int minSubstringLength;
+
+    /**
+     * Индексы, которые ddl-auto описать не умеет. Без прав на расширение поиск работает, но перебором
+     * всего поддерева папки.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void createIndexes() {
+        if (!indexEnabled) {
+            return;
+        }
+        try {
+            // Диапазон путей под папкой в порядке байтов; первичный ключ в сортировке базы для него не годится
+            jdbcTemplate.execute("""
+                    create index if not exists idx_object_metadata_path_c
+                    on object_metadata (path collate "C")""");
+            jdbcTemplate.execute("create extension if not exists pg_trgm");
+            jdbcTemplate.execute("""
+                    create index if not exists idx_object_metadata_name_trgm
+                    on object_metadata using gin (lower(name) gin_trgm_ops)""");
+        } catch (DataAccessException e) {
+            log.warn("Failed to create search indexes, queries will scan object_metadata", e);
+        }
+    }
+
+    /**
+     * @param root папка с "/" на конце, под которой искать (на любой глубине)
+     */
+    public FolderPage search(String root, String query, SearchMode mode, String cursor, int limit) {
+        if (!indexEnabled) {
+            throw new ResponseStatusException(HttpStatus.NOT_IMPLEMENTED, "Search requires the metadata index");
+        }
+        if (query == null || query.isBlank()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Query must not be empty");
+        }
+        if (mode == SearchMode.SUBSTRING && query.length() < minSubstringLength) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Substring query must be at least " + minSubstringLength + " characters");
+        }
+
+        return metadataIndexService.search(root, toPattern(query, mode), cursor, limit);
+    }
+
+    // "Invoice_*.pdf" -> "invoice\_%.pdf"
+    static String toPattern(String query, SearchMode mode) {
+        String lower = query.toLowerCase(Locale.ROOT);
+        return switch (mode) {
+            case PREFIX -> escape(lower) + "%";
+            case SUBSTRING -> "%" + escape(lower) + "%";
+            case GLOB -> {
+                StringBuilder pattern = new StringBuilder(lower.length());
+                for (char c : lower.toCharArray()) {
+                    switch (c) {
+                        case '*' -> pattern.append('%');
+                        case '?' -> pattern.append('_');
+                        case '%', '_', '\\' -> pattern.append('\\').append(c);
+                        default -> pattern.append(c);
+                    }
+                }
+                yield pattern.toString();
+            }
+        };
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
@@ -0,0 +1,286 @@
+package lain.projects.cloudstorage.storageservice.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lain.projects.cloudstorage.storageservice.dto.FileStat;
+import lain.projects.cloudstorage.storageservice.dto.FolderPage;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Двухуровневый кэш листингов папок и statObject: локальный Caffeine с вытеснением по весу
+ * и общий Redis. Ключ в Redis содержит поколения самой записи и всех папок над ней
+ * (cache:gen:*): инвалидация не ищет и не удаляет записи, а меняет поколение, и старые записи
+ * становятся недостижимыми до истечения TTL. Загрузчик, начавший до инвалидации, пишет под старым
+ * поколением, поэтому устаревшее значение никто не прочитает. Остальным узлам ключи рассылаются
+ * через pub/sub, чтобы они сбросили свой локальный уровень. Ключи локального уровня дублируются
+ * в упорядоченном индексе: сброс папки или префикса — обход диапазона ключей, а не всего кэша.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class StorageCache implements MessageListener {
+    public static final String INVALIDATION_CHANNEL = "storage:cache:invalidate";
+
+    private static final String LISTING = "listing|";
+    private static final String STAT = "stat|";
+    private static final String REDIS_LISTING_PREFIX = "cache:listing:";
+    private static final String REDIS_STAT_PREFIX = "cache:stat:";
+    private static final String GEN_LISTING_PREFIX = "cache:gen:listing:";
+    private static final String GEN_STAT_PREFIX = "cache:gen:stat:";
+    private static final String GEN_TREE_PREFIX = "cache:gen:tree:";
+
+    // Новое поколение для всех KEYS. Ключ поколения живёт дольше любой записи, созданной при нём:
+    // когда он истечёт, записей без поколения, сделанных до первой инвалидации, уже не останется
+    private static final RedisScript<Long> BUMP = RedisScript.of("""
+            for i = 1, #KEYS do
+                redis.call('SET', KEYS[i], ARGV[1], 'PX', ARGV[2])
+            end
+            return #KEYS
+            """, Long.class);
+
+    // Типы сообщений инвалидации
+    private static final char FOLDER = 'F';
+    private static final char OBJECT = 'S';
+    private static final char PREFIX = 'P';
+
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${storage.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${storage.cache.ttl:PT5M}")
+    private Duration ttl;
+
+    // Вес листинга — число записей в нём, вес stat — 1
+    @Value("${storage.cache.local-max-weight:200000}")
+    private long localMaxWeight;
+
+    private Cache<String, Object> local;
+    // Ключи local по порядку; вытесненные Caffeine убирает слушатель, сброшенные — evictLocal
+    private final NavigableSet<String> localKeys = new ConcurrentSkipListSet<>();
+    // Растёт при каждом сбросе локального уровня; значение, загруженное до сброса, в local не кладём
+    private final AtomicLong localEpoch = new AtomicLong();
+    private Counter remoteHits;
+    private Counter remoteMisses;
+
+    @PostConstruct
+    void init() {
+        local = Caffeine.newBuilder()
+                .maximumWeight(localMaxWeight)
+                .weigher((String key, Object value) -> value instanceof FolderPage page ? page.items().size() + 1 : 1)
+                .expireAfterWrite(ttl)
+                .evictionListener((String key, Object value, RemovalCause cause) -> localKeys.remove(key))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, local, "storage.local");
+        remoteHits = Counter.builder("storage.cache.remote").tag("result", "hit").register(meterRegistry);
+        remoteMisses = Counter.builder("storage.cache.remote").tag("result", "miss").register(meterRegistry);
+    }
+
+    public FolderPage listing(String folder, String variant, Callable<FolderPage> loader) throws Exception {
+        if (!enabled) {
+            return loader.call();
+        }
+        List<String> generations = new ArrayList<>();
+        generations.add(GEN_LISTING_PREFIX + folder);
+        generations.addAll(treeGenerationsOf(folder));
+        return get(LISTING + folder + "|" + variant, REDIS_LISTING_PREFIX + folder, generations, variant,
+                FolderPage.class, loader);
+    }
+
+    public FileStat stat(String path, Callable<FileStat> loader) throws Exception {
+        if (!enabled) {
+            return loader.call();
+        }
+        List<String> generations = new ArrayList<>();
+        generations.add(GEN_STAT_PREFIX + path);
+        generations.addAll(treeGenerationsOf(path));
+        return get(STAT + path, REDIS_STAT_PREFIX + path, generations, null, FileStat.class, loader);
+    }
+
+    /**
+     * @param objects  пути, у которых изменился stat
+     * @param folders  папки, у которых изменился листинг
+     * @param prefixes префиксы, под которыми устарело всё (удалённые или перенесённые папки)
+     */
+    public void invalidate(Collection<String> objects, Collection<String> folders, Collection<String> prefixes) {
+        if (!enabled || objects.isEmpty() && folders.isEmpty() && prefixes.isEmpty()) {
+            return;
+        }
+
+        List<String> generations = new ArrayList<>();
+        List<String> messages = new ArrayList<>();
+        objects.forEach(path -> {
+            generations.add(GEN_STAT_PREFIX + path);
+            messages.add(OBJECT + path);
+        });
+        folders.forEach(folder -> {
+            generations.add(GEN_LISTING_PREFIX + folder);
+            messages.add(FOLDER + folder);
+        });
+        prefixes.forEach(prefix -> {
+            generations.add(GEN_TREE_PREFIX + prefix);
+            messages.add(PREFIX + prefix);
+        });
+
+        try {
+            redisTemplate.execute(BUMP, generations,
+                    Long.toHexString(ThreadLocalRandom.current().nextLong()), String.valueOf(ttl.toMillis() * 2));
+            redisTemplate.convertAndSend(INVALIDATION_CHANNEL, String.join("\n", messages));
+        } catch (RuntimeException e) {
+            log.warn("Failed to invalidate shared cache", e);
+        }
+        // Локальный уровень сбрасываем сразу, не дожидаясь своего же сообщения
+        messages.forEach(this::evictLocal);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        for (String line : body.split("\n")) {
+            if (!line.isEmpty()) {
+                evictLocal(line);
+            }
+        }
+    }
+
+    private <T> T get(String localKey, String redisKey, List<String> generations, String field, Class<T> type,
+                      Callable<T> loader) throws Exception {
+        Object cached = local.getIfPresent(localKey);
+        if (type.isInstance(cached)) {
+            return type.cast(cached);
+        }
+
+        long epoch = localEpoch.get();
+        String version = readVersion(generations);
+        if (version == null) {
+            // Без поколений нельзя ни прочитать, ни безопасно записать общий уровень
+            return loader.call();
+        }
+        String versionedKey = redisKey + "#" + version;
+        T value = readRemote(versionedKey, field, type);
+        if (value != null) {
+            remoteHits.increment();
+        } else {
+            remoteMisses.increment();
+            value = loader.call();
+            writeRemote(versionedKey, field, value);
+        }
+        if (localEpoch.get() == epoch) {
+            local.put(localKey, value);
+            localKeys.add(localKey);
+        }
+        return value;
+    }
+
+    // Поколения поддеревьев, содержащих path; папка входит в своё поддерево
+    private static List<String> treeGenerationsOf(String path) {
+        List<String> generations = new ArrayList<>();
+        if (path.endsWith("/")) {
+            generations.add(GEN_TREE_PREFIX + path);
+        }
+        StoragePaths.ancestorsOf(path).forEach(folder -> generations.add(GEN_TREE_PREFIX + folder));
+        return generations;
+    }
+
+    // Текущие поколения через ".", отсутствующие — пустые; null, если Redis недоступен
+    private String readVersion(List<String> generations) {
+        try {
+            List<String> values = redisTemplate.opsForValue().multiGet(generations);
+            StringBuilder version = new StringBuilder();
+            for (int i = 0; i < generations.size(); i++) {
+                if (i > 0) {
+                    version.append('.');
+                }
+                String value = values == null || i >= values.size() ? null : values.get(i);
+                if (value != null) {
+                    version.append(value);
+                }
+            }
+            return version.toString();
+        } catch (RuntimeException e) {
+            log.warn("Failed to read cache generations", e);
+            return null;
+        }
+    }
+
+    private <T> T readRemote(String key, String field, Class<T> type) {
+        try {
+            String json = field == null
+                    ? redisTemplate.opsForValue().get(key)
+                    : (String) redisTemplate.opsForHash().get(key, field);
+            return json == null ? null : objectMapper.readValue(json, type);
+        } catch (Exception e) {
+            log.warn("Failed to read {} from shared cache", key, e);
+            return null;
+        }
+    }
+
+    private void writeRemote(String key, String field, Object value) {
+        try {
+            String json = objectMapper.writeValueAsString(value);
+            if (field == null) {
+                redisTemplate.opsForValue().set(key, json, ttl);
+            } else {
+                redisTemplate.opsForHash().put(key, field, json);
+                redisTemplate.expire(key, ttl);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to write {} to shared cache", key, e);
+        }
+    }
+
+    private void evictLocal(String message) {
+        localEpoch.incrementAndGet();
+        String value = message.substring(1);
+        switch (message.charAt(0)) {
+            case OBJECT -> {
+                localKeys.remove(STAT + value);
+                local.invalidate(STAT + value);
+            }
+            case FOLDER -> evictLocalRange(LISTING + value + "|");
+            case PREFIX -> {
+                evictLocalRange(LISTING + value);
+                evictLocalRange(STAT + value);
+            }
+            default -> log.debug("Unknown cache invalidation message {}", message);
+        }
+    }
+
+    // Все локальные ключи, начинающиеся с prefix
+    private void evictLocalRange(String prefix) {
+        Iterator<String> keys = localKeys.subSet(prefix, StoragePaths.upperBoundOf(prefix)).iterator();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            keys.remove();
+            local.invalidate(key);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package lain.projects.cloudstorage.storageservice.service;
+
+import lain.projects.cloudstorage.storageservice.event.ObjectWrittenEvent;
+import lain.projects.cloudstorage.storageservice.event.ObjectsCopiedEvent;
+import lain.projects.cloudstorage.storageservice.event.ObjectsRemovedEvent;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static lain.projects.cloudstorage.storageservice.service.StoragePaths.ancestorsOf;
+
+/**
+ * Сбрасывает кэш после изменений. Запись в файл меняет листинги всех папок выше него:
+ * промежуточные папки без маркеров появляются и исчезают вместе с содержимым, а итоги размеров меняются у всех.
+ * Выполняется после MetadataIndexListener и FolderStatsListener, чтобы кэш не успел перечитать старые данные,
+ * но до ThumbnailListener: рендер превью читает stat уже новой версии.
+ * Дисковые копии перезаписанных и удалённых объектов выбрасываются сразу, не дожидаясь проверки ETag.
+ */
+@Component
+@RequiredArgsConstructor
+public class StorageCacheInvalidator {
+    private final StorageCache storageCache;
+    private final DiskCache diskCache;
+
+    @EventListener
+    @Order(Ordered.LOWEST_PRECEDENCE - 1)
+    public void onWritten(ObjectWrittenEvent event) {
+        storageCache.invalidate(List.of(event.path()), ancestorsOf(event.path()), List.of());
+        diskCache.invalidate(List.of(event.path()));
+    }
+
+    @EventListener
+    @Order(Ordered.LOWEST_PRECEDENCE - 1)
+    public void onCopied(ObjectsCopiedEvent event) {
+        storageCache.invalidate(List.of(), ancestorsOf(event.to()), List.of(event.to()));
+        // Копии могли лечь поверх существующих файлов
+        diskCache.invalidate(event.sources().stream()
+                .map(source -> event.to() + source.substring(event.from().length()))
+                .toList());
+    }
+
+    @EventListener
+    @Order(Ordered.LOWEST_PRECEDENCE - 1)
+    public void onRemoved(ObjectsRemovedEvent event) {
+        Set<String> folders = new LinkedHashSet<>();
+        Set<String> prefixes = new LinkedHashSet<>();
+        for (String path : event.paths()) {
+            folders.addAll(ancestorsOf(path));
+            if (path.endsWith("/")) {
+                prefixes.add(path);
+            }
+        }
+        storageCache.invalidate(event.paths(), folders, prefixes);
+        diskCache.invalidate(event.paths());
+    }
+}
@@ -0,0 +1,118 @@
+package lain.projects.cloudstorage.storageservice.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Объёмы данных и итоги операций над папками. Время и ошибки методов FileService и
+ * FolderService снимает @Observed.
+ */
+@Component
+@RequiredArgsConstructor
+public class StorageMetrics {
+    private final MeterRegistry meterRegistry;
+
+    public void bytesIn(String operation, long bytes) {
+        bytes("in", operation).increment(bytes);
+    }
+
+    public void bytesOut(String operation, long bytes) {
+        bytes("out", operation).increment(bytes);
+    }
+
+    // Байты, которые клиент передал напрямую в MinIO по подписанной ссылке, минуя узел
+    public void bytesInDirect(String operation, long bytes) {
+        directBytes("in", operation).increment(bytes);
+    }
+
+    // Для скачивания — размер объекта на момент выдачи ссылки: перешёл ли клиент по ней, узел не видит
+    public void bytesOutDirect(String operation, long bytes) {
+        directBytes("out", operation).increment(bytes);
+    }
+
+    /**
+     * Считает отданные байты по мере чтения потока.
+     */
+    public InputStream meterOut(String operation, InputStream in) {
+        Counter counter = bytes("out", operation);
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    counter.increment();
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n > 0) {
+                    counter.increment(n);
+                }
+                return n;
+            }
+        };
+    }
+
+    public OutputStream meterOut(String operation, OutputStream out) {
+        Counter counter = bytes("out", operation);
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                counter.increment();
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                counter.increment(len);
+            }
+        };
+    }
+
+    public void folderOperation(String operation, String state, long objects, long bytes, long errors) {
+        DistributionSummary.builder("storage.folder.objects")
+                .tag("operation", operation)
+                .tag("state", state)
+                .register(meterRegistry)
+                .record(objects);
+        DistributionSummary.builder("storage.folder.bytes")
+                .baseUnit("bytes")
+                .tag("operation", operation)
+                .tag("state", state)
+                .register(meterRegistry)
+                .record(bytes);
+        Counter.builder("storage.folder.errors")
+                .tag("operation", operation)
+                .register(meterRegistry)
+                .increment(errors);
+    }
+
+    private Counter directBytes(String direction, String operation) {
+        return Counter.builder("storage.bytes.direct")
+                .baseUnit("bytes")
+                .tag("direction", direction)
+                .tag("operation", operation)
+                .register(meterRegistry);
+    }
+
+    private Counter bytes(String direction, String operation) {
+        return Counter.builder("storage.bytes")
+                .baseUnit("bytes")
+                .tag("direction", direction)
+                .tag("operation", operation)
+                .register(meterRegistry);
+    }
+}
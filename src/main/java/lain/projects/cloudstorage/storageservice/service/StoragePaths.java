@@ -0,0 +1,61 @@
+package lain.projects.cloudstorage.storageservice.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Разбор ключей вида "user-{id}-files/a/b/c.txt". Ключи папок заканчиваются на "/".
+ */
+public final class StoragePaths {
+    private static final String USER_PREFIX = "user-";
+    private static final String USER_SUFFIX = "-files/";
+
+    private StoragePaths() {
+    }
+
+    // "user-1-files/a/b/" -> "user-1-files/a/", "user-1-files/a/x.txt" -> "user-1-files/a/"
+    public static String parentOf(String path) {
+        String trimmed = path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+        return trimmed.substring(0, trimmed.lastIndexOf('/') + 1);
+    }
+
+    // Корень пользователя ("user-1-files/") не считается вложенной папкой
+    public static boolean isBelowRoot(String directory) {
+        int firstSlash = directory.indexOf('/');
+        return firstSlash >= 0 && firstSlash < directory.length() - 1;
+    }
+
+    // "user-1-files/a.txt" -> 1, null для ключей вне пользовательских префиксов
+    public static Long userIdOf(String path) {
+        if (!path.startsWith(USER_PREFIX)) {
+            return null;
+        }
+        int end = path.indexOf(USER_SUFFIX, USER_PREFIX.length());
+        if (end < 0) {
+            return null;
+        }
+        try {
+            return Long.parseLong(path.substring(USER_PREFIX.length(), end));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // Наименьшая строка больше всех, что начинаются с prefix: "user-1-files/a/" -> "user-1-files/a0".
+    // Вместе с prefix задаёт диапазон [prefix, upperBound) для индекса в collate "C"
+    public static String upperBoundOf(String prefix) {
+        int last = prefix.length() - 1;
+        return prefix.substring(0, last) + (char) (prefix.charAt(last) + 1);
+    }
+
+    /**
+     * Все папки, содержащие path, от ближайшей до корня пользователя включительно.
+     */
+    public static List<String> ancestorsOf(String path) {
+        List<String> ancestors = new ArrayList<>();
+        for (String dir = parentOf(path); !dir.isEmpty(); dir = parentOf(dir)) {
+            ancestors.add(dir);
+        }
+        return ancestors;
+    }
+}
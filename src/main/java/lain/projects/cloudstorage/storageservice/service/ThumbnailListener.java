@@ -0,0 +1,31 @@
+package lain.projects.cloudstorage.storageservice.service;
+
+import lain.projects.cloudstorage.storageservice.event.ObjectWrittenEvent;
+import lain.projects.cloudstorage.storageservice.event.ObjectsRemovedEvent;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Рендер превью после записи файла и уборка превью удалённых. Копии при переносе не рендерятся
+ * заранее: превью нового пути построится при первом запросе. Выполняется после StorageCacheInvalidator.
+ */
+@Component
+@RequiredArgsConstructor
+public class ThumbnailListener {
+    private final ThumbnailService thumbnailService;
+
+    @EventListener
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void onWritten(ObjectWrittenEvent event) {
+        thumbnailService.enqueue(event.path());
+    }
+
+    @EventListener
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void onRemoved(ObjectsRemovedEvent event) {
+        thumbnailService.invalidate(event.paths());
+    }
+}
@@ -0,0 +1,287 @@
+package lain.projects.cloudstorage.storageservice.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lain.projects.cloudstorage.storageservice.dto.FileStat;
+import lain.projects.cloudstorage.storageservice.repository.FileStorageRepository;
+import lain.projects.cloudstorage.storageservice.repository.StoredObject;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.RandomAccessReadBuffer;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Превью картинок и первой страницы PDF в нескольких размерах. Рендер идёт в отдельном пуле с
+ * ограниченной очередью: задача, которой не хватило места, отбрасывается, и превью строится при
+ * первом запросе. Превью лежат под "thumbnails/" + ключ файла + ETag версии, из которой построены:
+ * ищутся по ETag текущей версии, поэтому превью, отрендеренное во время перезаписи, не отдаётся
+ * для новой, а отдача не зависит от того, успело ли дойти удаление старых превью.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ThumbnailService {
+    private static final String PREFIX = "thumbnails/";
+    private static final String PDF = MediaType.APPLICATION_PDF_VALUE;
+    private static final String CONTENT_TYPE = MediaType.IMAGE_JPEG_VALUE;
+    private static final int LIST_PAGE_SIZE = 1000;
+
+    private final FileStorageRepository fileStorage;
+    private final FileService fileService;
+    private final StorageMetrics storageMetrics;
+    private final ExecutorService thumbnailExecutor;
+    private final ExecutorService backgroundExecutor;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${storage.thumbnails.enabled:true}")
+    private boolean enabled;
+
+    // Стороны квадрата, в который вписывается превью
+    @Value("${storage.thumbnails.sizes:128,256,512}")
+    private int[] sizes;
+
+    // Крупнее не рендерим: PDF читается в память целиком
+    @Value("${storage.thumbnails.max-source-size:50MB}")
+    private DataSize maxSourceSize;
+
+    // Пути, для которых рендер уже в очереди: повторные запросы превью не ставят его снова
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    private Counter rendered;
+    private Counter dropped;
+    private Counter failed;
+
+    @PostConstruct
+    void init() {
+        sizes = Arrays.stream(sizes).sorted().toArray();
+        rendered = Counter.builder("storage.thumbnails").tag("result", "rendered").register(meterRegistry);
+        dropped = Counter.builder("storage.thumbnails").tag("result", "dropped").register(meterRegistry);
+        failed = Counter.builder("storage.thumbnails").tag("result", "failed").register(meterRegistry);
+    }
+
+    public boolean supports(String path) {
+        if (!enabled || path.endsWith("/") || StoragePaths.userIdOf(path) == null) {
+            return false;
+        }
+        return MediaTypeFactory.getMediaType(path)
+                .map(type -> type.getType() + "/" + type.getSubtype())
+                .map(type -> type.equals(PDF) || ImageIO.getImageReadersByMIMEType(type).hasNext())
+                .orElse(false);
+    }
+
+    /**
+     * Ставит рендер в очередь, не блокируясь. Полная очередь — превью пропускается.
+     */
+    public void enqueue(String path) {
+        if (!supports(path) || !pending.add(path)) {
+            return;
+        }
+        try {
+            thumbnailExecutor.execute(() -> {
+                // Снимается до рендера: перезапись во время рендера должна поставить ещё один
+                pending.remove(path);
+                render(path);
+            });
+        } catch (RejectedExecutionException e) {
+            pending.remove(path);
+            dropped.increment();
+        }
+    }
+
+    /**
+     * Превью размера size для версии source, если оно уже построено; иначе рендер ставится в очередь.
+     */
+    public Optional<FileStat> find(FileStat source, int size) throws Exception {
+        if (Arrays.binarySearch(sizes, size) < 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Supported sizes: " + Arrays.toString(sizes));
+        }
+        if (!supports(source.path())) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No thumbnail for this file type");
+        }
+
+        Optional<StoredObject> thumbnail = fileStorage.stat(keyOf(source.path(), source.etag(), size));
+        if (thumbnail.isEmpty()) {
+            enqueue(source.path());
+            return Optional.empty();
+        }
+        StoredObject object = thumbnail.get();
+        return Optional.of(new FileStat(object.key(), object.size(), object.etag(), object.lastModified(),
+                CONTENT_TYPE, null));
+    }
+
+    public InputStream open(FileStat thumbnail) throws Exception {
+        return storageMetrics.meterOut("thumbnail", fileStorage.get(thumbnail.path()));
+    }
+
+    /**
+     * Удаляет превью всех версий перемещённых и удалённых файлов. В фоновом пуле, а не в очереди
+     * рендера: его очередь не ограничена, и удаление не теряется, когда рендер не успевает.
+     */
+    public void invalidate(Collection<String> paths) {
+        List<String> supported = paths.stream().filter(this::supports).toList();
+        if (supported.isEmpty()) {
+            return;
+        }
+        backgroundExecutor.execute(() -> {
+            for (String path : supported) {
+                try {
+                    deleteVersions(path, null);
+                } catch (Exception e) {
+                    log.warn("Failed to delete thumbnails of {}", path, e);
+                }
+            }
+        });
+    }
+
+    private void render(String path) {
+        try {
+            FileStat source = fileService.statFile(path);
+            if (source.size() > maxSourceSize.toBytes()) {
+                return;
+            }
+            // Предыдущие версии больше не запросят
+            deleteVersions(path, source.etag());
+
+            BufferedImage image;
+            try (InputStream in = fileService.readContent(path)) {
+                image = PDF.equals(MediaTypeFactory.getMediaType(path).map(MediaType::toString).orElse(null))
+                        ? readPdf(in)
+                        : readImage(in);
+            }
+            if (image == null) {
+                failed.increment();
+                return;
+            }
+
+            // От большего к меньшему: каждый размер сжимается из предыдущего, а не из оригинала
+            for (int i = sizes.length - 1; i >= 0; i--) {
+                image = scale(image, sizes[i]);
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                ImageIO.write(image, "jpg", out);
+                fileStorage.put(keyOf(path, source.etag(), sizes[i]), new ByteArrayInputStream(out.toByteArray()),
+                        out.size(), CONTENT_TYPE);
+            }
+            rendered.increment();
+        } catch (ResponseStatusException e) {
+            // Файл удалён, пока рендер ждал в очереди
+        } catch (Exception e) {
+            log.warn("Failed to render thumbnails for {}", path, e);
+            failed.increment();
+        }
+    }
+
+    // Декодируется сразу уменьшенная картинка: полноразмерная фотография на 50 Мп заняла бы ~200 МБ heap
+    private BufferedImage readImage(InputStream in) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(in)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int longest = Math.max(reader.getWidth(0), reader.getHeight(0));
+                int factor = Math.max(1, longest / (2 * sizes[sizes.length - 1]));
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(factor, factor, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private BufferedImage readPdf(InputStream in) throws IOException {
+        try (PDDocument document = Loader.loadPDF(new RandomAccessReadBuffer(in))) {
+            if (document.getNumberOfPages() == 0) {
+                return null;
+            }
+            PDRectangle page = document.getPage(0).getCropBox();
+            float scale = 2f * sizes[sizes.length - 1] / Math.max(page.getWidth(), page.getHeight());
+            return new PDFRenderer(document).renderImage(0, scale, ImageType.RGB);
+        }
+    }
+
+    // Вписывает в квадрат size x size; JPEG без альфа-канала, поэтому прозрачный фон становится белым
+    private static BufferedImage scale(BufferedImage source, int size) {
+        double ratio = Math.min(1.0, (double) size / Math.max(source.getWidth(), source.getHeight()));
+        int width = Math.max(1, (int) Math.round(source.getWidth() * ratio));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * ratio));
+
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, width, height);
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+
+    /**
+     * Удаляет превью файла path всех версий, кроме keep (null — всех).
+     */
+    private void deleteVersions(String path, String keep) throws Exception {
+        String prefix = PREFIX + path + "/";
+        List<String> stale = new ArrayList<>();
+        fileStorage.forEachPage(prefix, true, LIST_PAGE_SIZE, page -> {
+            for (StoredObject object : page) {
+                String version = object.key().substring(prefix.length());
+                // "<etag>/<size>.jpg"; с более глубоким ключом это превью файла из папки с тем же именем
+                if (version.indexOf('/') == version.lastIndexOf('/')
+                        && (keep == null || !version.startsWith(keep + "/"))) {
+                    stale.add(object.key());
+                }
+            }
+        });
+        if (!stale.isEmpty()) {
+            fileStorage.delete(stale).forEach(failure ->
+                    log.warn("Failed to delete thumbnail {}: {}", failure.path(), failure.reason()));
+        }
+    }
+
+    // "user-1-files/a/b.jpg", ETag "9b2c…" -> "thumbnails/user-1-files/a/b.jpg/9b2c…/256.jpg"
+    private static String keyOf(String path, String etag, int size) {
+        return PREFIX + path + "/" + etag + "/" + size + ".jpg";
+    }
+}
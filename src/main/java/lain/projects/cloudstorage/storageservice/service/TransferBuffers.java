@@ -0,0 +1,60 @@
+package lain.projects.cloudstorage.storageservice.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Переиспользуемые буферы для перекачки тела объекта из MinIO в ответ. transferTo и StreamUtils.copy
+ * заводят новый массив на каждый вызов; здесь буфер берётся из пула и возвращается после копирования.
+ * Буферы кучевые: тело MinIO и выход сервлета — потоки поверх byte[], прямой буфер добавил бы лишнее копирование.
+ */
+@Component
+@RequiredArgsConstructor
+public class TransferBuffers {
+    private final MeterRegistry meterRegistry;
+
+    @Value("${storage.download.buffer-size:64KB}")
+    private DataSize bufferSize;
+
+    // Сколько свободных буферов держать; сверх этого буферы выделяются на копирование и отдаются GC
+    @Value("${storage.download.pooled-buffers:256}")
+    private int pooledBuffers;
+
+    private BlockingQueue<byte[]> pool;
+
+    @PostConstruct
+    void init() {
+        pool = new ArrayBlockingQueue<>(pooledBuffers);
+        Gauge.builder("storage.download.buffers.idle", pool, BlockingQueue::size).register(meterRegistry);
+    }
+
+    public long copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = pool.poll();
+        if (buffer == null) {
+            buffer = new byte[(int) bufferSize.toBytes()];
+        }
+
+        try {
+            long total = 0;
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                total += read;
+            }
+            return total;
+        } finally {
+            pool.offer(buffer);
+        }
+    }
+}
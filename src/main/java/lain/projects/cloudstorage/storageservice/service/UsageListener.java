@@ -0,0 +1,54 @@
+package lain.projects.cloudstorage.storageservice.service;
+
+import lain.projects.cloudstorage.storageservice.event.ObjectWrittenEvent;
+import lain.projects.cloudstorage.storageservice.event.ObjectsCopiedEvent;
+import lain.projects.cloudstorage.storageservice.event.ObjectsRemovedEvent;
+import lain.projects.cloudstorage.storageservice.repository.redis.UsageRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import static lain.projects.cloudstorage.storageservice.service.StoragePaths.userIdOf;
+
+/**
+ * Обновляет счётчики занятого места. Перенос — это копирование плюс удаление, поэтому
+ * внутри одного пользователя он даёт нулевую дельту. Расхождения (перезапись при копировании,
+ * упавший узел) исправляет UsageReconciler.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class UsageListener {
+    private final UsageRepository usageRepository;
+
+    @EventListener
+    public void onWritten(ObjectWrittenEvent event) {
+        boolean existed = event.previousSize() >= 0;
+        apply(event.path(), event.size() - Math.max(event.previousSize(), 0), existed ? 0 : 1);
+    }
+
+    @EventListener
+    public void onCopied(ObjectsCopiedEvent event) {
+        apply(event.to(), event.bytes(), event.sources().size());
+    }
+
+    @EventListener
+    public void onRemoved(ObjectsRemovedEvent event) {
+        if (!event.paths().isEmpty()) {
+            apply(event.paths().get(0), -event.bytes(), -event.paths().size());
+        }
+    }
+
+    private void apply(String path, long bytes, long objects) {
+        Long userId = userIdOf(path);
+        if (userId == null) {
+            return;
+        }
+        try {
+            usageRepository.apply(userId, bytes, objects);
+        } catch (RuntimeException e) {
+            log.warn("Failed to update usage of user {}", userId, e);
+        }
+    }
+}
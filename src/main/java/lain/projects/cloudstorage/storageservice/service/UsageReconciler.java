@@ -0,0 +1,75 @@
+package lain.projects.cloudstorage.storageservice.service;
+
+import lain.projects.cloudstorage.storageservice.repository.FileStorageRepository;
+import lain.projects.cloudstorage.storageservice.repository.StoredObject;
+import lain.projects.cloudstorage.storageservice.repository.redis.UsageRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static lain.projects.cloudstorage.storageservice.service.StoragePaths.userIdOf;
+
+/**
+ * Пересчитывает счётчики полным сканом префикса каждого пользователя.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class UsageReconciler {
+    private static final String LOCK_KEY = "usage:reconcile:lock";
+    private static final int PAGE_SIZE = 1000;
+
+    private final FileStorageRepository fileStorage;
+    private final UsageRepository usageRepository;
+    private final BlobRegistry blobRegistry;
+    private final StringRedisTemplate redisTemplate;
+
+    @Value("${storage.quota.reconcile-lock-ttl:PT1H}")
+    private Duration lockTtl;
+
+    @Scheduled(cron = "${storage.quota.reconcile-cron:0 30 4 * * *}")
+    public void reconcile() {
+        if (!Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(LOCK_KEY, "locked", lockTtl))) {
+            log.debug("Usage reconciliation is already running on another node");
+            return;
+        }
+
+        try {
+            // Верхний уровень хранилища — префиксы пользователей "user-{id}-files/"
+            fileStorage.forEachPage("", false, PAGE_SIZE, roots -> {
+                for (StoredObject root : roots) {
+                    Long userId = userIdOf(root.key());
+                    if (root.directory() && userId != null) {
+                        reconcileUser(userId, root.key());
+                        redisTemplate.expire(LOCK_KEY, lockTtl);
+                    }
+                }
+            });
+        } catch (Exception e) {
+            log.error("Usage reconciliation failed", e);
+        } finally {
+            redisTemplate.delete(LOCK_KEY);
+        }
+    }
+
+    private void reconcileUser(Long userId, String prefix) throws Exception {
+        usageRepository.beginScan(userId);
+        AtomicLong listedBytes = new AtomicLong();
+        AtomicLong listedObjects = new AtomicLong();
+        fileStorage.forEachPage(prefix, true, PAGE_SIZE, page -> {
+            page.forEach(object -> listedBytes.addAndGet(object.size()));
+            listedObjects.addAndGet(page.size());
+        });
+        // Указатели на блобы в листинге пустые, их размер учитывается по ссылкам
+        long bytes = listedBytes.get() + blobRegistry.referencedBytesUnder(prefix);
+        long objects = listedObjects.get();
+        usageRepository.finishScan(userId, bytes, objects);
+        log.debug("Usage of user {} reconciled: {} bytes in {} objects", userId, bytes, objects);
+    }
+}
@@ -0,0 +1,62 @@
+package lain.projects.cloudstorage.storageservice.service;
+
+import lain.projects.cloudstorage.storageservice.dto.Usage;
+import lain.projects.cloudstorage.storageservice.repository.redis.UsageRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Квоты пользователей. Перед записью место резервируется атомарно вместе с проверкой,
+ * поэтому параллельные загрузки не могут вместе превысить квоту. Резерв снимается
+ * после того, как запись учтена в счётчиках через ObjectWrittenEvent.
+ */
+@Service
+@RequiredArgsConstructor
+public class UsageService {
+    private final UsageRepository usageRepository;
+
+    @Value("${storage.quota.enabled:true}")
+    private boolean enabled;
+
+    @Value("${storage.quota.default-bytes:10GB}")
+    private DataSize defaultQuota;
+
+    @Value("${storage.quota.reservation-ttl:PT1H}")
+    private Duration reservationTtl;
+
+    public Usage usage(Long userId) {
+        return usageRepository.find(userId, defaultQuota.toBytes());
+    }
+
+    public void reserve(Long userId, String reservationId, long bytes) {
+        reserve(userId, reservationId, bytes, reservationTtl);
+    }
+
+    public void reserve(Long userId, String reservationId, long bytes, Duration ttl) {
+        if (!enabled || bytes <= 0) {
+            return;
+        }
+        if (!usageRepository.reserve(userId, reservationId, bytes, defaultQuota.toBytes(), Instant.now().plus(ttl))) {
+            throw new ResponseStatusException(HttpStatus.INSUFFICIENT_STORAGE, "Storage quota exceeded");
+        }
+    }
+
+    public void release(Long userId, String reservationId) {
+        release(userId, List.of(reservationId));
+    }
+
+    public void release(Long userId, Collection<String> reservationIds) {
+        if (enabled) {
+            usageRepository.release(userId, reservationIds);
+        }
+    }
+}
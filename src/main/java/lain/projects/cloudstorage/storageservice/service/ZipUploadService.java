@@ -0,0 +1,269 @@
+package lain.projects.cloudstorage.storageservice.service;
+
+import lain.projects.cloudstorage.storageservice.dto.UploadResult;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Распаковка ZIP из тела запроса на лету, обратная FolderService.streamFolderAsZip: архив не
+ * сохраняется на диск, каждая запись по мере чтения уходит в хранилище отдельной загрузкой,
+ * не больше max-in-flight одновременно. Защита от zip-бомб — лимиты на число записей, суммарный
+ * распакованный объём и степень сжатия всего архива; при превышении лимита или квоты распаковка
+ * останавливается, а уже записанные файлы остаются.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ZipUploadService {
+    private static final int CHUNK_SIZE = 64 * 1024;
+    // Мелкие текстовые файлы сжимаются в десятки раз, поэтому степень сжатия проверяется не с первого байта
+    private static final long RATIO_GRACE_BYTES = 1024 * 1024;
+
+    private final FileService fileService;
+    private final FolderService folderService;
+    private final UsageService usageService;
+    private final ExecutorService storageExecutor;
+
+    @Value("${storage.upload.zip.max-in-flight:8}")
+    private int maxInFlight;
+
+    @Value("${storage.upload.multi.pipe-chunks:16}")
+    private int pipeChunks;
+
+    @Value("${storage.upload.zip.max-entries:10000}")
+    private int maxEntries;
+
+    @Value("${storage.upload.zip.max-total-size:10GB}")
+    private DataSize maxTotalSize;
+
+    @Value("${storage.upload.zip.max-expansion-ratio:100}")
+    private int maxExpansionRatio;
+
+    // Распакованный объём заранее неизвестен, поэтому квота резервируется по ходу распаковки такими порциями
+    @Value("${storage.upload.zip.quota-step:64MB}")
+    private DataSize quotaStep;
+
+    /**
+     * @param body тело запроса с архивом; читается до конца архива или до первого превышения лимита
+     * @return результат по каждой записи в порядке архива
+     */
+    public List<UploadResult> extract(Long userId, String folder, InputStream body) throws Exception {
+        CountingInputStream compressed = new CountingInputStream(body);
+        Extraction extraction = new Extraction(userId, compressed);
+
+        List<UploadResult> results = Collections.synchronizedList(new ArrayList<>());
+        BoundedExecution execution = new BoundedExecution(storageExecutor, maxInFlight);
+        try (ZipInputStream zip = new ZipInputStream(compressed)) {
+            int entries = 0;
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                String name = normalize(entry.getName());
+                String path = name == null ? null : folder + "/" + name;
+                String relativePath = name == null ? entry.getName() : path.substring(path.indexOf("/") + 1);
+                if (++entries > maxEntries) {
+                    results.add(new UploadResult(relativePath, UploadResult.Status.FAILED,
+                            "Archive has more than " + maxEntries + " entries"));
+                    break;
+                }
+
+                if (name == null || entry.isDirectory()) {
+                    // Данные пропускаемой записи всё равно распаковываются и идут в счёт лимитов
+                    String violation = drain(zip, extraction);
+                    if (violation != null) {
+                        results.add(new UploadResult(relativePath, UploadResult.Status.FAILED, violation));
+                        break;
+                    }
+                    results.add(name == null
+                            ? new UploadResult(relativePath, UploadResult.Status.FAILED, "Invalid entry name")
+                            : createFolder(path, relativePath));
+                    continue;
+                }
+
+                PartPipe pipe = new PartPipe(pipeChunks);
+                AtomicReference<String> rejection = new AtomicReference<>();
+                String contentType = MediaTypeFactory.getMediaType(name)
+                        .orElse(MediaType.APPLICATION_OCTET_STREAM)
+                        .toString();
+                execution.submit(() -> results.add(upload(path, relativePath, pipe, contentType, rejection)));
+                if (!pump(zip, pipe, extraction, rejection)) {
+                    break;
+                }
+            }
+        } finally {
+            execution.awaitAll();
+            usageService.release(userId, extraction.reservations);
+        }
+        return results;
+    }
+
+    private UploadResult createFolder(String path, String relativePath) {
+        try {
+            folderService.createFolder(path);
+            return new UploadResult(relativePath, UploadResult.Status.CREATED, null);
+        } catch (Exception e) {
+            log.warn("Failed to create folder {}", path, e);
+            return new UploadResult(relativePath, UploadResult.Status.FAILED, e.getMessage());
+        }
+    }
+
+    private UploadResult upload(String path, String relativePath, PartPipe pipe, String contentType,
+                                AtomicReference<String> rejection) {
+        try (pipe) {
+            fileService.uploadStream(path, pipe, contentType);
+            return new UploadResult(relativePath, UploadResult.Status.CREATED, null);
+        } catch (Exception e) {
+            if (rejection.get() != null) {
+                return new UploadResult(relativePath, UploadResult.Status.FAILED, rejection.get());
+            }
+            log.warn("Failed to upload {}", path, e);
+            return new UploadResult(relativePath, UploadResult.Status.FAILED, e.getMessage());
+        }
+    }
+
+    /**
+     * Переливает текущую запись архива в pipe. Если запись в хранилище уже упала, остаток записи
+     * пропускается, как в MultiUploadService, но через те же лимиты.
+     *
+     * @return false — сработал лимит или кончилась квота: запись оборвана, дальше читать архив не нужно
+     */
+    private boolean pump(ZipInputStream zip, PartPipe pipe, Extraction extraction,
+                         AtomicReference<String> rejection) throws IOException {
+        try {
+            byte[] chunk;
+            while ((chunk = zip.readNBytes(CHUNK_SIZE)).length > 0) {
+                String violation = extraction.admit(chunk.length);
+                if (violation != null) {
+                    rejection.set(violation);
+                    pipe.fail();
+                    return false;
+                }
+                pipe.write(chunk);
+            }
+            pipe.finish();
+            return true;
+        } catch (IOException e) {
+            if (!pipe.isClosed()) {
+                pipe.fail();
+                throw e;
+            }
+        }
+        // closeEntry в getNextEntry распаковал бы остаток мимо счётчиков
+        String violation = drain(zip, extraction);
+        if (violation != null) {
+            rejection.set(violation);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Дочитывает текущую запись вхолостую, учитывая распакованные байты.
+     *
+     * @return причина отказа или null, если запись дочитана
+     */
+    private static String drain(ZipInputStream zip, Extraction extraction) throws IOException {
+        byte[] chunk = new byte[CHUNK_SIZE];
+        int read;
+        while ((read = zip.read(chunk)) > 0) {
+            String violation = extraction.admit(read);
+            if (violation != null) {
+                return violation;
+            }
+        }
+        return null;
+    }
+
+    // "a/./b.txt" -> "a/b.txt"; null для абсолютных путей и выхода из папки через ".."
+    static String normalize(String name) {
+        String[] segments = name.replace('\\', '/').split("/", -1);
+        StringBuilder normalized = new StringBuilder();
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            if (segment.equals("..") || (i == 0 && segment.isEmpty() && segments.length > 1)) {
+                return null;
+            }
+            if (segment.isEmpty() || segment.equals(".")) {
+                continue;
+            }
+            normalized.append(segment).append('/');
+        }
+        if (normalized.isEmpty()) {
+            return null;
+        }
+        // Папка остаётся с "/" на конце, у файла он убирается
+        return name.endsWith("/") || name.endsWith("\\") ? normalized.toString()
+                : normalized.substring(0, normalized.length() - 1);
+    }
+
+    /**
+     * Счётчики одной распаковки. Читает архив один поток, поэтому без синхронизации.
+     */
+    private final class Extraction {
+        private final Long userId;
+        private final CountingInputStream compressed;
+        private final List<String> reservations = new ArrayList<>();
+        private long expanded;
+        private long reserved;
+
+        Extraction(Long userId, CountingInputStream compressed) {
+            this.userId = userId;
+            this.compressed = compressed;
+        }
+
+        /**
+         * @return причина отказа или null, если следующие bytes распакованных байт можно записать
+         */
+        String admit(int bytes) {
+            expanded += bytes;
+            if (expanded > maxTotalSize.toBytes()) {
+                return "Archive expands to more than " + maxTotalSize;
+            }
+            if (expanded > RATIO_GRACE_BYTES && expanded > maxExpansionRatio * Math.max(compressed.getCount(), 1)) {
+                return "Archive expansion ratio exceeds " + maxExpansionRatio;
+            }
+
+            if (expanded <= reserved) {
+                return null;
+            }
+            long needed = expanded - reserved;
+            // У края квоты целая порция может не влезть, хотя сами байты ещё помещаются
+            if (reserve(Math.max(quotaStep.toBytes(), needed)) || (quotaStep.toBytes() > needed && reserve(needed))) {
+                return null;
+            }
+            return "Storage quota exceeded";
+        }
+
+        private boolean reserve(long bytes) {
+            String reservationId = UUID.randomUUID().toString();
+            try {
+                usageService.reserve(userId, reservationId, bytes);
+            } catch (ResponseStatusException e) {
+                if (e.getStatusCode() == HttpStatus.INSUFFICIENT_STORAGE) {
+                    return false;
+                }
+                throw e;
+            }
+            reservations.add(reservationId);
+            reserved += bytes;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package lain.projects.cloudstorage.storageservice.controller;
+
+import lain.projects.cloudstorage.model.User;
+import lain.projects.cloudstorage.model.security.UserDetailsImpl;
+import lain.projects.cloudstorage.storageservice.dto.FileStat;
+import lain.projects.cloudstorage.storageservice.service.FileService;
+import lain.projects.cloudstorage.storageservice.service.MultiUploadService;
+import lain.projects.cloudstorage.storageservice.service.ThumbnailService;
+import lain.projects.cloudstorage.storageservice.service.TransferBuffers;
+import lain.projects.cloudstorage.storageservice.service.ZipUploadService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class FileControllerTest {
+    private static final String PATH = "user-1-files/a.txt";
+    private static final byte[] CONTENT = "0123456789".getBytes(StandardCharsets.US_ASCII);
+    // Дробная часть секунды не попадает в HTTP-дату
+    private static final Instant MODIFIED = Instant.parse("2024-05-01T10:00:00.250Z");
+
+    private FileService fileService;
+    private TransferBuffers transferBuffers;
+    private FileController controller;
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        fileService = mock(FileService.class);
+        transferBuffers = mock(TransferBuffers.class);
+        controller = new FileController(fileService, mock(MultiUploadService.class), mock(ZipUploadService.class),
+                mock(ThumbnailService.class), transferBuffers);
+        request = new MockHttpServletRequest("GET", "/files");
+        response = new MockHttpServletResponse();
+
+        when(fileService.statFile(PATH)).thenReturn(new FileStat(PATH, CONTENT.length, "e1", MODIFIED, "text/plain", null));
+        doAnswer(invocation -> {
+            int position = (int) invocation.<Long>getArgument(2).longValue();
+            int count = (int) invocation.<Long>getArgument(3).longValue();
+            invocation.<OutputStream>getArgument(4).write(CONTENT, position, count);
+            return true;
+        }).when(fileService).transferLocal(eq(PATH), any(), anyLong(), anyLong(), any());
+    }
+
+    @Test
+    void withoutRangeSendsWholeFile() throws Exception {
+        String body = download();
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getContentLengthLong()).isEqualTo(10);
+        assertThat(response.getHeader(HttpHeaders.ACCEPT_RANGES)).isEqualTo("bytes");
+        assertThat(body).isEqualTo("0123456789");
+    }
+
+    @Test
+    void singleRangeIsPartialContent() throws Exception {
+        request.addHeader(HttpHeaders.RANGE, "bytes=2-4");
+
+        String body = download();
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 2-4/10");
+        assertThat(response.getContentLengthLong()).isEqualTo(3);
+        assertThat(response.getContentType()).isEqualTo("text/plain");
+        assertThat(body).isEqualTo("234");
+    }
+
+    @Test
+    void suffixRangeTakesLastBytes() throws Exception {
+        request.addHeader(HttpHeaders.RANGE, "bytes=-3");
+
+        String body = download();
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 7-9/10");
+        assertThat(body).isEqualTo("789");
+    }
+
+    @Test
+    void rangeEndPastTheFileIsClamped() throws Exception {
+        request.addHeader(HttpHeaders.RANGE, "bytes=8-100");
+
+        String body = download();
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 8-9/10");
+        assertThat(response.getContentLengthLong()).isEqualTo(2);
+        assertThat(body).isEqualTo("89");
+    }
+
+    @Test
+    void rangeStartingAtTheEndIsNotSatisfiable() throws Exception {
+        request.addHeader(HttpHeaders.RANGE, "bytes=10-");
+
+        StreamingResponseBody body = controller.download("a.txt", request, response, user());
+
+        assertThat(body).isNull();
+        assertThat(response.getStatus()).isEqualTo(416);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes */10");
+        verify(fileService, never()).transferLocal(any(), any(), anyLong(), anyLong(), any());
+    }
+
+    @Test
+    void malformedRangeIsNotSatisfiable() throws Exception {
+        request.addHeader(HttpHeaders.RANGE, "bytes=4-2");
+
+        StreamingResponseBody body = controller.download("a.txt", request, response, user());
+
+        assertThat(body).isNull();
+        assertThat(response.getStatus()).isEqualTo(416);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes */10");
+    }
+
+    @Test
+    void severalRangesAreSentAsMultipartByteranges() throws Exception {
+        request.addHeader(HttpHeaders.RANGE, "bytes=0-1,-2");
+
+        String body = download();
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(response.getContentType()).startsWith("multipart/byteranges; boundary=");
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isNull();
+        String boundary = response.getContentType().substring("multipart/byteranges; boundary=".length());
+        assertThat(body).isEqualTo("\r\n--" + boundary + "\r\n"
+                + "Content-Type: text/plain\r\n"
+                + "Content-Range: bytes 0-1/10\r\n\r\n"
+                + "01"
+                + "\r\n--" + boundary + "\r\n"
+                + "Content-Type: text/plain\r\n"
+                + "Content-Range: bytes 8-9/10\r\n\r\n"
+                + "89"
+                + "\r\n--" + boundary + "--\r\n");
+    }
+
+    @Test
+    void ifRangeWithCurrentEtagKeepsRange() throws Exception {
+        request.addHeader(HttpHeaders.RANGE, "bytes=2-4");
+        request.addHeader(HttpHeaders.IF_RANGE, "\"e1\"");
+
+        String body = download();
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(body).isEqualTo("234");
+    }
+
+    @Test
+    void ifRangeWithStaleEtagSendsWholeFile() throws Exception {
+        request.addHeader(HttpHeaders.RANGE, "bytes=2-4");
+        request.addHeader(HttpHeaders.IF_RANGE, "\"e0\"");
+
+        String body = download();
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getHeader(HttpHeaders.CONTENT_RANGE)).isNull();
+        assertThat(body).isEqualTo("0123456789");
+    }
+
+    @Test
+    void ifRangeWithWeakEtagSendsWholeFile() throws Exception {
+        // If-Range сравнивает ETag строго, слабый тег не подходит даже при совпадении значения
+        request.addHeader(HttpHeaders.RANGE, "bytes=2-4");
+        request.addHeader(HttpHeaders.IF_RANGE, "W/\"e1\"");
+
+        String body = download();
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(body).isEqualTo("0123456789");
+    }
+
+    @Test
+    void ifRangeWithLastModifiedDateKeepsRange() throws Exception {
+        request.addHeader(HttpHeaders.RANGE, "bytes=2-4");
+        request.addHeader(HttpHeaders.IF_RANGE, "Wed, 01 May 2024 10:00:00 GMT");
+
+        String body = download();
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(body).isEqualTo("234");
+    }
+
+    @Test
+    void ifRangeWithOtherDateSendsWholeFile() throws Exception {
+        request.addHeader(HttpHeaders.RANGE, "bytes=2-4");
+        request.addHeader(HttpHeaders.IF_RANGE, "Wed, 01 May 2024 09:59:59 GMT");
+
+        String body = download();
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(body).isEqualTo("0123456789");
+    }
+
+    @Test
+    void matchingIfNoneMatchIsNotModified() throws Exception {
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"e1\"");
+        request.addHeader(HttpHeaders.RANGE, "bytes=2-4");
+
+        StreamingResponseBody body = controller.download("a.txt", request, response, user());
+
+        assertThat(body).isNull();
+        assertThat(response.getStatus()).isEqualTo(304);
+        assertThat(response.getHeader(HttpHeaders.ETAG)).isEqualTo("\"e1\"");
+    }
+
+    @Test
+    void rangeFallsBackToStorageWithoutLocalCopy() throws Exception {
+        when(fileService.transferLocal(eq(PATH), any(), anyLong(), anyLong(), any())).thenReturn(false);
+        when(fileService.downloadFile(PATH, 2, 3)).thenReturn(new ByteArrayInputStream(Arrays.copyOfRange(CONTENT, 2, 5)));
+        doAnswer(invocation -> invocation.<InputStream>getArgument(0).transferTo(invocation.getArgument(1)))
+                .when(transferBuffers).copy(any(), any());
+        request.addHeader(HttpHeaders.RANGE, "bytes=2-4");
+
+        String body = download();
+
+        assertThat(response.getStatus()).isEqualTo(206);
+        assertThat(body).isEqualTo("234");
+    }
+
+    private String download() throws Exception {
+        StreamingResponseBody body = controller.download("a.txt", request, response, user());
+        assertThat(body).isNotNull();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        body.writeTo(out);
+        return out.toString(StandardCharsets.US_ASCII);
+    }
+
+    private static UserDetailsImpl user() {
+        return new UserDetailsImpl(User.builder().id(1L).build());
+    }
+}
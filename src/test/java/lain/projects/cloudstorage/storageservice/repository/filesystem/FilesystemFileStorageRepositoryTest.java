@@ -0,0 +1,239 @@
+package lain.projects.cloudstorage.storageservice.repository.filesystem;
+
+import lain.projects.cloudstorage.storageservice.repository.StoredObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Листинг должен вести себя как ListObjects в MinIO: порядок ключей, маркеры папок как обычные
+ * объекты, вложенные папки как префиксы в неглубоком листинге и продолжение с startAfter.
+ */
+class FilesystemFileStorageRepositoryTest {
+    @TempDir
+    Path root;
+
+    private FilesystemFileStorageRepository repository;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        repository = new FilesystemFileStorageRepository();
+        ReflectionTestUtils.setField(repository, "root", root);
+        ReflectionTestUtils.setField(repository, "listingCacheEntries", 1000L);
+        repository.init();
+
+        put("user-1-files/a/");
+        put("user-1-files/a/b.txt");
+        put("user-1-files/a/b/x.txt");
+        put("user-1-files/a/b/y/z.txt");
+        put("user-1-files/a/b0.txt");
+        put("user-1-files/a/c.txt");
+        put("user-1-files/report.txt");
+        put("user-1-files/reports/q1.txt");
+        put("user-2-files/other.txt");
+    }
+
+    @Test
+    void recursiveListingIsInKeyOrderWithMarkersAndWithoutStaging() throws Exception {
+        Files.createFile(root.resolve(".staging").resolve("put-leftover.tmp"));
+
+        assertThat(keys(repository.list("", true, null, 100))).containsExactly(
+                "user-1-files/a/",
+                "user-1-files/a/b.txt",
+                "user-1-files/a/b/x.txt",
+                "user-1-files/a/b/y/z.txt",
+                "user-1-files/a/b0.txt",
+                "user-1-files/a/c.txt",
+                "user-1-files/report.txt",
+                "user-1-files/reports/q1.txt",
+                "user-2-files/other.txt");
+    }
+
+    @Test
+    void shallowListingReturnsMarkerFilesAndFolderPrefixes() throws Exception {
+        List<StoredObject> objects = repository.list("user-1-files/a/", false, null, 100);
+
+        assertThat(keys(objects)).containsExactly(
+                "user-1-files/a/", "user-1-files/a/b.txt", "user-1-files/a/b/", "user-1-files/a/b0.txt",
+                "user-1-files/a/c.txt");
+        assertThat(objects.get(0).directory()).isFalse();
+        assertThat(objects.get(2).directory()).isTrue();
+        assertThat(objects.get(2).etag()).isNull();
+        assertThat(objects.get(1).etag()).isNotNull();
+        assertThat(objects.get(1).size()).isEqualTo("user-1-files/a/b.txt".length());
+    }
+
+    @Test
+    void prefixNeedNotEndAtFolderBoundary() throws Exception {
+        assertThat(keys(repository.list("user-1-files/rep", false, null, 100)))
+                .containsExactly("user-1-files/report.txt", "user-1-files/reports/");
+        assertThat(keys(repository.list("user-1-files/rep", true, null, 100)))
+                .containsExactly("user-1-files/report.txt", "user-1-files/reports/q1.txt");
+    }
+
+    @Test
+    void startAfterFolderPrefixSkipsItsContentInShallowListing() throws Exception {
+        assertThat(keys(repository.list("user-1-files/a/", false, "user-1-files/a/b/", 100)))
+                .containsExactly("user-1-files/a/b0.txt", "user-1-files/a/c.txt");
+    }
+
+    @Test
+    void startAfterMarkerContinuesWithChildren() throws Exception {
+        assertThat(keys(repository.list("user-1-files/a/", false, "user-1-files/a/", 2)))
+                .containsExactly("user-1-files/a/b.txt", "user-1-files/a/b/");
+    }
+
+    @Test
+    void startAfterInsideFolderResumesRecursiveListingThere() throws Exception {
+        assertThat(keys(repository.list("user-1-files/", true, "user-1-files/a/b/x.txt", 3))).containsExactly(
+                "user-1-files/a/b/y/z.txt", "user-1-files/a/b0.txt", "user-1-files/a/c.txt");
+    }
+
+    @Test
+    void pagesJoinIntoTheFullListing() throws Exception {
+        for (boolean recursive : new boolean[]{true, false}) {
+            List<String> full = keys(repository.list("user-1-files/", recursive, null, 100));
+            for (int pageSize = 1; pageSize <= full.size(); pageSize++) {
+                List<String> paged = new ArrayList<>();
+                repository.forEachPage("user-1-files/", recursive, pageSize, page -> paged.addAll(keys(page)));
+                assertThat(paged).as("recursive=%s, page size %d", recursive, pageSize).isEqualTo(full);
+            }
+        }
+    }
+
+    @Test
+    void listingFollowsUtf8ByteOrderForCharactersOutsideBmp() throws Exception {
+        // U+FF01 в UTF-8 — EF BC 81, U+1F600 — F0 9F 98 80; в UTF-16 порядок обратный
+        put("user-3-files/\uD83D\uDE00.txt");
+        put("user-3-files/\uFF01.txt");
+        put("user-3-files/z.txt");
+
+        assertThat(keys(repository.list("user-3-files/", false, null, 100))).containsExactly(
+                "user-3-files/z.txt", "user-3-files/\uFF01.txt", "user-3-files/\uD83D\uDE00.txt");
+        assertThat(keys(repository.list("user-3-files/", false, "user-3-files/\uFF01.txt", 100)))
+                .containsExactly("user-3-files/\uD83D\uDE00.txt");
+    }
+
+    @Test
+    void listingOfMissingFolderIsEmpty() throws Exception {
+        assertThat(repository.list("user-3-files/", true, null, 100)).isEmpty();
+        assertThat(repository.list("user-1-files/missing/", false, null, 100)).isEmpty();
+    }
+
+    @Test
+    void deletingLastObjectRemovesImplicitFolders() throws Exception {
+        repository.delete(List.of("user-1-files/a/b/y/z.txt"));
+
+        assertThat(keys(repository.list("user-1-files/a/b/", false, null, 100)))
+                .containsExactly("user-1-files/a/b/x.txt");
+        assertThat(root.resolve("user-1-files/a/b/y")).doesNotExist();
+    }
+
+    @Test
+    void cachedListingFollowsDirectoryChanges() throws Exception {
+        ageDirectories();
+        List<String> before = keys(repository.list("user-1-files/", true, null, 100));
+        assertThat(keys(repository.list("user-1-files/", true, null, 100))).isEqualTo(before);
+
+        put("user-1-files/a/bb.txt");
+        repository.delete(List.of("user-1-files/report.txt"));
+
+        assertThat(keys(repository.list("user-1-files/a/", false, "user-1-files/a/b0.txt", 100)))
+                .containsExactly("user-1-files/a/bb.txt", "user-1-files/a/c.txt");
+        assertThat(keys(repository.list("user-1-files/rep", false, null, 100)))
+                .containsExactly("user-1-files/reports/");
+    }
+
+    @Test
+    void pagesOfCachedListingJoinIntoTheFullListing() throws Exception {
+        ageDirectories();
+        List<String> full = keys(repository.list("", true, null, 100));
+        for (int pageSize = 1; pageSize <= full.size(); pageSize++) {
+            List<String> paged = new ArrayList<>();
+            repository.forEachPage("", true, pageSize, page -> paged.addAll(keys(page)));
+            assertThat(paged).as("page size %d", pageSize).isEqualTo(full);
+        }
+    }
+
+    @Test
+    void statReturnsUploadedContentTypeAndCopyKeepsIt() throws Exception {
+        assumeTrue(Files.getFileStore(root).supportsFileAttributeView(UserDefinedFileAttributeView.class));
+        repository.put("user-1-files/data.bin", new ByteArrayInputStream(new byte[]{1}), 1, "application/x-custom");
+        repository.copy("user-1-files/data.bin", "user-1-files/copy.bin", 1);
+
+        assertThat(repository.stat("user-1-files/data.bin").orElseThrow().contentType()).isEqualTo("application/x-custom");
+        assertThat(repository.stat("user-1-files/copy.bin").orElseThrow().contentType()).isEqualTo("application/x-custom");
+    }
+
+    @Test
+    void statWithoutStoredContentTypeFallsBackToExtension() throws Exception {
+        repository.put("user-1-files/page.html", new ByteArrayInputStream(new byte[0]), 0, null);
+
+        assertThat(repository.stat("user-1-files/page.html").orElseThrow().contentType()).isEqualTo("text/html");
+        assertThat(repository.stat("user-1-files/a/").orElseThrow().contentType()).isEqualTo("application/x-directory");
+    }
+
+    @Test
+    void getWithEtagReadsOnlyThatVersion() throws Exception {
+        String etag = repository.stat("user-1-files/a/c.txt").orElseThrow().etag();
+        try (InputStream in = repository.get("user-1-files/a/c.txt", etag)) {
+            assertThat(in.readAllBytes()).isEqualTo("user-1-files/a/c.txt".getBytes(StandardCharsets.UTF_8));
+        }
+
+        repository.put("user-1-files/a/c.txt", new ByteArrayInputStream(new byte[]{1}), 1, "text/plain");
+
+        assertThatThrownBy(() -> repository.get("user-1-files/a/c.txt", etag)).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void overwriteWithinOneMtimeTickChangesEtag() throws Exception {
+        Path file = root.resolve("user-1-files/a/c.txt");
+        assumeTrue(Files.readAttributes(file, BasicFileAttributes.class).fileKey() != null);
+        FileTime tick = Files.getLastModifiedTime(file);
+        String before = repository.stat("user-1-files/a/c.txt").orElseThrow().etag();
+
+        byte[] sameSize = "user-1-files/a/C.txt".getBytes(StandardCharsets.UTF_8);
+        repository.put("user-1-files/a/c.txt", new ByteArrayInputStream(sameSize), sameSize.length, "text/plain");
+        Files.setLastModifiedTime(file, tick);
+
+        assertThat(repository.stat("user-1-files/a/c.txt").orElseThrow().etag()).isNotEqualTo(before);
+    }
+
+    // Листинг каталога, изменённого только что, не кэшируется
+    private void ageDirectories() throws Exception {
+        FileTime past = FileTime.from(Instant.now().minusSeconds(60));
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : (Iterable<Path>) paths.filter(Files::isDirectory)::iterator) {
+                Files.setLastModifiedTime(path, past);
+            }
+        }
+    }
+
+    private void put(String key) throws Exception {
+        byte[] content = key.endsWith("/") ? new byte[0] : key.getBytes(StandardCharsets.UTF_8);
+        repository.put(key, new ByteArrayInputStream(content), content.length, "text/plain");
+    }
+
+    private static List<String> keys(List<StoredObject> objects) {
+        return objects.stream().map(StoredObject::key).toList();
+    }
+}
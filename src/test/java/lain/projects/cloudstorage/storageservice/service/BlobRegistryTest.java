@@ -0,0 +1,91 @@
+package lain.projects.cloudstorage.storageservice.service;
+
+import lain.projects.cloudstorage.model.Blob;
+import lain.projects.cloudstorage.model.BlobReference;
+import lain.projects.cloudstorage.storageservice.repository.BlobReferenceRepository;
+import lain.projects.cloudstorage.storageservice.repository.BlobRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BlobRegistryTest {
+    private BlobRepository blobRepository;
+    private BlobReferenceRepository referenceRepository;
+    private BlobRegistry registry;
+    private final List<String> removed = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        blobRepository = mock(BlobRepository.class);
+        referenceRepository = mock(BlobReferenceRepository.class);
+        registry = new BlobRegistry(blobRepository, referenceRepository);
+    }
+
+    @Test
+    void collectRemovesContentAndRowOfUnreferencedBlob() throws Exception {
+        Blob blob = new Blob("abc", 10, 0, Instant.EPOCH);
+        when(blobRepository.findForUpdate("abc")).thenReturn(Optional.of(blob));
+
+        assertThat(registry.collect("abc", removed::add)).isTrue();
+
+        assertThat(removed).containsExactly("abc");
+        verify(blobRepository).delete(blob);
+    }
+
+    @Test
+    void collectKeepsBlobReferencedAgainSinceItWasFound() throws Exception {
+        when(blobRepository.findForUpdate("abc")).thenReturn(Optional.of(new Blob("abc", 10, 1, Instant.EPOCH)));
+
+        assertThat(registry.collect("abc", removed::add)).isFalse();
+
+        assertThat(removed).isEmpty();
+        verify(blobRepository, never()).delete(any());
+    }
+
+    @Test
+    void collectSkipsBlobAlreadyCollectedByAnotherNode() throws Exception {
+        when(blobRepository.findForUpdate("abc")).thenReturn(Optional.empty());
+
+        assertThat(registry.collect("abc", removed::add)).isFalse();
+
+        assertThat(removed).isEmpty();
+    }
+
+    @Test
+    void collectKeepsRowWhenContentRemovalFails() {
+        Blob blob = new Blob("abc", 10, 0, Instant.EPOCH);
+        when(blobRepository.findForUpdate("abc")).thenReturn(Optional.of(blob));
+
+        assertThatThrownBy(() -> registry.collect("abc", hash -> {
+            throw new IllegalStateException("storage is down");
+        })).isInstanceOf(IllegalStateException.class);
+
+        verify(blobRepository, never()).delete(any());
+    }
+
+    @Test
+    void attachReleasesReferenceHeldBeforeOverwrite() {
+        when(referenceRepository.findById("user-1-files/a.txt"))
+                .thenReturn(Optional.of(new BlobReference("user-1-files/a.txt", "old", 5)));
+
+        registry.attach("user-1-files/a.txt", "new", 7);
+
+        verify(referenceRepository).save(new BlobReference("user-1-files/a.txt", "new", 7));
+        verify(blobRepository).addReferences(eq("old"), eq(-1L), any());
+        verify(blobRepository, never()).addReferences(eq("new"), anyLong(), any());
+    }
+}
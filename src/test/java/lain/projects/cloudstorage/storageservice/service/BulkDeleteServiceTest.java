@@ -0,0 +1,82 @@
+package lain.projects.cloudstorage.storageservice.service;
+
+import lain.projects.cloudstorage.storageservice.dto.ObjectFailure;
+import lain.projects.cloudstorage.storageservice.repository.FileStorageRepository;
+import lain.projects.cloudstorage.storageservice.repository.StoredObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+class BulkDeleteServiceTest {
+    private static final StoredObject SMALL = object("user-1-files/a/x.txt", 3);
+    private static final StoredObject LARGE = object("user-1-files/a/y.txt", 100);
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private FileStorageRepository fileStorage;
+    private ApplicationEventPublisher eventPublisher;
+    private BulkDeleteService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        fileStorage = mock(FileStorageRepository.class);
+        eventPublisher = mock(ApplicationEventPublisher.class);
+        BlobRegistry blobRegistry = mock(BlobRegistry.class);
+        when(blobRegistry.sizesOf(any())).thenReturn(Map.of());
+        service = new BulkDeleteService(fileStorage, executor, blobRegistry, eventPublisher);
+        setField(service, "batchSize", 1000);
+        setField(service, "maxInFlight", 2);
+
+        when(fileStorage.list(eq("user-1-files/a/"), eq(true), isNull(), anyInt())).thenReturn(List.of(SMALL, LARGE));
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void bytesOfFailedObjectsAreNotCounted() throws Exception {
+        when(fileStorage.delete(any())).thenReturn(List.of(new ObjectFailure(LARGE.key(), "denied")));
+        BulkOperationProgress progress = new BulkOperationProgress();
+
+        service.deletePrefix("user-1-files/a/", progress);
+
+        assertThat(progress.getProcessedObjects()).hasValue(1);
+        assertThat(progress.getProcessedBytes()).hasValue(3);
+        assertThat(progress.getFailures()).containsExactly(new ObjectFailure(LARGE.key(), "denied"));
+    }
+
+    @Test
+    void listenerFailureKeepsProgressOfRemovedObjects() throws Exception {
+        when(fileStorage.delete(any())).thenReturn(List.of());
+        doThrow(new IllegalStateException("listener")).when(eventPublisher).publishEvent(any(Object.class));
+        BulkOperationProgress progress = new BulkOperationProgress();
+
+        service.deletePrefix("user-1-files/a/", progress);
+
+        assertThat(progress.getProcessedObjects()).hasValue(2);
+        assertThat(progress.getProcessedBytes()).hasValue(103);
+        assertThat(progress.getFailures()).isEmpty();
+    }
+
+    private static StoredObject object(String key, long size) {
+        return new StoredObject(key, size, "etag", Instant.parse("2024-05-01T10:00:00Z"), null, Map.of(), false);
+    }
+}
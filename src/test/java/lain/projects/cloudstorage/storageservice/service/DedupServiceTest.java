@@ -0,0 +1,158 @@
+package lain.projects.cloudstorage.storageservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lain.projects.cloudstorage.storageservice.dto.ObjectFailure;
+import lain.projects.cloudstorage.storageservice.repository.FileStorageRepository;
+import lain.projects.cloudstorage.storageservice.repository.StoredObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.function.ThrowingConsumer;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class DedupServiceTest {
+    // SHA-256 от "abc"
+    private static final String ABC = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+
+    private FileStorageRepository fileStorage;
+    private BlobRegistry blobRegistry;
+    private DedupService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        fileStorage = mock(FileStorageRepository.class);
+        blobRegistry = mock(BlobRegistry.class);
+        service = new DedupService(fileStorage, blobRegistry, mock(ApplicationEventPublisher.class),
+                new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(service, "maxBufferedSize", DataSize.ofBytes(3));
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "backend", "minio");
+        ReflectionTestUtils.setField(service, "gcGrace", Duration.ofHours(1));
+        service.init();
+
+        // Реестр решает, что блоб собирать можно, и отдаёт удаление содержимого обратно сервису
+        doAnswer(invocation -> {
+            invocation.<BlobRegistry.BlobRemover>getArgument(1).remove(invocation.getArgument(0));
+            return true;
+        }).when(blobRegistry).collect(any(), any());
+        when(fileStorage.delete(any())).thenReturn(List.of());
+    }
+
+    @Test
+    void smallNewContentIsWrittenStraightToItsBlob() throws Exception {
+        when(blobRegistry.acquire(ABC, 3)).thenReturn(true);
+
+        service.upload("user-1-files/a.txt", new ByteArrayInputStream("abc".getBytes()), -1, "text/plain", -1);
+
+        verify(fileStorage).put(eq(".blobs/sha256/" + ABC), any(), eq(3L), isNull());
+        verify(fileStorage, never()).put(startsWith(".blobs/staging/"), any(), anyLong(), any());
+        verify(fileStorage, never()).copy(anyString(), anyString(), anyLong());
+        verify(fileStorage).put(eq("user-1-files/a.txt"), any(), eq(0L), eq("text/plain"),
+                eq(Map.of("blob", ABC, "blob-size", "3")));
+        verify(blobRegistry).attach("user-1-files/a.txt", ABC, 3);
+    }
+
+    @Test
+    void knownContentIsNotWrittenAgain() throws Exception {
+        when(blobRegistry.acquire(ABC, 3)).thenReturn(false);
+
+        service.upload("user-1-files/a.txt", new ByteArrayInputStream("abc".getBytes()), 3, "text/plain", -1);
+
+        verify(fileStorage, never()).put(startsWith(".blobs/"), any(), anyLong(), any());
+        verify(blobRegistry).attach("user-1-files/a.txt", ABC, 3);
+    }
+
+    @Test
+    void largeContentIsStagedCopiedOnceAndStagingRemoved() throws Exception {
+        when(blobRegistry.acquire(anyString(), eq(4L))).thenReturn(true);
+        doAnswer(invocation -> {
+            invocation.<InputStream>getArgument(1).readAllBytes();
+            return "etag";
+        }).when(fileStorage).put(startsWith(".blobs/staging/"), any(), eq(-1L), isNull());
+
+        service.upload("user-1-files/a.txt", new ByteArrayInputStream("abcd".getBytes()), -1, "text/plain", -1);
+
+        verify(fileStorage).copy(startsWith(".blobs/staging/"), startsWith(".blobs/sha256/"), eq(4L));
+        verify(fileStorage).delete(List.of(stagingKey()));
+    }
+
+    @Test
+    void removesContentOfCollectableBlobs() throws Exception {
+        when(blobRegistry.findCollectable(any(), anyInt())).thenReturn(List.of("aa", "bb"));
+
+        service.collectUnreferenced();
+
+        verify(fileStorage).delete(List.of(".blobs/sha256/aa"));
+        verify(fileStorage).delete(List.of(".blobs/sha256/bb"));
+    }
+
+    @Test
+    void failureOnOneBlobDoesNotStopTheRest() throws Exception {
+        when(blobRegistry.findCollectable(any(), anyInt())).thenReturn(List.of("aa", "bb"));
+        when(fileStorage.delete(List.of(".blobs/sha256/aa")))
+                .thenReturn(List.of(new ObjectFailure(".blobs/sha256/aa", "storage is down")));
+
+        service.collectUnreferenced();
+
+        verify(fileStorage).delete(List.of(".blobs/sha256/bb"));
+    }
+
+    @Test
+    void removesOnlyStagedUploadsOlderThanGrace() throws Exception {
+        when(blobRegistry.findCollectable(any(), anyInt())).thenReturn(List.of());
+        Instant now = Instant.now();
+        doAnswer(invocation -> {
+            invocation.<ThrowingConsumer<List<StoredObject>>>getArgument(3).accept(List.of(
+                    staged(".blobs/staging/old", now.minus(Duration.ofHours(2))),
+                    staged(".blobs/staging/fresh", now.minus(Duration.ofMinutes(5)))));
+            return null;
+        }).when(fileStorage).forEachPage(eq(".blobs/staging/"), eq(true), anyInt(), any());
+
+        service.collectUnreferenced();
+
+        verify(fileStorage).delete(List.of(".blobs/staging/old"));
+        verify(fileStorage, never()).delete(List.of(".blobs/staging/fresh"));
+    }
+
+    @Test
+    void doesNothingWithoutMinio() throws Exception {
+        ReflectionTestUtils.setField(service, "backend", "filesystem");
+
+        service.collectUnreferenced();
+
+        verifyNoInteractions(fileStorage, blobRegistry);
+    }
+
+    private String stagingKey() throws Exception {
+        ArgumentCaptor<String> captor = ArgumentCaptor.forClass(String.class);
+        verify(fileStorage).copy(captor.capture(), anyString(), anyLong());
+        return captor.getValue();
+    }
+
+    private static StoredObject staged(String key, Instant lastModified) {
+        return new StoredObject(key, 1, "etag", lastModified, null, Map.of(), false);
+    }
+}
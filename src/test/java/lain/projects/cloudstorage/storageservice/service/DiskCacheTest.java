@@ -0,0 +1,138 @@
+package lain.projects.cloudstorage.storageservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.util.ReflectionTestUtils.invokeMethod;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+class DiskCacheTest {
+    private static final String PATH = "user-1-files/a.txt";
+
+    @TempDir
+    Path directory;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final AtomicInteger loads = new AtomicInteger();
+    private DiskCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new DiskCache(new SimpleMeterRegistry());
+        setField(cache, "enabled", true);
+        setField(cache, "directory", directory);
+        setField(cache, "maxSize", DataSize.ofMegabytes(1));
+        setField(cache, "maxObjectSize", DataSize.ofKilobytes(64));
+        invokeMethod(cache, "init");
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void concurrentMissesShareOneFill() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        DiskCache.Loader loader = () -> {
+            loads.incrementAndGet();
+            release.await();
+            return body("v1");
+        };
+
+        List<Future<String>> reads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            reads.add(executor.submit(() -> read(cache.open(PATH, "e1", 2, loader))));
+        }
+        Thread.sleep(100);
+        release.countDown();
+
+        for (Future<String> read : reads) {
+            assertThat(read.get(5, TimeUnit.SECONDS)).isEqualTo("v1");
+        }
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void callerWithOlderEtagDoesNotEvictNewerCopy() throws Exception {
+        assertThat(read(cache.open(PATH, "e2", 2, loader("v2")))).isEqualTo("v2");
+
+        // Хранилище уже отдаёт e2, поэтому GET с If-Match: e1 падает
+        assertThat(cache.open(PATH, "e1", 2, () -> {
+            loads.incrementAndGet();
+            throw new IOException("PreconditionFailed");
+        })).isNull();
+
+        assertThat(read(cache.open(PATH, "e2", 2, loader("v2")))).isEqualTo("v2");
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void versionsOfOnePathAreCachedSeparately() throws Exception {
+        assertThat(read(cache.open(PATH, "e1", 2, loader("v1")))).isEqualTo("v1");
+        assertThat(read(cache.open(PATH, "e2", 2, loader("v2")))).isEqualTo("v2");
+        assertThat(read(cache.open(PATH, "e1", 2, loader("v1")))).isEqualTo("v1");
+
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void truncatedBodyIsNotCached() throws Exception {
+        assertThat(cache.open(PATH, "e1", 3, loader("v1"))).isNull();
+
+        assertThat(read(cache.open(PATH, "e1", 3, loader("v1!")))).isEqualTo("v1!");
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void invalidateDropsAllVersionsOfThePathOnly() throws Exception {
+        read(cache.open(PATH, "e1", 2, loader("v1")));
+        read(cache.open(PATH, "e2", 2, loader("v2")));
+        read(cache.open(PATH + ".bak", "e1", 2, loader("v0")));
+
+        cache.invalidate(List.of(PATH));
+        read(cache.open(PATH, "e1", 2, loader("v1")));
+        read(cache.open(PATH, "e2", 2, loader("v2")));
+        read(cache.open(PATH + ".bak", "e1", 2, loader("v0")));
+
+        assertThat(loads).hasValue(5);
+    }
+
+    private DiskCache.Loader loader(String content) {
+        return () -> {
+            loads.incrementAndGet();
+            return body(content);
+        };
+    }
+
+    private static ByteArrayInputStream body(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(FileChannel channel) throws IOException {
+        assertThat(channel).isNotNull();
+        try (channel) {
+            return new String(Channels.newInputStream(channel).readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
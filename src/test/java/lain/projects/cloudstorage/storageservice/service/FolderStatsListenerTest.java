@@ -0,0 +1,80 @@
+package lain.projects.cloudstorage.storageservice.service;
+
+import lain.projects.cloudstorage.storageservice.event.ObjectWrittenEvent;
+import lain.projects.cloudstorage.storageservice.event.ObjectsCopiedEvent;
+import lain.projects.cloudstorage.storageservice.event.ObjectsRemovedEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class FolderStatsListenerTest {
+    private static final Instant MODIFIED = Instant.parse("2024-05-01T10:00:00Z");
+
+    private FolderStatsService folderStatsService;
+    private FolderStatsListener listener;
+
+    @BeforeEach
+    void setUp() {
+        folderStatsService = mock(FolderStatsService.class);
+        listener = new FolderStatsListener(folderStatsService);
+    }
+
+    @Test
+    void newFileAddsSizeAndCount() {
+        listener.onWritten(new ObjectWrittenEvent("user-1-files/a/x.txt", 10, -1, "etag", null, MODIFIED));
+
+        assertThat(lastApplied()).containsOnly(
+                Map.entry("user-1-files/a/", new FolderStatsService.Delta(10, 1, MODIFIED)),
+                Map.entry("user-1-files/", new FolderStatsService.Delta(10, 1, MODIFIED)));
+    }
+
+    @Test
+    void overwriteAddsOnlySizeDifference() {
+        listener.onWritten(new ObjectWrittenEvent("user-1-files/x.txt", 4, 10, "etag", null, MODIFIED));
+
+        assertThat(lastApplied()).containsOnly(
+                Map.entry("user-1-files/", new FolderStatsService.Delta(-6, 0, MODIFIED)));
+    }
+
+    @Test
+    void folderMarkersAreNotCounted() {
+        listener.onWritten(new ObjectWrittenEvent("user-1-files/a/", 0, -1, "etag", null, MODIFIED));
+
+        verify(folderStatsService, never()).apply(any());
+    }
+
+    @Test
+    void copiesCountUnderTargetAndRemovalsUnderSource() {
+        listener.onCopied(new ObjectsCopiedEvent("user-1-files/a/", "user-1-files/b/",
+                List.of("user-1-files/a/", "user-1-files/a/x.txt"), List.of(0L, 7L)));
+        Map<String, FolderStatsService.Delta> copied = lastApplied();
+        assertThat(copied).containsOnlyKeys("user-1-files/b/", "user-1-files/");
+        assertThat(copied.get("user-1-files/b/").bytes()).isEqualTo(7);
+        assertThat(copied.get("user-1-files/b/").files()).isEqualTo(1);
+
+        listener.onRemoved(new ObjectsRemovedEvent(List.of("user-1-files/a/", "user-1-files/a/x.txt"),
+                List.of(0L, 7L)));
+        Map<String, FolderStatsService.Delta> removed = lastApplied();
+        assertThat(removed).containsOnlyKeys("user-1-files/a/", "user-1-files/");
+        assertThat(removed.get("user-1-files/a/").bytes()).isEqualTo(-7);
+        assertThat(removed.get("user-1-files/a/").files()).isEqualTo(-1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, FolderStatsService.Delta> lastApplied() {
+        ArgumentCaptor<Map<String, FolderStatsService.Delta>> deltas = ArgumentCaptor.forClass(Map.class);
+        verify(folderStatsService, atLeastOnce()).apply(deltas.capture());
+        return deltas.getValue();
+    }
+}
@@ -0,0 +1,106 @@
+package lain.projects.cloudstorage.storageservice.service;
+
+import lain.projects.cloudstorage.storageservice.repository.FileStorageRepository;
+import lain.projects.cloudstorage.storageservice.repository.filesystem.FilesystemFileStorageRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class FolderStatsRebuilderTest {
+    private static final String LOCK_KEY = "folder-stats:rebuild:lock";
+
+    @TempDir
+    Path root;
+
+    private FileStorageRepository fileStorage;
+    private FolderStatsService folderStatsService;
+    private ValueOperations<String, String> valueOperations;
+    private FolderStatsRebuilder rebuilder;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        FilesystemFileStorageRepository filesystem = new FilesystemFileStorageRepository();
+        ReflectionTestUtils.setField(filesystem, "root", root);
+        ReflectionTestUtils.invokeMethod(filesystem, "init");
+        fileStorage = filesystem;
+
+        folderStatsService = mock(FolderStatsService.class);
+        BlobRegistry blobRegistry = mock(BlobRegistry.class);
+        when(blobRegistry.sizesOf(any())).thenReturn(Map.of("user-1-files/a/pointer.bin", 42L));
+
+        StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+        valueOperations = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+
+        rebuilder = new FolderStatsRebuilder(fileStorage, folderStatsService, blobRegistry, redisTemplate);
+        ReflectionTestUtils.setField(rebuilder, "lockTtl", Duration.ofHours(1));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void rebuildsEachUserRootFromScan() throws Exception {
+        put("user-1-files/a/", 0);
+        put("user-1-files/a/x.txt", 10);
+        put("user-1-files/a/b/y.txt", 5);
+        put("user-1-files/a/pointer.bin", 0);
+        put("user-1-files/z.txt", 1);
+        put("user-2-files/w.txt", 7);
+        put(".blobs/sha256/abc", 42);
+        when(valueOperations.setIfAbsent(eq(LOCK_KEY), anyString(), any(Duration.class))).thenReturn(true);
+
+        rebuilder.rebuild();
+
+        ArgumentCaptor<Map<String, FolderStatsService.Delta>> user1 = ArgumentCaptor.forClass(Map.class);
+        ArgumentCaptor<Map<String, FolderStatsService.Delta>> user2 = ArgumentCaptor.forClass(Map.class);
+        InOrder order = inOrder(folderStatsService);
+        order.verify(folderStatsService).beginRebuild("user-1-files/");
+        order.verify(folderStatsService).finishRebuild(eq("user-1-files/"), user1.capture(), any());
+        order.verify(folderStatsService).beginRebuild("user-2-files/");
+        order.verify(folderStatsService).finishRebuild(eq("user-2-files/"), user2.capture(), any());
+        verify(folderStatsService, never()).beginRebuild(".blobs/");
+
+        assertThat(user1.getValue()).containsOnlyKeys("user-1-files/", "user-1-files/a/", "user-1-files/a/b/");
+        assertThat(totals(user1.getValue().get("user-1-files/"))).containsExactly(58L, 4L);
+        assertThat(totals(user1.getValue().get("user-1-files/a/"))).containsExactly(57L, 3L);
+        assertThat(totals(user1.getValue().get("user-1-files/a/b/"))).containsExactly(5L, 1L);
+        assertThat(totals(user2.getValue().get("user-2-files/"))).containsExactly(7L, 1L);
+    }
+
+    @Test
+    void skipsWhenAnotherNodeHoldsTheLock() {
+        when(valueOperations.setIfAbsent(eq(LOCK_KEY), anyString(), any(Duration.class))).thenReturn(false);
+
+        rebuilder.rebuild();
+
+        verify(folderStatsService, never()).beginRebuild(anyString());
+    }
+
+    private void put(String key, int size) throws Exception {
+        fileStorage.put(key, new ByteArrayInputStream(new byte[size]), size, null);
+    }
+
+    private static Long[] totals(FolderStatsService.Delta delta) {
+        return new Long[]{delta.bytes(), delta.files()};
+    }
+}
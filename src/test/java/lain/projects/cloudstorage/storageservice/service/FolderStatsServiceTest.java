@@ -0,0 +1,122 @@
+package lain.projects.cloudstorage.storageservice.service;
+
+import lain.projects.cloudstorage.model.FolderStats;
+import lain.projects.cloudstorage.storageservice.repository.FolderStatsRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class FolderStatsServiceTest {
+    private static final Instant T1 = Instant.parse("2024-05-01T10:00:00Z");
+    private static final Instant T2 = Instant.parse("2024-05-01T11:00:00Z");
+
+    private FolderStatsRepository repository;
+    private FolderStatsService service;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(FolderStatsRepository.class);
+        service = new FolderStatsService(repository, mock(JdbcTemplate.class));
+    }
+
+    @Test
+    void addToAncestorsMergesDeltasUpToUserRoot() {
+        Map<String, FolderStatsService.Delta> deltas = new HashMap<>();
+        FolderStatsService.addToAncestors(deltas, "user-1-files/a/b/x.txt", 10, 1, T1);
+        FolderStatsService.addToAncestors(deltas, "user-1-files/a/y.txt", -4, -1, T2);
+
+        assertThat(deltas).containsOnly(
+                Map.entry("user-1-files/a/b/", new FolderStatsService.Delta(10, 1, T1)),
+                Map.entry("user-1-files/a/", new FolderStatsService.Delta(6, 0, T2)),
+                Map.entry("user-1-files/", new FolderStatsService.Delta(6, 0, T2)));
+    }
+
+    @Test
+    void applyWritesFoldersInPathOrderAndDefersUserRoot() {
+        Map<String, FolderStatsService.Delta> deltas = new HashMap<>();
+        FolderStatsService.addToAncestors(deltas, "user-1-files/b/x.txt", 10, 1, T1);
+        FolderStatsService.addToAncestors(deltas, "user-1-files/a/y.txt", 5, 1, T2);
+
+        service.apply(deltas);
+
+        InOrder order = inOrder(repository);
+        order.verify(repository).apply(eq("user-1-files/a/"), eq(5L), eq(1L), eq(T2), any());
+        order.verify(repository).apply(eq("user-1-files/b/"), eq(10L), eq(1L), eq(T1), any());
+        verify(repository, never()).apply(eq("user-1-files/"), anyLong(), anyLong(), any(), any());
+
+        service.apply(deltas);
+        service.flushRoots();
+
+        verify(repository, times(1)).apply(eq("user-1-files/"), eq(30L), eq(4L), eq(T2), any());
+    }
+
+    @Test
+    void statsOfRootIncludesPendingDelta() {
+        service.apply(Map.of("user-1-files/", new FolderStatsService.Delta(5, 1, T2)));
+        when(repository.findAllById(List.of("user-1-files/", "user-2-files/"))).thenReturn(List.of(
+                FolderStats.builder().path("user-1-files/").bytes(100).files(3).lastModified(T1).build()));
+
+        Map<String, FolderStats> stats = service.statsOf(List.of("user-1-files/", "user-2-files/"));
+
+        assertThat(stats.get("user-1-files/").getBytes()).isEqualTo(105);
+        assertThat(stats.get("user-1-files/").getFiles()).isEqualTo(4);
+        assertThat(stats.get("user-1-files/").getLastModified()).isEqualTo(T2);
+        assertThat(stats).doesNotContainKey("user-2-files/");
+    }
+
+    @Test
+    void shrunkFoldersAreDroppedWhenEmpty() {
+        service.apply(Map.of("user-1-files/a/", new FolderStatsService.Delta(-5, -1, T1),
+                "user-1-files/a/b/", new FolderStatsService.Delta(3, 1, T1)));
+
+        verify(repository).deleteEmpty(List.of("user-1-files/a/"));
+    }
+
+    @Test
+    void failedFlushKeepsRootDeltaPending() {
+        service.apply(Map.of("user-1-files/", new FolderStatsService.Delta(5, 1, T1)));
+        doThrow(new IllegalStateException("database is down"))
+                .when(repository).apply(eq("user-1-files/"), anyLong(), anyLong(), any(), any());
+
+        assertThatThrownBy(service::flushRoots).isInstanceOf(IllegalStateException.class);
+
+        when(repository.findAllById(List.of("user-1-files/"))).thenReturn(List.of());
+        assertThat(service.statsOf(List.of("user-1-files/")).get("user-1-files/").getBytes()).isEqualTo(5);
+    }
+
+    @Test
+    void rebuildFlushesRootAndWorksOnPathRange() {
+        service.apply(Map.of("user-1-files/", new FolderStatsService.Delta(5, 1, T1)));
+
+        service.beginRebuild("user-1-files/");
+        service.finishRebuild("user-1-files/",
+                Map.of("user-1-files/", new FolderStatsService.Delta(50, 4, T2),
+                        "user-1-files/a/", new FolderStatsService.Delta(20, 2, T2)), T1);
+
+        InOrder order = inOrder(repository);
+        order.verify(repository).apply(eq("user-1-files/"), eq(5L), eq(1L), eq(T1), any());
+        order.verify(repository).resetDeltas("user-1-files/", "user-1-files0");
+        order.verify(repository).replace(eq("user-1-files/"), eq(50L), eq(4L), eq(T2), any());
+        order.verify(repository).replace(eq("user-1-files/a/"), eq(20L), eq(2L), eq(T2), any());
+        order.verify(repository).deleteUpdatedBefore("user-1-files/", "user-1-files0", T1);
+    }
+}
@@ -0,0 +1,95 @@
+package lain.projects.cloudstorage.storageservice.service;
+
+import lain.projects.cloudstorage.storageservice.repository.ObjectMetadataRepository;
+import lain.projects.cloudstorage.storageservice.repository.StoredObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MetadataIndexServiceTest {
+    private static final Instant MODIFIED = Instant.parse("2024-05-01T10:00:00Z");
+
+    private ObjectMetadataRepository repository;
+    private BlobRegistry blobRegistry;
+    private MetadataIndexService service;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(ObjectMetadataRepository.class);
+        blobRegistry = mock(BlobRegistry.class);
+        service = new MetadataIndexService(repository, blobRegistry, mock(FolderStatsService.class));
+    }
+
+    @Test
+    void indexObjectUpsertsObjectAndImplicitAncestorsBelowRoot() {
+        service.indexObject("user-1-files/a/b/x.txt", 5, "etag-1", "text/plain", MODIFIED);
+
+        verify(repository).upsert(eq("user-1-files/a/b/x.txt"), eq("user-1-files/a/b/"), eq("x.txt"), eq(5L),
+                eq("FILE"), eq("etag-1"), eq("text/plain"), eq(MODIFIED), eq(true), any());
+        verify(repository).upsertDirectory(eq("user-1-files/a/b/"), eq("user-1-files/a/"), eq("b/"), any());
+        verify(repository).upsertDirectory(eq("user-1-files/a/"), eq("user-1-files/"), eq("a/"), any());
+        verify(repository, never()).upsertDirectory(eq("user-1-files/"), anyString(), anyString(), any());
+    }
+
+    @Test
+    void indexScannedTakesPointerSizesFromRegistryAndUpsertsEachAncestorOnce() {
+        StoredObject file = new StoredObject("user-1-files/a/x.txt", 5, "etag-1", MODIFIED, null, Map.of(), false);
+        StoredObject pointer = new StoredObject("user-1-files/a/y.bin", 0, "etag-2", MODIFIED, null, Map.of(), false);
+        when(blobRegistry.sizesOf(List.of(file, pointer))).thenReturn(Map.of("user-1-files/a/y.bin", 42L));
+
+        Set<String> knownDirectories = new HashSet<>();
+        service.indexScanned(List.of(file, pointer), knownDirectories);
+        service.indexScanned(List.of(new StoredObject("user-1-files/a/z.txt", 1, "etag-3", MODIFIED, null, Map.of(),
+                false)), knownDirectories);
+
+        verify(repository).upsert(eq("user-1-files/a/x.txt"), anyString(), anyString(), eq(5L), eq("FILE"),
+                eq("etag-1"), isNull(), eq(MODIFIED), eq(true), any());
+        verify(repository).upsert(eq("user-1-files/a/y.bin"), anyString(), anyString(), eq(42L), eq("FILE"),
+                eq("etag-2"), isNull(), eq(MODIFIED), eq(true), any());
+        verify(repository, times(1)).upsertDirectory(eq("user-1-files/a/"), anyString(), anyString(), any());
+    }
+
+    @Test
+    void removeObjectsDropsImplicitParentsThatBecameEmpty() {
+        when(repository.deleteIfImplicitAndEmpty("user-1-files/a/b/")).thenReturn(1);
+        when(repository.deleteIfImplicitAndEmpty("user-1-files/a/")).thenReturn(0);
+
+        service.removeObjects(List.of("user-1-files/a/b/x.txt", "user-1-files/a/b/y.txt"));
+
+        verify(repository).deleteAllByIdInBatch(List.of("user-1-files/a/b/x.txt", "user-1-files/a/b/y.txt"));
+        verify(repository, times(1)).deleteIfImplicitAndEmpty("user-1-files/a/b/");
+        verify(repository, times(1)).deleteIfImplicitAndEmpty("user-1-files/a/");
+        verify(repository, never()).deleteIfImplicitAndEmpty("user-1-files/");
+    }
+
+    @Test
+    void indexObjectInUserRootHasNoImplicitAncestors() {
+        service.indexObject("user-1-files/x.txt", 7, "etag", null, MODIFIED);
+
+        verify(repository).upsert(eq("user-1-files/x.txt"), eq("user-1-files/"), eq("x.txt"), eq(7L), eq("FILE"),
+                eq("etag"), isNull(), eq(MODIFIED), eq(true), any());
+        verify(repository, never()).upsertDirectory(anyString(), anyString(), anyString(), any());
+    }
+
+    @Test
+    void searchScansHalfOpenRangeUnderRoot() {
+        service.search("user-1-files/a/", "%x%", null, 10);
+
+        verify(repository).searchByName("user-1-files/a/", "user-1-files/a0", "%x%", "", 11);
+    }
+}
@@ -0,0 +1,103 @@
+package lain.projects.cloudstorage.storageservice.service;
+
+import lain.projects.cloudstorage.storageservice.repository.FileStorageRepository;
+import lain.projects.cloudstorage.storageservice.repository.ObjectMetadataRepository;
+import lain.projects.cloudstorage.storageservice.repository.StoredObject;
+import lain.projects.cloudstorage.storageservice.repository.filesystem.FilesystemFileStorageRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MetadataReconcilerTest {
+    private static final String LOCK_KEY = "index:reconcile:lock";
+
+    @TempDir
+    Path root;
+
+    private FileStorageRepository fileStorage;
+    private MetadataIndexService metadataIndexService;
+    private StringRedisTemplate redisTemplate;
+    private ValueOperations<String, String> valueOperations;
+    private MetadataReconciler reconciler;
+    private final List<String> indexed = new ArrayList<>();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        FilesystemFileStorageRepository filesystem = new FilesystemFileStorageRepository();
+        ReflectionTestUtils.setField(filesystem, "root", root);
+        ReflectionTestUtils.invokeMethod(filesystem, "init");
+        fileStorage = filesystem;
+
+        metadataIndexService = mock(MetadataIndexService.class);
+        doAnswer(invocation -> {
+            List<StoredObject> batch = invocation.getArgument(0);
+            batch.forEach(object -> indexed.add(object.key()));
+            return null;
+        }).when(metadataIndexService).indexScanned(any(), any());
+
+        redisTemplate = mock(StringRedisTemplate.class);
+        valueOperations = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+
+        reconciler = new MetadataReconciler(fileStorage, metadataIndexService, mock(ObjectMetadataRepository.class),
+                redisTemplate, mock(ExecutorService.class));
+        ReflectionTestUtils.setField(reconciler, "lockTtl", Duration.ofHours(1));
+    }
+
+    @Test
+    void scansOnlyUserPrefixesAndRemovesWhatTheScanDidNotConfirm() throws Exception {
+        put("user-1-files/a/x.txt");
+        put("user-1-files/b/");
+        put("user-2-files/y.txt");
+        put(".blobs/sha256/abc");
+        put("thumbnails/user-1-files/a/x.txt/etag/256.jpg");
+        when(valueOperations.setIfAbsent(eq(LOCK_KEY), anyString(), any(Duration.class))).thenReturn(true);
+        Instant before = Instant.now();
+
+        reconciler.reconcile();
+
+        assertThat(indexed).containsExactly("user-1-files/a/x.txt", "user-1-files/b/", "user-2-files/y.txt");
+        verify(metadataIndexService).removeIndexedBefore(argThat(instant -> !instant.isBefore(before)));
+        verify(redisTemplate).delete(LOCK_KEY);
+    }
+
+    @Test
+    void skipsWhenAnotherNodeHoldsTheLock() {
+        when(valueOperations.setIfAbsent(eq(LOCK_KEY), anyString(), any(Duration.class))).thenReturn(false);
+
+        reconciler.reconcile();
+
+        verify(metadataIndexService, never()).indexScanned(any(), any());
+        verify(metadataIndexService, never()).removeIndexedBefore(any());
+        verify(redisTemplate, never()).delete(LOCK_KEY);
+    }
+
+    private void put(String key) throws Exception {
+        byte[] content = key.endsWith("/") ? new byte[0] : key.getBytes(StandardCharsets.UTF_8);
+        fileStorage.put(key, new ByteArrayInputStream(content), content.length, null);
+    }
+}
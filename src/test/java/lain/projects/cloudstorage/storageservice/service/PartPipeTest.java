@@ -0,0 +1,121 @@
+package lain.projects.cloudstorage.storageservice.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PartPipeTest {
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void readerGetsChunksInOrderAndThenEnd() throws Exception {
+        PartPipe pipe = new PartPipe(2);
+        Future<byte[]> read = executor.submit(pipe::readAllBytes);
+
+        pipe.write(new byte[]{1, 2});
+        pipe.write(new byte[]{3});
+        pipe.write(new byte[]{4, 5, 6});
+        pipe.finish();
+
+        assertThat(read.get(5, TimeUnit.SECONDS)).containsExactly(1, 2, 3, 4, 5, 6);
+    }
+
+    @Test
+    void failWakesBlockedReader() throws Exception {
+        PartPipe pipe = new PartPipe(2);
+        Future<byte[]> read = executor.submit(pipe::readAllBytes);
+        pipe.write(new byte[]{1});
+        Thread.sleep(50);
+
+        pipe.fail();
+
+        assertThatThrownBy(() -> read.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(IOException.class);
+    }
+
+    @Test
+    void failOnFullQueueDropsBufferedChunksAndStillReachesReader() throws Exception {
+        PartPipe pipe = new PartPipe(2);
+        pipe.write(new byte[]{1});
+        pipe.write(new byte[]{2});
+
+        pipe.fail();
+
+        assertThatThrownBy(pipe::read).isInstanceOf(IOException.class);
+        // Ошибка повторяется, а не превращается в конец потока
+        assertThatThrownBy(pipe::read).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void closeReleasesWriterBlockedOnFullQueue() throws Exception {
+        PartPipe pipe = new PartPipe(1);
+        pipe.write(new byte[]{1});
+        CountDownLatch writing = new CountDownLatch(1);
+        Future<?> write = executor.submit(() -> {
+            writing.countDown();
+            pipe.write(new byte[]{2});
+            return null;
+        });
+        assertThat(writing.await(5, TimeUnit.SECONDS)).isTrue();
+
+        pipe.close();
+
+        assertThatThrownBy(() -> write.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(IOException.class);
+        assertThat(pipe.isClosed()).isTrue();
+        assertThatThrownBy(pipe::finish).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void failRacingWithReaderNeverLooksLikeACompletePart() throws Exception {
+        for (int attempt = 0; attempt < 200; attempt++) {
+            PartPipe pipe = new PartPipe(4);
+            Future<byte[]> read = executor.submit(pipe::readAllBytes);
+            for (int i = 0; i < attempt % 10; i++) {
+                pipe.write(new byte[]{(byte) i});
+            }
+
+            pipe.fail();
+
+            assertThatThrownBy(() -> read.get(5, TimeUnit.SECONDS))
+                    .as("attempt %d", attempt)
+                    .hasCauseInstanceOf(IOException.class);
+        }
+    }
+
+    @Test
+    void closeRacingWithWriterAlwaysFailsTheWriter() throws Exception {
+        for (int attempt = 0; attempt < 200; attempt++) {
+            PartPipe pipe = new PartPipe(1);
+            Future<?> write = executor.submit(() -> {
+                for (int i = 0; ; i++) {
+                    pipe.write(new byte[]{(byte) i});
+                }
+            });
+            pipe.read();
+
+            pipe.close();
+
+            assertThatThrownBy(() -> write.get(5, TimeUnit.SECONDS))
+                    .as("attempt %d", attempt)
+                    .hasCauseInstanceOf(IOException.class);
+        }
+    }
+}
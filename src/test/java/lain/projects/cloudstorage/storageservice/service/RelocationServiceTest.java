@@ -0,0 +1,132 @@
+package lain.projects.cloudstorage.storageservice.service;
+
+import lain.projects.cloudstorage.storageservice.dto.ObjectFailure;
+import lain.projects.cloudstorage.storageservice.repository.FileStorageRepository;
+import lain.projects.cloudstorage.storageservice.repository.StoredObject;
+import lain.projects.cloudstorage.storageservice.repository.redis.RelocationCheckpointRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+class RelocationServiceTest {
+    private static final Duration LOCK_TTL = Duration.ofMinutes(1);
+    private static final StoredObject OBJECT = new StoredObject("user-1-files/a/x.txt", 3, "etag",
+            Instant.parse("2024-05-01T10:00:00Z"), null, Map.of(), false);
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private FileStorageRepository fileStorage;
+    private BulkDeleteService bulkDeleteService;
+    private RelocationCheckpointRepository checkpointRepository;
+    private RelocationService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        fileStorage = mock(FileStorageRepository.class);
+        bulkDeleteService = mock(BulkDeleteService.class);
+        checkpointRepository = mock(RelocationCheckpointRepository.class);
+        service = new RelocationService(fileStorage, executor, bulkDeleteService, checkpointRepository,
+                mock(ApplicationEventPublisher.class));
+        setField(service, "chunkSize", 1000);
+        setField(service, "maxInFlight", 4);
+        setField(service, "lockTtl", LOCK_TTL);
+
+        when(checkpointRepository.tryLock(eq("job-1"), anyString(), eq(LOCK_TTL))).thenReturn(true);
+        when(fileStorage.list(eq("user-1-files/a/"), eq(true), isNull(), anyInt())).thenReturn(List.of(OBJECT));
+        when(bulkDeleteService.logicalSizes(any())).thenReturn(List.of(3L));
+        when(bulkDeleteService.deleteBatch(any())).thenReturn(List.of());
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void heartbeatRefreshesLockWhileChunkIsCopying() throws Exception {
+        CountDownLatch copying = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            copying.countDown();
+            release.await();
+            return null;
+        }).when(fileStorage).copy(eq(OBJECT.key()), eq("user-1-files/b/x.txt"), anyLong());
+
+        Future<List<ObjectFailure>> result = executor.submit(() ->
+                service.relocate("job-1", "user-1-files/a/", "user-1-files/b/", new BulkOperationProgress()));
+        assertThat(copying.await(5, TimeUnit.SECONDS)).isTrue();
+
+        ArgumentCaptor<String> owner = ArgumentCaptor.forClass(String.class);
+        verify(checkpointRepository).tryLock(eq("job-1"), owner.capture(), eq(LOCK_TTL));
+        service.heartbeat();
+        service.heartbeat();
+        verify(checkpointRepository, times(2)).refreshLock("job-1", owner.getValue(), LOCK_TTL);
+
+        release.countDown();
+        assertThat(result.get(5, TimeUnit.SECONDS)).isEmpty();
+        verify(checkpointRepository).delete("job-1");
+        verify(checkpointRepository).unlock("job-1", owner.getValue());
+
+        service.heartbeat();
+        verify(checkpointRepository, times(2)).refreshLock(anyString(), anyString(), any());
+    }
+
+    @Test
+    void heartbeatWithoutRunningRelocationDoesNothing() {
+        service.heartbeat();
+
+        verify(checkpointRepository, never()).refreshLock(anyString(), anyString(), any());
+    }
+
+    @Test
+    void failedCopyKeepsCheckpointAndSources() throws Exception {
+        doThrow(new RuntimeException("boom")).when(fileStorage).copy(anyString(), anyString(), anyLong());
+
+        List<ObjectFailure> failures = service.relocate("job-1", "user-1-files/a/", "user-1-files/b/",
+                new BulkOperationProgress());
+
+        assertThat(failures).containsExactly(new ObjectFailure(OBJECT.key(), "boom"));
+        verify(bulkDeleteService, never()).deleteBatch(any());
+        verify(checkpointRepository, never()).delete("job-1");
+        verify(checkpointRepository).unlock(eq("job-1"), anyString());
+    }
+
+    @Test
+    void relocationHeldByAnotherNodeIsRejected() {
+        when(checkpointRepository.tryLock(eq("job-1"), anyString(), eq(LOCK_TTL))).thenReturn(false);
+
+        assertThatThrownBy(() -> service.relocate("job-1", "user-1-files/a/", "user-1-files/b/",
+                new BulkOperationProgress()))
+                .isInstanceOf(ResponseStatusException.class)
+                .hasMessageContaining("already running");
+    }
+}
@@ -0,0 +1,169 @@
+package lain.projects.cloudstorage.storageservice.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lain.projects.cloudstorage.storageservice.dto.FileStat;
+import lain.projects.cloudstorage.storageservice.dto.FolderPage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.util.ReflectionTestUtils.invokeMethod;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+class StorageCacheTest {
+    private final List<String> loads = new ArrayList<>();
+    private StringRedisTemplate redisTemplate;
+    private ValueOperations<String, String> values;
+    private StorageCache cache;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        redisTemplate = mock(StringRedisTemplate.class);
+        values = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(values);
+        when(redisTemplate.<Object, Object>opsForHash()).thenReturn(mock(HashOperations.class));
+
+        cache = new StorageCache(redisTemplate, mock(ObjectMapper.class), new SimpleMeterRegistry());
+        setField(cache, "enabled", true);
+        setField(cache, "ttl", Duration.ofMinutes(5));
+        setField(cache, "localMaxWeight", 1000L);
+        invokeMethod(cache, "init");
+    }
+
+    @Test
+    void folderMessageDropsAllVariantsOfThatFolderOnly() throws Exception {
+        listing("user-1-files/a/", "v1");
+        listing("user-1-files/a/", "v2");
+        listing("user-1-files/a/b/", "v1");
+        loads.clear();
+
+        receive("Fuser-1-files/a/");
+        listing("user-1-files/a/", "v1");
+        listing("user-1-files/a/", "v2");
+        listing("user-1-files/a/b/", "v1");
+
+        assertThat(loads).containsExactly("listing user-1-files/a/ v1", "listing user-1-files/a/ v2");
+    }
+
+    @Test
+    void prefixMessageDropsListingsAndStatsUnderPrefix() throws Exception {
+        listing("user-1-files/a/", "v1");
+        listing("user-1-files/a/b/", "v1");
+        listing("user-1-files/ab/", "v1");
+        stat("user-1-files/a/x.txt");
+        stat("user-1-files/b.txt");
+        loads.clear();
+
+        receive("Puser-1-files/a/");
+        listing("user-1-files/a/", "v1");
+        listing("user-1-files/a/b/", "v1");
+        listing("user-1-files/ab/", "v1");
+        stat("user-1-files/a/x.txt");
+        stat("user-1-files/b.txt");
+
+        assertThat(loads).containsExactly(
+                "listing user-1-files/a/ v1", "listing user-1-files/a/b/ v1", "stat user-1-files/a/x.txt");
+    }
+
+    @Test
+    void objectMessageDropsOnlyThatStat() throws Exception {
+        stat("user-1-files/a/x.txt");
+        stat("user-1-files/a/x.txt.bak");
+        listing("user-1-files/a/", "v1");
+        loads.clear();
+
+        receive("Suser-1-files/a/x.txt");
+        stat("user-1-files/a/x.txt");
+        stat("user-1-files/a/x.txt.bak");
+        listing("user-1-files/a/", "v1");
+
+        assertThat(loads).containsExactly("stat user-1-files/a/x.txt");
+    }
+
+    @Test
+    void droppedKeyIsCachedAgainAfterReload() throws Exception {
+        listing("user-1-files/a/", "v1");
+        receive("Fuser-1-files/a/");
+        listing("user-1-files/a/", "v1");
+        listing("user-1-files/a/", "v1");
+        receive("Fuser-1-files/a/");
+        listing("user-1-files/a/", "v1");
+
+        assertThat(loads).hasSize(3);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void invalidationBumpsGenerationsInsteadOfScanning() {
+        cache.invalidate(List.of("user-1-files/a/x.txt"), List.of("user-1-files/a/"), List.of("user-1-files/a/b/"));
+
+        verify(redisTemplate).execute(any(RedisScript.class), eq(List.of("cache:gen:stat:user-1-files/a/x.txt",
+                "cache:gen:listing:user-1-files/a/", "cache:gen:tree:user-1-files/a/b/")), anyString(), eq("600000"));
+        verify(redisTemplate, never()).scan(any());
+        verify(redisTemplate, never()).delete(any(Collection.class));
+    }
+
+    @Test
+    void sharedKeyCarriesGenerationsOfEntryAndAncestors() throws Exception {
+        when(values.multiGet(List.of("cache:gen:stat:user-1-files/a/x.txt",
+                "cache:gen:tree:user-1-files/a/", "cache:gen:tree:user-1-files/")))
+                .thenReturn(Arrays.asList(null, "g1", null));
+
+        stat("user-1-files/a/x.txt");
+
+        verify(values).get("cache:stat:user-1-files/a/x.txt#.g1.");
+    }
+
+    @Test
+    void valueLoadedAcrossInvalidationIsNotCachedLocally() throws Exception {
+        cache.stat("user-1-files/a/x.txt", () -> {
+            loads.add("stale");
+            receive("Suser-1-files/a/x.txt");
+            return new FileStat("user-1-files/a/x.txt", 1, "old", null, null, null);
+        });
+        stat("user-1-files/a/x.txt");
+        stat("user-1-files/a/x.txt");
+
+        assertThat(loads).containsExactly("stale", "stat user-1-files/a/x.txt");
+    }
+
+    private void listing(String folder, String variant) throws Exception {
+        cache.listing(folder, variant, () -> {
+            loads.add("listing " + folder + " " + variant);
+            return new FolderPage(List.of(), null);
+        });
+    }
+
+    private void stat(String path) throws Exception {
+        cache.stat(path, () -> {
+            loads.add("stat " + path);
+            return new FileStat(path, 1, "etag", null, null, null);
+        });
+    }
+
+    private void receive(String message) {
+        cache.onMessage(new DefaultMessage(StorageCache.INVALIDATION_CHANNEL.getBytes(StandardCharsets.UTF_8),
+                message.getBytes(StandardCharsets.UTF_8)), null);
+    }
+}
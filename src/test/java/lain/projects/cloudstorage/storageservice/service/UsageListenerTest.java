@@ -0,0 +1,70 @@
+package lain.projects.cloudstorage.storageservice.service;
+
+import lain.projects.cloudstorage.storageservice.event.ObjectWrittenEvent;
+import lain.projects.cloudstorage.storageservice.event.ObjectsCopiedEvent;
+import lain.projects.cloudstorage.storageservice.event.ObjectsRemovedEvent;
+import lain.projects.cloudstorage.storageservice.repository.redis.UsageRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+class UsageListenerTest {
+    private static final Instant NOW = Instant.parse("2024-05-01T10:00:00Z");
+
+    private UsageRepository usageRepository;
+    private UsageListener listener;
+
+    @BeforeEach
+    void setUp() {
+        usageRepository = mock(UsageRepository.class);
+        listener = new UsageListener(usageRepository);
+    }
+
+    @Test
+    void newFileAddsItsSizeAndOneObject() {
+        listener.onWritten(new ObjectWrittenEvent("user-1-files/a.txt", 100, -1, "e", null, NOW));
+
+        verify(usageRepository).apply(1L, 100, 1);
+    }
+
+    @Test
+    void overwriteAddsOnlyTheDifference() {
+        listener.onWritten(new ObjectWrittenEvent("user-1-files/a.txt", 40, 100, "e", null, NOW));
+
+        verify(usageRepository).apply(1L, -60, 0);
+    }
+
+    @Test
+    void copyAndRemoveOfAMoveCancelOut() {
+        listener.onCopied(new ObjectsCopiedEvent("user-1-files/a/", "user-1-files/b/",
+                List.of("user-1-files/a/x", "user-1-files/a/y"), List.of(10L, 20L)));
+        listener.onRemoved(new ObjectsRemovedEvent(List.of("user-1-files/a/x", "user-1-files/a/y"), List.of(10L, 20L)));
+
+        verify(usageRepository).apply(1L, 30, 2);
+        verify(usageRepository).apply(1L, -30, -2);
+    }
+
+    @Test
+    void objectsOutsideUserFoldersAreNotCounted() {
+        listener.onWritten(new ObjectWrittenEvent("blobs/ab/cd", 100, -1, "e", null, NOW));
+        listener.onRemoved(new ObjectsRemovedEvent(List.of(), List.of()));
+
+        verifyNoInteractions(usageRepository);
+    }
+
+    @Test
+    void redisFailureDoesNotFailTheWrite() {
+        doThrow(new IllegalStateException("redis down")).when(usageRepository).apply(1L, 100, 1);
+
+        assertThatCode(() -> listener.onWritten(new ObjectWrittenEvent("user-1-files/a.txt", 100, -1, "e", null, NOW)))
+                .doesNotThrowAnyException();
+    }
+}
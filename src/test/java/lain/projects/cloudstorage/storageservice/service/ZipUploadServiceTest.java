@@ -0,0 +1,198 @@
+package lain.projects.cloudstorage.storageservice.service;
+
+import lain.projects.cloudstorage.storageservice.dto.UploadResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class ZipUploadServiceTest {
+    private static final String FOLDER = "user-1-files/docs";
+    private static final int MB = 1024 * 1024;
+
+    private FileService fileService;
+    private FolderService folderService;
+    private UsageService usageService;
+    private ExecutorService executor;
+    private ZipUploadService service;
+    // Путь -> сколько байт записи дошло до хранилища
+    private final Map<String, Integer> uploaded = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        fileService = mock(FileService.class);
+        folderService = mock(FolderService.class);
+        usageService = mock(UsageService.class);
+        executor = Executors.newFixedThreadPool(4);
+        service = new ZipUploadService(fileService, folderService, usageService, executor);
+        ReflectionTestUtils.setField(service, "maxInFlight", 2);
+        ReflectionTestUtils.setField(service, "pipeChunks", 4);
+        ReflectionTestUtils.setField(service, "maxEntries", 100);
+        ReflectionTestUtils.setField(service, "maxTotalSize", DataSize.ofMegabytes(64));
+        ReflectionTestUtils.setField(service, "maxExpansionRatio", 100);
+        ReflectionTestUtils.setField(service, "quotaStep", DataSize.ofMegabytes(1));
+
+        doAnswer(invocation -> {
+            try (InputStream in = invocation.getArgument(1)) {
+                uploaded.put(invocation.getArgument(0), in.readAllBytes().length);
+            }
+            return null;
+        }).when(fileService).uploadStream(anyString(), any(), anyString());
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void normalizeKeepsRelativePathsAndRejectsEscapes() {
+        assertThat(ZipUploadService.normalize("a/./b.txt")).isEqualTo("a/b.txt");
+        assertThat(ZipUploadService.normalize("a//b.txt")).isEqualTo("a/b.txt");
+        assertThat(ZipUploadService.normalize("a\\b\\c.txt")).isEqualTo("a/b/c.txt");
+        assertThat(ZipUploadService.normalize("a/b/")).isEqualTo("a/b/");
+        assertThat(ZipUploadService.normalize("a\\b\\")).isEqualTo("a/b/");
+        assertThat(ZipUploadService.normalize("x.txt")).isEqualTo("x.txt");
+
+        assertThat(ZipUploadService.normalize("../x.txt")).isNull();
+        assertThat(ZipUploadService.normalize("a/../../x.txt")).isNull();
+        assertThat(ZipUploadService.normalize("a/../x.txt")).isNull();
+        assertThat(ZipUploadService.normalize("/etc/passwd")).isNull();
+        assertThat(ZipUploadService.normalize("\\windows\\x.txt")).isNull();
+        assertThat(ZipUploadService.normalize("./")).isNull();
+        assertThat(ZipUploadService.normalize("")).isNull();
+    }
+
+    @Test
+    void extractsFilesAndFolders() throws Exception {
+        byte[] archive = zip(Map.of("a/", new byte[0], "a/x.txt", bytes(10), "y.txt", bytes(20)));
+
+        Map<String, UploadResult> results = extract(archive);
+
+        assertThat(results.values()).allMatch(result -> result.status() == UploadResult.Status.CREATED);
+        assertThat(uploaded).containsEntry(FOLDER + "/a/x.txt", 10).containsEntry(FOLDER + "/y.txt", 20);
+        verify(folderService).createFolder(FOLDER + "/a/");
+    }
+
+    @Test
+    void invalidNamesCountAgainstEntryLimit() throws Exception {
+        ReflectionTestUtils.setField(service, "maxEntries", 2);
+        byte[] archive = zip(Map.of("../evil.txt", bytes(10), "a.txt", bytes(10), "b.txt", bytes(10)));
+
+        Map<String, UploadResult> results = extract(archive);
+
+        assertThat(results.get("../evil.txt").reason()).isEqualTo("Invalid entry name");
+        assertThat(results.get("docs/a.txt").status()).isEqualTo(UploadResult.Status.CREATED);
+        assertThat(results.get("docs/b.txt").reason()).contains("more than 2 entries");
+        assertThat(uploaded).containsOnlyKeys(FOLDER + "/a.txt");
+    }
+
+    @Test
+    void stopsAtExpansionRatio() throws Exception {
+        byte[] archive = zip(Map.of("bomb.bin", new byte[8 * MB], "z.txt", bytes(10)));
+
+        Map<String, UploadResult> results = extract(archive);
+
+        assertThat(results.get("docs/bomb.bin").reason()).contains("expansion ratio");
+        assertThat(uploaded).doesNotContainKey(FOLDER + "/z.txt");
+    }
+
+    @Test
+    void dataOfInvalidEntryIsCountedToo() throws Exception {
+        byte[] archive = zip(Map.of("../bomb.bin", new byte[8 * MB], "z.txt", bytes(10)));
+
+        Map<String, UploadResult> results = extract(archive);
+
+        assertThat(results.get("../bomb.bin").reason()).contains("expansion ratio");
+        assertThat(uploaded).isEmpty();
+    }
+
+    @Test
+    void restOfEntryIsCountedAfterUploadFails() throws Exception {
+        doThrow(new IOException("storage is down"))
+                .when(fileService).uploadStream(eq(FOLDER + "/bomb.bin"), any(), anyString());
+        byte[] archive = zip(Map.of("bomb.bin", new byte[8 * MB], "z.txt", bytes(10)));
+
+        Map<String, UploadResult> results = extract(archive);
+
+        assertThat(results.get("docs/bomb.bin").status()).isEqualTo(UploadResult.Status.FAILED);
+        assertThat(uploaded).doesNotContainKey(FOLDER + "/z.txt");
+    }
+
+    @Test
+    void stopsAtTotalSize() throws Exception {
+        ReflectionTestUtils.setField(service, "maxTotalSize", DataSize.ofMegabytes(1));
+        byte[] archive = zip(Map.of("a.bin", bytes(MB / 2), "b.bin", bytes(MB), "c.bin", bytes(10)));
+
+        Map<String, UploadResult> results = extract(archive);
+
+        assertThat(results.get("docs/a.bin").status()).isEqualTo(UploadResult.Status.CREATED);
+        assertThat(results.get("docs/b.bin").reason()).contains("expands to more than");
+        assertThat(uploaded).doesNotContainKey(FOLDER + "/c.bin");
+    }
+
+    @Test
+    void stopsWhenQuotaRunsOutAndReleasesReservations() throws Exception {
+        doThrow(new ResponseStatusException(HttpStatus.INSUFFICIENT_STORAGE))
+                .when(usageService).reserve(eq(1L), anyString(), anyLong());
+        byte[] archive = zip(Map.of("a.bin", bytes(10)));
+
+        Map<String, UploadResult> results = extract(archive);
+
+        assertThat(results.get("docs/a.bin").reason()).isEqualTo("Storage quota exceeded");
+        verify(usageService).release(eq(1L), anyCollection());
+    }
+
+    private Map<String, UploadResult> extract(byte[] archive) throws Exception {
+        return service.extract(1L, FOLDER, new ByteArrayInputStream(archive)).stream()
+                .collect(Collectors.toMap(UploadResult::path, Function.identity()));
+    }
+
+    // Записи идут в порядке имён, чтобы порядок в архиве не зависел от Map
+    private static byte[] zip(Map<String, byte[]> entries) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            for (String name : entries.keySet().stream().sorted().toList()) {
+                zip.putNextEntry(new ZipEntry(name));
+                zip.write(entries.get(name));
+                zip.closeEntry();
+            }
+        }
+        return out.toByteArray();
+    }
+
+    // Случайные байты не сжимаются, так что степень сжатия не мешает проверять другие лимиты
+    private static byte[] bytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+}